@@ -0,0 +1,67 @@
+package it.sijmen.movienotifier.controllers;
+
+import it.sijmen.movienotifier.model.Watcher;
+import it.sijmen.movienotifier.model.exceptions.BadRequestException;
+import it.sijmen.movienotifier.model.exceptions.UnauthorizedException;
+import it.sijmen.movienotifier.repositories.WatcherRepository;
+import it.sijmen.movienotifier.service.pathe.PatheNotifier;
+import it.sijmen.movienotifier.util.ApiKeyHelper;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Matches the currently active watchers again against the showings that were detected in a time
+ * range, for instance after an outage of the notification service. The request is authenticated
+ * like the rest of the api, with an apikey header, but the key is not one of a user: it is the
+ * configured replay.apikey. The endpoint is disabled while that key is empty.
+ *
+ * <p>{@code POST /replay?from=<unix millis>&to=<unix millis>}
+ */
+@Controller
+public class ReplayController {
+
+  private final PatheNotifier notifier;
+  private final WatcherRepository watcherRepository;
+  private final ApiKeyHelper apiKeyHelper;
+  private final byte[] replayApiKey;
+
+  @Autowired
+  public ReplayController(
+      PatheNotifier notifier,
+      WatcherRepository watcherRepository,
+      ApiKeyHelper apiKeyHelper,
+      @Value("${replay.apikey:}") String replayApiKey) {
+    this.notifier = notifier;
+    this.watcherRepository = watcherRepository;
+    this.apiKeyHelper = apiKeyHelper;
+    this.replayApiKey = replayApiKey.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @PostMapping(value = "/replay", produces = MediaType.APPLICATION_JSON_VALUE)
+  @ResponseBody
+  public Map<String, Integer> replay(
+      @RequestHeader Map<String, String> requestHeaders,
+      @RequestParam long from,
+      @RequestParam long to) {
+    String apikey = apiKeyHelper.getApiKey(requestHeaders);
+    if (replayApiKey.length == 0
+        || apikey == null
+        || !MessageDigest.isEqual(replayApiKey, apikey.getBytes(StandardCharsets.UTF_8)))
+      throw new UnauthorizedException();
+
+    if (from > to) throw new BadRequestException("from must not be after to");
+    long now = System.currentTimeMillis();
+    List<Watcher> watchers = watcherRepository.getAllByBeginIsLessThanAndEndIsGreaterThan(now, now);
+    int replayed = notifier.replay(new Date(from), new Date(to), watchers);
+    return Collections.singletonMap("replayed", replayed);
+  }
+}
@@ -1,11 +1,13 @@
 package it.sijmen.movienotifier.controllers;
 
+import it.sijmen.movienotifier.model.ShowingExplanation;
 import it.sijmen.movienotifier.model.User;
 import it.sijmen.movienotifier.model.Watcher;
 import it.sijmen.movienotifier.model.exceptions.BadRequestException;
 import it.sijmen.movienotifier.model.exceptions.UnauthorizedException;
 import it.sijmen.movienotifier.repositories.UserRepository;
 import it.sijmen.movienotifier.repositories.WatcherRepository;
+import it.sijmen.movienotifier.service.pathe.WatcherEvaluator;
 import it.sijmen.movienotifier.util.ApiKeyHelper;
 import it.sijmen.movienotifier.util.ModelUpdater;
 import java.util.List;
@@ -28,17 +30,20 @@ public class WatcherController {
   private final ApiKeyHelper apiKeyHelper;
   private final UserRepository userRepository;
   private final WatcherRepository watcherRepo;
+  private final WatcherEvaluator watcherEvaluator;
 
   @Autowired
   public WatcherController(
       ModelUpdater modelUpdater,
       ApiKeyHelper apiKeyHelper,
       UserRepository userRepository,
-      WatcherRepository watcherRepo) {
+      WatcherRepository watcherRepo,
+      WatcherEvaluator watcherEvaluator) {
     this.modelUpdater = modelUpdater;
     this.apiKeyHelper = apiKeyHelper;
     this.userRepository = userRepository;
     this.watcherRepo = watcherRepo;
+    this.watcherEvaluator = watcherEvaluator;
   }
 
   @PutMapping("/watchers")
@@ -53,6 +58,7 @@ public class WatcherController {
     watcherRepo.save(newWatcher);
 
     LOGGER.trace("Watcher stored: {}", newWatcher);
+    watcherEvaluator.evaluateAsync(newWatcher);
 
     return ResponseEntity.ok(newWatcher);
   }
@@ -73,6 +79,21 @@ public class WatcherController {
     return ResponseEntity.ok(watcher);
   }
 
+  @GetMapping("/watchers/{watcherid}/explain")
+  public HttpEntity<List<ShowingExplanation>> explainWatcher(
+      @PathVariable(required = false) String watcherid,
+      @RequestHeader Map<String, String> requestHeaders) {
+    User user = ensureLoggedIn(requestHeaders);
+
+    Watcher watcher = watcherRepo.getFirstByUuid(watcherid);
+    if (watcher == null) {
+      throw new BadRequestException("Watcher does not exist");
+    }
+
+    ensureUserOwnsWatcher(watcher, user);
+    return ResponseEntity.ok(watcherEvaluator.explain(watcher));
+  }
+
   @GetMapping("/watchers")
   public HttpEntity<List<Watcher>> getWatcher(@RequestHeader Map<String, String> requestHeaders) {
     User user = ensureLoggedIn(requestHeaders);
@@ -99,10 +120,12 @@ public class WatcherController {
       throw new BadRequestException("Not allowed to changed the userid of a watcher");
     }
 
+    Watcher previous = new Watcher(watcher);
     modelUpdater.applyUpdates(watcher, newWatcherData);
     watcher.validate();
     watcherRepo.save(watcher);
     LOGGER.trace("Updated watcher {}: {}", watcher.getId(), watcher.getName());
+    watcherEvaluator.evaluateAsync(previous, watcher);
 
     return ResponseEntity.ok(watcher);
   }
@@ -0,0 +1,99 @@
+package it.sijmen.movienotifier.model;
+
+import java.util.Date;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * A watcher and showing for which a shadow matcher gave a different verdict than the primary
+ * matcher. Stored in a capped collection, so only the latest divergences are kept.
+ */
+@Document
+public class MatcherDivergence {
+
+  /** The mongodb database id. */
+  @Id private String id;
+
+  private Date detected;
+
+  private String primary;
+
+  private String candidate;
+
+  private String watcherid;
+
+  private long showingid;
+
+  private boolean primaryaccepts;
+
+  private boolean candidateaccepts;
+
+  public MatcherDivergence() {}
+
+  public MatcherDivergence(
+      Date detected,
+      String primary,
+      String candidate,
+      String watcherid,
+      long showingid,
+      boolean primaryaccepts,
+      boolean candidateaccepts) {
+    this.detected = detected;
+    this.primary = primary;
+    this.candidate = candidate;
+    this.watcherid = watcherid;
+    this.showingid = showingid;
+    this.primaryaccepts = primaryaccepts;
+    this.candidateaccepts = candidateaccepts;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public Date getDetected() {
+    return detected;
+  }
+
+  public String getPrimary() {
+    return primary;
+  }
+
+  public String getCandidate() {
+    return candidate;
+  }
+
+  public String getWatcherid() {
+    return watcherid;
+  }
+
+  public long getShowingid() {
+    return showingid;
+  }
+
+  public boolean isPrimaryaccepts() {
+    return primaryaccepts;
+  }
+
+  public boolean isCandidateaccepts() {
+    return candidateaccepts;
+  }
+
+  @Override
+  public String toString() {
+    return "MatcherDivergence{"
+        + "candidate='"
+        + candidate
+        + '\''
+        + ", watcherid='"
+        + watcherid
+        + '\''
+        + ", showingid="
+        + showingid
+        + ", primaryaccepts="
+        + primaryaccepts
+        + ", candidateaccepts="
+        + candidateaccepts
+        + '}';
+  }
+}
@@ -0,0 +1,219 @@
+package it.sijmen.movienotifier.model;
+
+import it.sijmen.movienotifier.service.pathe.api.PatheShowing;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * A notification about the matches of a watcher that still has to be delivered. Entries are removed
+ * once they are delivered to all channels of the user. Until then an entry records the channels it
+ * was delivered to, so a retry only sends what failed. An entry that failed too often is
+ * dead-lettered: it is kept for {@value #DEAD_RETENTION_SECONDS} seconds to be inspected and is not
+ * delivered anymore.
+ */
+@Document
+@CompoundIndexes({
+  @CompoundIndex(def = "{'status': 1, 'due': 1}"),
+  @CompoundIndex(def = "{'status': 1, 'deadline': 1}"),
+  @CompoundIndex(def = "{'userid': 1, 'status': 1}")
+})
+public class OutboxEntry {
+
+  public static final int DEAD_RETENTION_SECONDS = 14 * 24 * 60 * 60;
+
+  public enum Status {
+    PENDING,
+    DEAD
+  }
+
+  /** The mongodb database id. */
+  @Id private String id;
+
+  private Date created;
+
+  private Status status;
+
+  /** The entry is delivered at or after this moment. Moved ahead while it is being delivered. */
+  private Date due;
+
+  /**
+   * The entry is delivered at or after this moment, even when its digest keeps being postponed.
+   * Only set until it is claimed for the first time.
+   */
+  private Date deadline;
+
+  private int attempts;
+
+  private String lasterror;
+
+  /** Whether the mail was sent, or the user has no mail address. */
+  private boolean mailed;
+
+  /** The firebase tokens the push message was sent to, or that will never accept one. */
+  private List<String> pushedtokens = new ArrayList<>();
+
+  /** Identifies the batch of the worker that claimed the entry last. */
+  @Indexed(sparse = true)
+  private String claim;
+
+  /** Shared by the entries that failed in the same digest, so they are retried together. */
+  @Indexed(sparse = true)
+  private String group;
+
+  /** Only set for dead entries, which are removed by mongodb at this moment. */
+  @Indexed(expireAfterSeconds = 0)
+  private Date expires;
+
+  private String userid;
+
+  private String watcherid;
+
+  private String watchername;
+
+  private int movieid;
+
+  private List<PatheShowing> matches;
+
+  public OutboxEntry() {}
+
+  public OutboxEntry(Date created, Watcher watcher, List<PatheShowing> matches) {
+    this.created = created;
+    this.status = Status.PENDING;
+    this.due = created;
+    this.userid = watcher.getUserid();
+    this.watcherid = watcher.getId();
+    this.watchername = watcher.getName();
+    this.movieid = watcher.getMovieid();
+    this.matches = matches;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public Date getCreated() {
+    return created;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public void setStatus(Status status) {
+    this.status = status;
+  }
+
+  public Date getDue() {
+    return due;
+  }
+
+  public void setDue(Date due) {
+    this.due = due;
+  }
+
+  public int getAttempts() {
+    return attempts;
+  }
+
+  public String getLasterror() {
+    return lasterror;
+  }
+
+  public void setLasterror(String lasterror) {
+    this.lasterror = lasterror;
+  }
+
+  public boolean isMailed() {
+    return mailed;
+  }
+
+  public void setMailed(boolean mailed) {
+    this.mailed = mailed;
+  }
+
+  public List<String> getPushedtokens() {
+    return pushedtokens;
+  }
+
+  public Date getDeadline() {
+    return deadline;
+  }
+
+  public void setDeadline(Date deadline) {
+    this.deadline = deadline;
+  }
+
+  public String getClaim() {
+    return claim;
+  }
+
+  public void setClaim(String claim) {
+    this.claim = claim;
+  }
+
+  public String getGroup() {
+    return group;
+  }
+
+  public void setGroup(String group) {
+    this.group = group;
+  }
+
+  public Date getExpires() {
+    return expires;
+  }
+
+  public void setExpires(Date expires) {
+    this.expires = expires;
+  }
+
+  public String getUserid() {
+    return userid;
+  }
+
+  public String getWatcherid() {
+    return watcherid;
+  }
+
+  public String getWatchername() {
+    return watchername;
+  }
+
+  public int getMovieid() {
+    return movieid;
+  }
+
+  public List<PatheShowing> getMatches() {
+    return matches;
+  }
+
+  @Override
+  public String toString() {
+    return "OutboxEntry{"
+        + "id='"
+        + id
+        + '\''
+        + ", status="
+        + status
+        + ", due="
+        + due
+        + ", attempts="
+        + attempts
+        + ", mailed="
+        + mailed
+        + ", pushedtokens="
+        + pushedtokens.size()
+        + ", watcherid='"
+        + watcherid
+        + '\''
+        + ", matches="
+        + (matches == null ? 0 : matches.size())
+        + '}';
+  }
+}
@@ -1,5 +1,10 @@
 package it.sijmen.movienotifier.model;
 
+import it.sijmen.movienotifier.service.pathe.SchedulePartitions;
+import it.sijmen.movienotifier.service.pathe.SortedShowings;
+import it.sijmen.movienotifier.service.pathe.SortedShowingsCodec;
+import it.sijmen.movienotifier.service.pathe.api.SchedulePredicate;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import org.springframework.data.annotation.Id;
@@ -12,6 +17,51 @@ public class PatheMovieCache {
 
   private List<Long> showingids;
 
+  /**
+   * The fingerprint of every showing, at the same index as its id in showingids. Caches that were
+   * stored before fingerprints existed have none.
+   */
+  private List<Long> fingerprints;
+
+  /**
+   * The start time of every showing, at the same index as its id in showingids. Used to prune
+   * showings that are long gone. Caches that were stored before start times existed have none.
+   */
+  private List<Long> starts;
+
+  /**
+   * The cinema and attributes of every showing as they were matched, at the same index as its id in
+   * showingids. Caches that were stored before attributes existed have none.
+   */
+  private List<Long> attributes;
+
+  /**
+   * The showingids, fingerprints, starts and attributes packed by {@link SortedShowingsCodec} into
+   * one binary field. When set, showingids, fingerprints, starts and attributes are not stored.
+   * Caches in the array format are read as before and are packed the next time they are written in
+   * the packed format.
+   */
+  private byte[] packedshowings;
+
+  /**
+   * The keys and hashes of the {@link SchedulePartitions} of the stored showings. Caches that were
+   * stored before partitions existed have none.
+   */
+  private List<Long> partitionkeys;
+
+  private List<Long> partitionhashes;
+
+  /**
+   * The scope of the {@link SchedulePredicate} that was used to load the stored showingids.
+   * Showings outside of this scope have never been looked at. When they enter the scope later on
+   * they are not new, they were just not relevant before.
+   */
+  private List<Integer> scopecinemaids;
+
+  private long scopestartafter;
+
+  private long scopestartbefore;
+
   public PatheMovieCache() {}
 
   public PatheMovieCache(int movieid) {
@@ -23,6 +73,28 @@ public class PatheMovieCache {
     this.showingids = showingsids;
   }
 
+  public PatheMovieCache(
+      int movieid, SortedShowings showings, SchedulePredicate scope, boolean packed) {
+    this.movieid = movieid;
+    if (packed) {
+      this.packedshowings = SortedShowingsCodec.encode(showings);
+    } else {
+      this.showingids = toList(showings.getIds());
+      this.fingerprints = toList(showings.getFingerprints());
+      this.starts = toList(showings.getStarts());
+      this.attributes = toList(showings.getAttributes());
+    }
+    this.scopecinemaids = scope.getCinemaIds();
+    this.scopestartafter = scope.getStartafter();
+    this.scopestartbefore = scope.getStartbefore();
+  }
+
+  private static List<Long> toList(long[] values) {
+    List<Long> out = new ArrayList<>(values.length);
+    for (long value : values) out.add(value);
+    return out;
+  }
+
   public int getMovieid() {
     return movieid;
   }
@@ -32,6 +104,7 @@ public class PatheMovieCache {
   }
 
   public List<Long> getShowingids() {
+    if (packedshowings != null) return toList(getSortedShowings().getIds());
     if (showingids == null) return Collections.emptyList();
     return showingids;
   }
@@ -40,9 +113,89 @@ public class PatheMovieCache {
     this.showingids = showingids;
   }
 
+  public List<Long> getFingerprints() {
+    if (fingerprints == null) return Collections.emptyList();
+    return fingerprints;
+  }
+
+  public void setFingerprints(List<Long> fingerprints) {
+    this.fingerprints = fingerprints;
+  }
+
+  public List<Long> getStarts() {
+    if (starts == null) return Collections.emptyList();
+    return starts;
+  }
+
+  public void setStarts(List<Long> starts) {
+    this.starts = starts;
+  }
+
+  public List<Long> getAttributes() {
+    if (attributes == null) return Collections.emptyList();
+    return attributes;
+  }
+
+  public void setAttributes(List<Long> attributes) {
+    this.attributes = attributes;
+  }
+
+  /** @return the stored partitions or null when they were not stored */
+  public SchedulePartitions getPartitions() {
+    if (partitionkeys == null
+        || partitionhashes == null
+        || partitionkeys.size() != partitionhashes.size()) return null;
+    return SchedulePartitions.of(toArray(partitionkeys), toArray(partitionhashes));
+  }
+
+  public void setPartitions(SchedulePartitions partitions) {
+    this.partitionkeys = toList(partitions.getKeys());
+    this.partitionhashes = toList(partitions.getHashes());
+  }
+
+  private static long[] toArray(List<Long> values) {
+    long[] out = new long[values.size()];
+    for (int i = 0; i < out.length; i++) out[i] = values.get(i);
+    return out;
+  }
+
+  public boolean isPacked() {
+    return packedshowings != null;
+  }
+
+  /**
+   * @return the showingids with their fingerprints, starts and attributes, sorted by id without
+   *     duplicates
+   */
+  public SortedShowings getSortedShowings() {
+    if (packedshowings != null) return SortedShowingsCodec.decode(packedshowings);
+    List<Long> ids = getShowingids();
+    List<Long> prints = getFingerprints();
+    List<Long> startList = getStarts();
+    List<Long> attributeList = getAttributes();
+    long[] idArray = new long[ids.size()];
+    long[] fingerprintArray = new long[idArray.length];
+    long[] startArray = new long[idArray.length];
+    long[] attributeArray = new long[idArray.length];
+    for (int i = 0; i < idArray.length; i++) {
+      idArray[i] = ids.get(i);
+      // fingerprints, starts and attributes stay 0 (unknown) when they were not stored
+      if (prints.size() == idArray.length) fingerprintArray[i] = prints.get(i);
+      if (startList.size() == idArray.length) startArray[i] = startList.get(i);
+      if (attributeList.size() == idArray.length) attributeArray[i] = attributeList.get(i);
+    }
+    return SortedShowings.sort(idArray, fingerprintArray, startArray, attributeArray);
+  }
+
+  /** @return the scope of the stored showingids. Caches without a scope cover everything. */
+  public SchedulePredicate getScope() {
+    if (scopecinemaids == null) return SchedulePredicate.ALL;
+    return new SchedulePredicate(scopecinemaids, scopestartafter, scopestartbefore);
+  }
+
   @Override
   public String toString() {
-    return "PatheMovieCache{" + "movieid=" + movieid + ", showingids=" + showingids + '}';
+    return "PatheMovieCache{" + "movieid=" + movieid + ", showingids=" + getShowingids() + '}';
   }
 
   @Override
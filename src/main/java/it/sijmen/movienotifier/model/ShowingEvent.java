@@ -0,0 +1,77 @@
+package it.sijmen.movienotifier.model;
+
+import it.sijmen.movienotifier.service.pathe.api.PatheShowing;
+import java.util.Date;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * A showing that was detected as new or changed by the checker, with all of its details. Events are
+ * only ever inserted and expire {@value #RETENTION_SECONDS} seconds after they were detected.
+ */
+@Document
+public class ShowingEvent {
+
+  public static final int RETENTION_SECONDS = 14 * 24 * 60 * 60;
+
+  public enum Type {
+    NEW,
+    CHANGED
+  }
+
+  /** The mongodb database id. */
+  @Id private String id;
+
+  @Indexed(expireAfterSeconds = RETENTION_SECONDS)
+  private Date detected;
+
+  private int movieid;
+
+  private Type type;
+
+  private PatheShowing showing;
+
+  public ShowingEvent() {}
+
+  public ShowingEvent(Date detected, int movieid, Type type, PatheShowing showing) {
+    this.detected = detected;
+    this.movieid = movieid;
+    this.type = type;
+    this.showing = showing;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public Date getDetected() {
+    return detected;
+  }
+
+  public int getMovieid() {
+    return movieid;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public PatheShowing getShowing() {
+    return showing;
+  }
+
+  @Override
+  public String toString() {
+    return "ShowingEvent{"
+        + "detected="
+        + detected
+        + ", movieid="
+        + movieid
+        + ", type="
+        + type
+        + ", showing="
+        + showing
+        + '}';
+  }
+}
@@ -0,0 +1,60 @@
+package it.sijmen.movienotifier.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
+
+/** Tells whether a watcher accepts a showing and, when it does not, which fields reject it. */
+public class ShowingExplanation {
+
+  @JsonProperty private long showingid;
+
+  @JsonProperty private int cinemaid;
+
+  @JsonProperty private long start;
+
+  @JsonProperty private boolean accepted;
+
+  @JsonProperty private List<String> rejectedby;
+
+  public ShowingExplanation() {}
+
+  public ShowingExplanation(long showingid, int cinemaid, long start, List<String> rejectedby) {
+    this.showingid = showingid;
+    this.cinemaid = cinemaid;
+    this.start = start;
+    this.accepted = rejectedby.isEmpty();
+    this.rejectedby = rejectedby;
+  }
+
+  public long getShowingid() {
+    return showingid;
+  }
+
+  public int getCinemaid() {
+    return cinemaid;
+  }
+
+  public long getStart() {
+    return start;
+  }
+
+  public boolean isAccepted() {
+    return accepted;
+  }
+
+  public List<String> getRejectedby() {
+    return rejectedby;
+  }
+
+  @Override
+  public String toString() {
+    return "ShowingExplanation{"
+        + "showingid="
+        + showingid
+        + ", accepted="
+        + accepted
+        + ", rejectedby="
+        + rejectedby
+        + '}';
+  }
+}
@@ -0,0 +1,64 @@
+package it.sijmen.movienotifier.model;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import it.sijmen.movienotifier.service.pathe.FilterExpression;
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import javax.validation.Constraint;
+import javax.validation.ConstraintValidator;
+import javax.validation.ConstraintValidatorContext;
+import javax.validation.Payload;
+
+/**
+ * The annotated string is null, empty or a valid {@link FilterExpression}. When it is not, the
+ * message tells what is wrong where, for instance {@code is not a valid filter expression:
+ * unexpected ')' at position 14}. A string longer than {@link FilterExpression#MAX_LENGTH} is left
+ * to {@code @Size}.
+ */
+@Documented
+@Constraint(validatedBy = ValidFilterExpression.Validator.class)
+@Target(FIELD)
+@Retention(RUNTIME)
+public @interface ValidFilterExpression {
+
+  String message() default "is not a valid filter expression";
+
+  Class<?>[] groups() default {};
+
+  Class<? extends Payload>[] payload() default {};
+
+  class Validator implements ConstraintValidator<ValidFilterExpression, String> {
+
+    private String message;
+
+    @Override
+    public void initialize(ValidFilterExpression annotation) {
+      message = annotation.message();
+    }
+
+    @Override
+    public boolean isValid(String expression, ConstraintValidatorContext context) {
+      if (expression == null
+          || expression.trim().isEmpty()
+          || expression.length() > FilterExpression.MAX_LENGTH) return true;
+      try {
+        FilterExpression.compile(expression);
+        return true;
+      } catch (IllegalArgumentException e) {
+        context.disableDefaultConstraintViolation();
+        context
+            .buildConstraintViolationWithTemplate(message + ": " + escape(e.getMessage()))
+            .addConstraintViolation();
+        return false;
+      }
+    }
+
+    /** The reason contains parts of the expression, which must not be read as a template. */
+    private static String escape(String reason) {
+      return reason.replaceAll("([\\\\{}$])", "\\\\$1");
+    }
+  }
+}
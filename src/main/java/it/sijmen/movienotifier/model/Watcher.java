@@ -37,9 +37,10 @@ public class Watcher implements Model {
   @JsonProperty
   private String name;
 
-  @Min(1)
-  @JsonProperty
-  private int movieid;
+  @JsonProperty private int movieid;
+
+  /** Watches every movie instead of the one movieid. */
+  @JsonProperty private boolean anymovie;
 
   @NotNull
   @Min(0)
@@ -75,6 +76,7 @@ public class Watcher implements Model {
     this.userid = watcher.userid;
     this.name = watcher.name;
     this.movieid = watcher.movieid;
+    this.anymovie = watcher.anymovie;
     this.begin = watcher.begin;
     this.end = watcher.end;
     this.filters = new WatcherFilters(watcher.filters);
@@ -82,6 +84,11 @@ public class Watcher implements Model {
 
   public Watcher() {}
 
+  @AssertTrue(message = "must be greater than or equal to 1")
+  private boolean isMovieid() {
+    return anymovie || this.movieid >= 1;
+  }
+
   @AssertTrue(message = "must be later than begin")
   private boolean isEnd() {
     return this.end > this.begin;
@@ -124,6 +131,14 @@ public class Watcher implements Model {
     this.movieid = movieid;
   }
 
+  public boolean isAnymovie() {
+    return anymovie;
+  }
+
+  public void setAnymovie(boolean anymovie) {
+    this.anymovie = anymovie;
+  }
+
   public long getEnd() {
     return end;
   }
@@ -165,6 +180,8 @@ public class Watcher implements Model {
         + '\''
         + ", movieid="
         + movieid
+        + ", anymovie="
+        + anymovie
         + ", begin="
         + begin
         + ", end="
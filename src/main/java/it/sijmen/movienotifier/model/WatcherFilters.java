@@ -2,9 +2,13 @@ package it.sijmen.movienotifier.model;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import it.sijmen.movienotifier.service.pathe.CinemaService;
+import it.sijmen.movienotifier.service.pathe.FilterExpression;
+import java.util.ArrayList;
+import java.util.List;
 import javax.validation.constraints.AssertTrue;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
 
 /** All fields are documented in the Swagger Api Specification in the `/docs` directory. */
 public class WatcherFilters implements Model {
@@ -13,6 +17,9 @@ public class WatcherFilters implements Model {
   @Min(0)
   private int cinemaid;
 
+  /** Optional cinemas that are accepted as well as the cinemaid. */
+  @JsonProperty private List<Integer> cinemaids;
+
   @JsonProperty
   @Min(0)
   private long startafter;
@@ -51,6 +58,12 @@ public class WatcherFilters implements Model {
 
   @NotNull @JsonProperty private FilterOption regularshowing;
 
+  /** Optional, see {@link FilterExpression}. Empty means no expression. */
+  @JsonProperty
+  @Size(max = FilterExpression.MAX_LENGTH)
+  @ValidFilterExpression
+  private String expression;
+
   public WatcherFilters(
       int cinemaid,
       long startafter,
@@ -88,6 +101,7 @@ public class WatcherFilters implements Model {
 
   public WatcherFilters(WatcherFilters filters) {
     this.cinemaid = filters.cinemaid;
+    this.cinemaids = filters.cinemaids == null ? null : new ArrayList<>(filters.cinemaids);
     this.startafter = filters.startafter;
     this.startbefore = filters.startbefore;
     this.ov = filters.ov;
@@ -102,6 +116,7 @@ public class WatcherFilters implements Model {
     this.dolbycinema = filters.dolbycinema;
     this.dolbyatmos = filters.dolbyatmos;
     this.regularshowing = filters.regularshowing;
+    this.expression = filters.expression;
   }
 
   @AssertTrue(message = "must be before than the startbefore")
@@ -119,6 +134,12 @@ public class WatcherFilters implements Model {
     return CinemaService.getFirstById(this.cinemaid) != null;
   }
 
+  @AssertTrue(message = "contains a cinemaid that does not exist.")
+  private boolean isCinemaids() {
+    return cinemaids == null
+        || cinemaids.stream().allMatch(id -> id != null && CinemaService.getFirstById(id) != null);
+  }
+
   public FilterOption isOv() {
     return ov;
   }
@@ -231,6 +252,18 @@ public class WatcherFilters implements Model {
     return startbefore;
   }
 
+  public String getExpression() {
+    return expression;
+  }
+
+  public void setExpression(String expression) {
+    this.expression = expression;
+  }
+
+  public boolean hasExpression() {
+    return expression != null && !expression.trim().isEmpty();
+  }
+
   public int getCinemaid() {
     return cinemaid;
   }
@@ -239,12 +272,22 @@ public class WatcherFilters implements Model {
     this.cinemaid = cinemaid;
   }
 
+  public List<Integer> getCinemaids() {
+    return cinemaids;
+  }
+
+  public void setCinemaids(List<Integer> cinemaids) {
+    this.cinemaids = cinemaids;
+  }
+
   @Override
   public String toString() {
     return "WatcherFilters{"
         + "cinemaid='"
         + cinemaid
         + '\''
+        + ", cinemaids="
+        + cinemaids
         + ", startafter="
         + startafter
         + ", startbefore="
@@ -273,6 +316,9 @@ public class WatcherFilters implements Model {
         + dolbyatmos
         + ", regularshowing="
         + regularshowing
+        + ", expression='"
+        + expression
+        + '\''
         + '}';
   }
 }
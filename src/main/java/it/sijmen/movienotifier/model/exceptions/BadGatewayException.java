@@ -0,0 +1,9 @@
+package it.sijmen.movienotifier.model.exceptions;
+
+/** A service the server depends on, such as the pathe api, failed. */
+public class BadGatewayException extends ApiException {
+
+  public BadGatewayException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,12 @@
+package it.sijmen.movienotifier.model.exceptions;
+
+/**
+ * The server is temporarily unable to answer, for instance because a schedule is still being
+ * fetched.
+ */
+public class ServiceUnavailableException extends ApiException {
+
+  public ServiceUnavailableException(String message) {
+    super(message);
+  }
+}
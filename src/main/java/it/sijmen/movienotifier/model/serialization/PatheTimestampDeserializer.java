@@ -0,0 +1,149 @@
+package it.sijmen.movienotifier.model.serialization;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Deserializes Pathe timestamps like {@code 2017-12-15T21:00:00+01:00} into unix timestamps in
+ * milliseconds. {@link #parse(JsonParser)} parses the value straight from the character buffer of
+ * the parser and allocates nothing for a well formed timestamp; the schedules are read with it. As
+ * a Jackson deserializer the result has to be boxed, which allocates. Instances hold no state and
+ * can be shared between threads.
+ *
+ * <p>Malformed values are deserialized as -1 and counted, see {@link #getMalformedCount()}.
+ */
+public class PatheTimestampDeserializer extends JsonDeserializer<Long> {
+
+  private static final long MALFORMED = Long.MIN_VALUE;
+
+  private static final LongAdder malformedCount = new LongAdder();
+
+  @Override
+  public Long deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+    return parse(p);
+  }
+
+  /** Parses the current token of the parser. Returns -1 when it is not a valid timestamp. */
+  public static long parse(JsonParser p) throws IOException {
+    long millis = parse(p.getTextCharacters(), p.getTextOffset(), p.getTextLength());
+    if (millis == MALFORMED) {
+      malformedCount.increment();
+      return -1;
+    }
+    return millis;
+  }
+
+  /** @return the number of malformed timestamps that were encountered since startup */
+  public static long getMalformedCount() {
+    return malformedCount.sum();
+  }
+
+  /**
+   * Parses {@code yyyy-MM-dd'T'HH:mm:ss[.SSS](Z|+HH:mm|-HH:mm)}. Surrounding whitespace is ignored.
+   */
+  static long parse(char[] buf, int offset, int length) {
+    if (buf == null) return MALFORMED;
+    int i = offset;
+    int end = offset + length;
+    while (i < end && buf[i] <= ' ') i++;
+    while (end > i && buf[end - 1] <= ' ') end--;
+    if (end - i < 20) return MALFORMED;
+
+    int year = digits(buf, i, 4);
+    int month = digits(buf, i + 5, 2);
+    int day = digits(buf, i + 8, 2);
+    int hour = digits(buf, i + 11, 2);
+    int minute = digits(buf, i + 14, 2);
+    int second = digits(buf, i + 17, 2);
+    if (year < 0
+        || month < 1
+        || month > 12
+        || day < 1
+        || day > daysInMonth(year, month)
+        || hour < 0
+        || hour > 23
+        || minute < 0
+        || minute > 59
+        || second < 0
+        || second > 59
+        || buf[i + 4] != '-'
+        || buf[i + 7] != '-'
+        || buf[i + 10] != 'T'
+        || buf[i + 13] != ':'
+        || buf[i + 16] != ':') return MALFORMED;
+    i += 19;
+
+    int millis = 0;
+    if (buf[i] == '.') {
+      int digits = 0;
+      for (i++; i < end && buf[i] >= '0' && buf[i] <= '9'; i++, digits++)
+        if (digits < 3) millis = millis * 10 + (buf[i] - '0');
+      if (digits == 0) return MALFORMED;
+      for (; digits < 3; digits++) millis *= 10;
+    }
+
+    int offsetMinutes = offsetMinutes(buf, i, end);
+    if (offsetMinutes == Integer.MIN_VALUE) return MALFORMED;
+
+    long days = daysSinceEpoch(year, month, day);
+    long seconds = days * 86_400 + hour * 3600 + minute * 60 + second - offsetMinutes * 60L;
+    return seconds * 1000 + millis;
+  }
+
+  /** Parses {@code Z}, {@code +HH:mm}, {@code +HHmm} or {@code +HH} up to the end. */
+  private static int offsetMinutes(char[] buf, int i, int end) {
+    if (i >= end) return Integer.MIN_VALUE;
+    char sign = buf[i];
+    if (sign == 'Z') return i + 1 == end ? 0 : Integer.MIN_VALUE;
+    if (sign != '+' && sign != '-') return Integer.MIN_VALUE;
+
+    int remaining = end - i - 1;
+    int hours = remaining >= 2 ? digits(buf, i + 1, 2) : -1;
+    int minutes;
+    if (remaining == 2) minutes = 0;
+    else if (remaining == 4) minutes = digits(buf, i + 3, 2);
+    else if (remaining == 5 && buf[i + 3] == ':') minutes = digits(buf, i + 4, 2);
+    else return Integer.MIN_VALUE;
+    if (hours < 0 || hours > 18 || minutes < 0 || minutes > 59) return Integer.MIN_VALUE;
+
+    int total = hours * 60 + minutes;
+    return sign == '-' ? -total : total;
+  }
+
+  /** @return the decimal value of the digits or -1 when one of the characters is no digit */
+  private static int digits(char[] buf, int from, int count) {
+    int out = 0;
+    for (int i = from; i < from + count; i++) {
+      char c = buf[i];
+      if (c < '0' || c > '9') return -1;
+      out = out * 10 + (c - '0');
+    }
+    return out;
+  }
+
+  private static int daysInMonth(int year, int month) {
+    if (month == 2) {
+      boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+      return leap ? 29 : 28;
+    }
+    return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+  }
+
+  /**
+   * Days between 1970-01-01 and the given date in the proleptic gregorian calendar.
+   *
+   * @see <a href="http://howardhinnant.github.io/date_algorithms.html#days_from_civil">
+   *     days_from_civil</a>
+   */
+  private static long daysSinceEpoch(int year, int month, int day) {
+    int y = month <= 2 ? year - 1 : year;
+    int era = (y >= 0 ? y : y - 399) / 400;
+    int yearOfEra = y - era * 400;
+    int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+    int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146_097L + dayOfEra - 719_468;
+  }
+}
@@ -0,0 +1,9 @@
+package it.sijmen.movienotifier.repositories;
+
+import it.sijmen.movienotifier.model.MatcherDivergence;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface MatcherDivergenceRepository
+    extends MongoRepository<MatcherDivergence, String>, MatcherDivergenceRepositoryCustom {}
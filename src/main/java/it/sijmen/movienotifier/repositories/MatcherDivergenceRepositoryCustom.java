@@ -0,0 +1,10 @@
+package it.sijmen.movienotifier.repositories;
+
+public interface MatcherDivergenceRepositoryCustom {
+
+  /**
+   * Creates the collection as a capped collection of at most the given number of divergences, when
+   * it does not exist yet. An existing collection is left as it is.
+   */
+  void createCapped(int maxDivergences);
+}
@@ -0,0 +1,28 @@
+package it.sijmen.movienotifier.repositories;
+
+import it.sijmen.movienotifier.model.MatcherDivergence;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+/** Picked up by Spring Data as the implementation of {@link MatcherDivergenceRepositoryCustom}. */
+public class MatcherDivergenceRepositoryImpl implements MatcherDivergenceRepositoryCustom {
+
+  /** An upper bound of the size of one stored divergence. */
+  private static final int DIVERGENCE_BYTES = 512;
+
+  private final MongoTemplate template;
+
+  @Autowired
+  public MatcherDivergenceRepositoryImpl(MongoTemplate template) {
+    this.template = template;
+  }
+
+  @Override
+  public void createCapped(int maxDivergences) {
+    if (template.collectionExists(MatcherDivergence.class)) return;
+    template.createCollection(
+        MatcherDivergence.class,
+        new CollectionOptions(maxDivergences * DIVERGENCE_BYTES, maxDivergences, true));
+  }
+}
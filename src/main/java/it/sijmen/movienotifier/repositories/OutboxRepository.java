@@ -0,0 +1,12 @@
+package it.sijmen.movienotifier.repositories;
+
+import it.sijmen.movienotifier.model.OutboxEntry;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface OutboxRepository
+    extends MongoRepository<OutboxEntry, String>, OutboxRepositoryCustom {
+
+  public long countByStatus(OutboxEntry.Status status);
+}
@@ -0,0 +1,30 @@
+package it.sijmen.movienotifier.repositories;
+
+import it.sijmen.movienotifier.model.OutboxEntry;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+public interface OutboxRepositoryCustom {
+
+  /**
+   * Takes up to {@code limit} pending entries that are due or past their deadline first and counts
+   * the attempt. The entries of the same users that were never attempted and the entries in the
+   * same {@link OutboxEntry#getGroup() group} are taken along, so they are sent in one digest. The
+   * entries are moved ahead to {@code leaseUntil}, so no other worker takes them while they are
+   * delivered. When the worker dies, the entries are due again after the lease. An entry that
+   * another worker claimed in the meantime is left out.
+   *
+   * @return the claimed entries, empty when no entry is due
+   */
+  List<OutboxEntry> claim(Date now, Date leaseUntil, int limit);
+
+  /**
+   * Moves the entries of the users that were never attempted ahead to {@code due}. Their deadline
+   * is kept, so they are still sent in time.
+   */
+  void postpone(Collection<String> userids, Date due);
+
+  /** Removes the entries with the ids in one operation. */
+  void removeAll(Collection<String> ids);
+}
@@ -0,0 +1,105 @@
+package it.sijmen.movienotifier.repositories;
+
+import it.sijmen.movienotifier.model.OutboxEntry;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+/** Picked up by Spring Data as the implementation of {@link OutboxRepositoryCustom}. */
+public class OutboxRepositoryImpl implements OutboxRepositoryCustom {
+
+  private final MongoTemplate template;
+
+  @Autowired
+  public OutboxRepositoryImpl(MongoTemplate template) {
+    this.template = template;
+  }
+
+  @Override
+  public List<OutboxEntry> claim(Date now, Date leaseUntil, int limit) {
+    Query due =
+        Query.query(
+                Criteria.where("status")
+                    .is(OutboxEntry.Status.PENDING)
+                    .orOperator(
+                        Criteria.where("due").lte(now), Criteria.where("deadline").lte(now)))
+            .with(new Sort(Sort.Direction.ASC, "due", "userid"))
+            .limit(limit);
+    due.fields().include("_id").include("userid").include("group");
+    List<OutboxEntry> found = template.find(due, OutboxEntry.class);
+    if (found.isEmpty()) return Collections.emptyList();
+    Set<String> ids = found.stream().map(OutboxEntry::getId).collect(Collectors.toSet());
+
+    // the entries of the same users that are still waiting for their digest go along, and so do
+    // the entries that failed in the same digest
+    Set<String> groups =
+        found.stream()
+            .map(OutboxEntry::getGroup)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toSet());
+    Criteria digest =
+        Criteria.where("userid")
+            .in(found.stream().map(OutboxEntry::getUserid).collect(Collectors.toSet()))
+            .and("attempts")
+            .is(0);
+    Query waiting =
+        Query.query(
+            Criteria.where("status")
+                .is(OutboxEntry.Status.PENDING)
+                .and("_id")
+                .nin(ids)
+                .orOperator(digest, Criteria.where("group").in(groups)));
+    waiting.fields().include("_id");
+    template.find(waiting, OutboxEntry.class).forEach(e -> ids.add(e.getId()));
+
+    // only the entries that are still due or were never claimed, so an entry is never claimed by
+    // two workers at once. The entries of a group share their due moment.
+    String claim = UUID.randomUUID().toString();
+    template.updateMulti(
+        Query.query(
+            Criteria.where("_id")
+                .in(ids)
+                .and("status")
+                .is(OutboxEntry.Status.PENDING)
+                .orOperator(Criteria.where("due").lte(now), Criteria.where("attempts").is(0))),
+        new Update()
+            .set("due", leaseUntil)
+            .set("claim", claim)
+            .unset("deadline")
+            .inc("attempts", 1),
+        OutboxEntry.class);
+    return template.find(Query.query(Criteria.where("claim").is(claim)), OutboxEntry.class);
+  }
+
+  @Override
+  public void postpone(Collection<String> userids, Date due) {
+    if (userids.isEmpty()) return;
+    template.updateMulti(
+        Query.query(
+            Criteria.where("userid")
+                .in(userids)
+                .and("status")
+                .is(OutboxEntry.Status.PENDING)
+                .and("attempts")
+                .is(0)),
+        new Update().set("due", due),
+        OutboxEntry.class);
+  }
+
+  @Override
+  public void removeAll(Collection<String> ids) {
+    if (ids.isEmpty()) return;
+    template.remove(Query.query(Criteria.where("_id").in(ids)), OutboxEntry.class);
+  }
+}
@@ -1,11 +1,16 @@
 package it.sijmen.movienotifier.repositories;
 
 import it.sijmen.movienotifier.model.PatheMovieCache;
+import java.util.Collection;
+import java.util.List;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public interface PatheCacheRepository extends MongoRepository<PatheMovieCache, String> {
+public interface PatheCacheRepository
+    extends MongoRepository<PatheMovieCache, String>, PatheCacheRepositoryCustom {
 
   public PatheMovieCache getFirstByMovieid(int movieId);
+
+  public List<PatheMovieCache> findAllByMovieidIn(Collection<Integer> movieIds);
 }
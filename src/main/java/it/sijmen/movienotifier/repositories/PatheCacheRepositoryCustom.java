@@ -0,0 +1,13 @@
+package it.sijmen.movienotifier.repositories;
+
+import it.sijmen.movienotifier.model.PatheMovieCache;
+import java.util.Collection;
+
+public interface PatheCacheRepositoryCustom {
+
+  /**
+   * Upserts all caches with a single unordered bulk write. Every stored field is replaced and
+   * fields that are not set anymore are removed, so the result equals a save of each cache.
+   */
+  void upsertAll(Collection<PatheMovieCache> caches);
+}
@@ -0,0 +1,52 @@
+package it.sijmen.movienotifier.repositories;
+
+import com.mongodb.BasicDBObject;
+import it.sijmen.movienotifier.model.PatheMovieCache;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+/** Picked up by Spring Data as the implementation of {@link PatheCacheRepositoryCustom}. */
+public class PatheCacheRepositoryImpl implements PatheCacheRepositoryCustom {
+
+  private final MongoTemplate template;
+
+  @Autowired
+  public PatheCacheRepositoryImpl(MongoTemplate template) {
+    this.template = template;
+  }
+
+  @Override
+  public void upsertAll(Collection<PatheMovieCache> caches) {
+    if (caches.isEmpty()) return;
+    MongoConverter converter = template.getConverter();
+    MongoPersistentEntity<?> entity =
+        converter.getMappingContext().getPersistentEntity(PatheMovieCache.class);
+    List<String> fields = new ArrayList<>();
+    entity.doWithProperties(
+        (MongoPersistentProperty property) -> {
+          if (!property.isIdProperty()) fields.add(property.getFieldName());
+        });
+
+    BulkOperations bulk =
+        template.bulkOps(BulkOperations.BulkMode.UNORDERED, PatheMovieCache.class);
+    for (PatheMovieCache cache : caches) {
+      BasicDBObject document = new BasicDBObject();
+      converter.write(cache, document);
+      // sets every written field including the type hint, like a save would
+      Update update = Update.fromDBObject(document, "_id");
+      for (String field : fields) if (!document.containsField(field)) update.unset(field);
+      bulk.upsert(Query.query(Criteria.where("_id").is(cache.getMovieid())), update);
+    }
+    bulk.execute();
+  }
+}
@@ -0,0 +1,13 @@
+package it.sijmen.movienotifier.repositories;
+
+import it.sijmen.movienotifier.model.ShowingEvent;
+import java.util.Date;
+import java.util.List;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ShowingEventRepository extends MongoRepository<ShowingEvent, String> {
+
+  public List<ShowingEvent> getAllByDetectedBetweenOrderByDetectedAsc(Date from, Date to);
+}
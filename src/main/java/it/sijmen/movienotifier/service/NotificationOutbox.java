@@ -0,0 +1,280 @@
+package it.sijmen.movienotifier.service;
+
+import it.sijmen.movienotifier.model.OutboxEntry;
+import it.sijmen.movienotifier.model.Watcher;
+import it.sijmen.movienotifier.repositories.OutboxRepository;
+import it.sijmen.movienotifier.service.pathe.api.PatheShowing;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Delivers notifications through a durable outbox in Mongo, so a failing Mailgun or Firebase
+ * neither slows down the checker nor loses notifications.
+ *
+ * <p>Matches are {@link #enqueue(List, List) enqueued} as {@link OutboxEntry entries} and delivered
+ * by {@code outbox.workers} workers, right after they are enqueued and every {@code
+ * outbox.pollmillis}. A worker claims an entry for {@code outbox.leaseseconds}, so an entry of a
+ * worker that died is delivered again after the lease: delivery is at least once. A failed entry is
+ * retried after {@code outbox.backoff.seconds}, doubled after every attempt up to {@code
+ * outbox.backoff.maxseconds}. After {@code outbox.maxattempts} attempts it is dead-lettered. The
+ * failed entries of a user are retried together, as the digest they were sent in.
+ *
+ * <p>A worker claims up to {@code outbox.batch} entries at once and delivers them together, so the
+ * push messages of all those users are sent to Firebase in as few calls as possible. Workers start
+ * {@code outbox.lingermillis} after the first entry of a run is enqueued, so the entries of all
+ * movies of a run end up in the same batches.
+ *
+ * <p>The entries of a user are sent as one digest. A new entry of a user is held back for {@code
+ * outbox.digest.windowmillis} and postpones the waiting entries of that user by the same window, so
+ * a digest is sent once a user has had no new matches for the window. An entry is never held back
+ * longer than {@code outbox.digest.maxdelaymillis}, plus at most one poll.
+ */
+@Service
+public class NotificationOutbox implements PublicMetrics {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(NotificationOutbox.class);
+
+  private final OutboxRepository repository;
+  private final NotificationService notificationService;
+  private final int workers;
+  private final int maxAttempts;
+  private final long backoff;
+  private final long maxBackoff;
+  private final long lease;
+  private final int batch;
+  private final long linger;
+  private final long digestWindow;
+  private final long digestMaxDelay;
+
+  private final ScheduledThreadPoolExecutor pool;
+
+  /** Whether a drain is scheduled to start after the linger. */
+  private final AtomicBoolean lingering = new AtomicBoolean();
+
+  /** The number of workers that are draining the outbox. */
+  private final AtomicInteger draining = new AtomicInteger();
+
+  private final LongAdder enqueued = new LongAdder();
+  private final LongAdder delivered = new LongAdder();
+  private final LongAdder retried = new LongAdder();
+  private final LongAdder deadLettered = new LongAdder();
+
+  private volatile int lastBatchSize;
+  private volatile long lastBatchMillis;
+
+  @Autowired
+  public NotificationOutbox(
+      OutboxRepository repository,
+      NotificationService notificationService,
+      @Value("${outbox.workers}") int workers,
+      @Value("${outbox.maxattempts}") int maxAttempts,
+      @Value("${outbox.backoff.seconds}") long backoffSeconds,
+      @Value("${outbox.backoff.maxseconds}") long maxBackoffSeconds,
+      @Value("${outbox.leaseseconds}") long leaseSeconds,
+      @Value("${outbox.batch}") int batch,
+      @Value("${outbox.lingermillis}") long lingerMillis,
+      @Value("${outbox.digest.windowmillis}") long digestWindowMillis,
+      @Value("${outbox.digest.maxdelaymillis}") long digestMaxDelayMillis) {
+    if (workers < 1) throw new IllegalArgumentException("The outbox needs at least one worker");
+    if (digestMaxDelayMillis < digestWindowMillis)
+      throw new IllegalArgumentException("The digest delay must not be shorter than its window");
+    this.repository = repository;
+    this.notificationService = notificationService;
+    this.workers = workers;
+    this.maxAttempts = maxAttempts;
+    this.backoff = TimeUnit.SECONDS.toMillis(backoffSeconds);
+    this.maxBackoff = TimeUnit.SECONDS.toMillis(maxBackoffSeconds);
+    this.lease = TimeUnit.SECONDS.toMillis(leaseSeconds);
+    this.batch = Math.min(batch, NotificationService.FCM_BATCH_SIZE);
+    this.linger = Math.max(lingerMillis, digestWindowMillis);
+    this.digestWindow = digestWindowMillis;
+    this.digestMaxDelay = digestMaxDelayMillis;
+    CustomizableThreadFactory factory = new CustomizableThreadFactory("outbox-");
+    factory.setDaemon(true);
+    this.pool = new ScheduledThreadPoolExecutor(workers, factory);
+  }
+
+  /**
+   * Stores the matches of every watcher that has any in one insert and starts delivering them after
+   * the linger. The digests of the users that are waiting are postponed.
+   *
+   * @param matches the matches of every watcher, in the order of the watchers
+   */
+  public void enqueue(List<Watcher> watchers, List<List<PatheShowing>> matches) {
+    Date now = new Date();
+    List<OutboxEntry> entries = new ArrayList<>();
+    for (int i = 0; i < watchers.size(); i++)
+      if (!matches.get(i).isEmpty())
+        entries.add(new OutboxEntry(now, watchers.get(i), matches.get(i)));
+    if (entries.isEmpty()) return;
+    if (digestWindow > 0) {
+      Date due = new Date(now.getTime() + digestWindow);
+      Date deadline = new Date(now.getTime() + digestMaxDelay);
+      for (OutboxEntry entry : entries) {
+        entry.setDue(due);
+        entry.setDeadline(deadline);
+      }
+      repository.postpone(
+          entries.stream().map(OutboxEntry::getUserid).collect(Collectors.toSet()), due);
+    }
+    repository.insert(entries);
+    enqueued.add(entries.size());
+    if (linger <= 0) drain();
+    else if (lingering.compareAndSet(false, true))
+      pool.schedule(
+          () -> {
+            lingering.set(false);
+            drain();
+          },
+          linger,
+          TimeUnit.MILLISECONDS);
+  }
+
+  public void enqueue(Watcher watcher, List<PatheShowing> matches) {
+    enqueue(Collections.singletonList(watcher), Collections.singletonList(matches));
+  }
+
+  /** Starts workers until all workers are draining the outbox. */
+  @Scheduled(fixedDelayString = "${outbox.pollmillis}")
+  public void drain() {
+    for (int running = draining.get(); running < workers; running = draining.get())
+      if (draining.compareAndSet(running, running + 1)) pool.execute(this::work);
+  }
+
+  /** Delivers batches of due entries until there are none. */
+  private void work() {
+    try {
+      List<OutboxEntry> entries;
+      while (!(entries = claim()).isEmpty()) deliver(entries);
+    } catch (Exception e) {
+      LOGGER.error("Could not drain the outbox", e);
+    } finally {
+      draining.decrementAndGet();
+    }
+  }
+
+  private List<OutboxEntry> claim() {
+    long now = System.currentTimeMillis();
+    return repository.claim(new Date(now), new Date(now + lease), batch);
+  }
+
+  /** Sends the entries together and removes the ones that were delivered in one operation. */
+  void deliver(List<OutboxEntry> entries) {
+    long start = System.nanoTime();
+    List<IOException> errors;
+    try {
+      errors = notificationService.sendUpdates(entries);
+    } catch (Exception e) {
+      errors = Collections.nCopies(entries.size(), new IOException(e.getMessage(), e));
+    }
+
+    List<String> sent = new ArrayList<>(entries.size());
+    Map<String, List<Integer>> failedByUser = new LinkedHashMap<>();
+    for (int i = 0; i < entries.size(); i++)
+      if (errors.get(i) == null) sent.add(entries.get(i).getId());
+      else failedByUser.computeIfAbsent(entries.get(i).getUserid(), u -> new ArrayList<>()).add(i);
+    for (List<Integer> digest : failedByUser.values()) failed(entries, errors, digest);
+    repository.removeAll(sent);
+    delivered.add(sent.size());
+    lastBatchSize = entries.size();
+    lastBatchMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+  }
+
+  /**
+   * Retries the failed entries of one user as a digest again: they get the same due moment and a
+   * group, so they are claimed together. An entry that was attempted too often is dead-lettered.
+   *
+   * @param digest the indices of the failed entries of the user
+   */
+  private void failed(List<OutboxEntry> entries, List<IOException> errors, List<Integer> digest) {
+    long now = System.currentTimeMillis();
+    int attempts = digest.stream().mapToInt(i -> entries.get(i).getAttempts()).max().orElse(0);
+    Date due = new Date(now + backoff(attempts));
+    String group = UUID.randomUUID().toString();
+    for (int i : digest) {
+      OutboxEntry entry = entries.get(i);
+      IOException e = errors.get(i);
+      entry.setLasterror(e.getMessage());
+      entry.setClaim(null);
+      if (entry.getAttempts() >= maxAttempts) {
+        LOGGER.error(
+            "Giving up on the notification of watcher {} after {} attempts",
+            entry.getWatcherid(),
+            entry.getAttempts(),
+            e);
+        entry.setStatus(OutboxEntry.Status.DEAD);
+        entry.setGroup(null);
+        entry.setExpires(
+            new Date(now + TimeUnit.SECONDS.toMillis(OutboxEntry.DEAD_RETENTION_SECONDS)));
+        deadLettered.increment();
+      } else {
+        LOGGER.warn(
+            "Could not send the notification of watcher {}, attempt {}: {}",
+            entry.getWatcherid(),
+            entry.getAttempts(),
+            e.getMessage());
+        entry.setDue(due);
+        entry.setGroup(group);
+        retried.increment();
+      }
+      repository.save(entry);
+    }
+  }
+
+  /** @return the delay before the next attempt after the given number of attempts */
+  long backoff(int attempts) {
+    int doublings = Math.min(Math.max(attempts - 1, 0), 30);
+    return Math.min(maxBackoff, backoff << doublings);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics =
+        new ArrayList<>(
+            Arrays.asList(
+                new Metric<>("outbox.enqueued", enqueued.sum()),
+                new Metric<>("outbox.delivered", delivered.sum()),
+                new Metric<>("outbox.retried", retried.sum()),
+                new Metric<>("outbox.deadlettered", deadLettered.sum()),
+                new Metric<>("outbox.workers.active", draining.get()),
+                new Metric<>("outbox.batch.last.size", lastBatchSize),
+                new Metric<>("outbox.batch.last.millis", lastBatchMillis)));
+    try {
+      metrics.add(
+          new Metric<>("outbox.pending", repository.countByStatus(OutboxEntry.Status.PENDING)));
+      metrics.add(new Metric<>("outbox.dead", repository.countByStatus(OutboxEntry.Status.DEAD)));
+    } catch (Exception e) {
+      LOGGER.error("Could not count the outbox", e);
+    }
+    return metrics;
+  }
+}
@@ -6,14 +6,23 @@ import com.google.auth.oauth2.GoogleCredentials;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
 import com.google.firebase.messaging.*;
+import it.sijmen.movienotifier.model.OutboxEntry;
 import it.sijmen.movienotifier.model.User;
-import it.sijmen.movienotifier.model.Watcher;
 import it.sijmen.movienotifier.repositories.UserRepository;
 import it.sijmen.movienotifier.service.pathe.api.PatheShowing;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import net.sargue.mailgun.Configuration;
 import net.sargue.mailgun.Mail;
@@ -22,12 +31,28 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.stereotype.Service;
 
 @Service
-public class NotificationService {
+public class NotificationService implements PublicMetrics {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(NotificationService.class);
+
+  /** The most messages Firebase accepts in one call. */
+  static final int FCM_BATCH_SIZE = 500;
+
+  /**
+   * The error codes of a message to a token that will never accept it: the app was uninstalled or
+   * the token is malformed. Retrying does not help.
+   */
+  static final Set<String> PERMANENT_FCM_ERRORS =
+      new HashSet<>(Arrays.asList("registration-token-not-registered", "invalid-argument"));
+
+  private final LongAdder fcmCalls = new LongAdder();
+  private final LongAdder fcmMessages = new LongAdder();
+
   private UserRepository userRepository;
   private Configuration mailgunConfig;
 
@@ -51,44 +76,143 @@ public class NotificationService {
               .build());
   }
 
-  public void sendUpdates(Watcher watcher, List<PatheShowing> matches) {
-    User user = userRepository.getFirstByUuid(watcher.getUserid());
-    if (user == null) {
-      LOGGER.error(
-          "Could not send notification to user {} because it does not exit.", watcher.getUserid());
-      return;
+  /**
+   * Sends the matches of multiple watchers, which may belong to different users. Every user gets
+   * one digest with the matches of all their watchers: one mail and one push message per device. A
+   * digest of a single watcher looks like a notification of that watcher. The mails are sent one by
+   * one, but the push messages of all users are sent together in calls of at most {@value
+   * #FCM_BATCH_SIZE} messages. Notifications for a user that does not exist anymore are dropped.
+   *
+   * <p>Every notification records the channels it was delivered to, so a retry only sends what
+   * failed: a notification that was {@link OutboxEntry#isMailed() mailed} is not mailed again and
+   * it is not pushed again to a {@link OutboxEntry#getPushedtokens() token} it was pushed to. A
+   * token that Firebase reports as {@link #PERMANENT_FCM_ERRORS not registered or invalid} will
+   * never accept the message, it counts as delivered.
+   *
+   * @return for every notification, in the same order, null when it was delivered to all channels
+   *     of the user or why the channels it was not delivered to failed
+   */
+  public List<IOException> sendUpdates(List<OutboxEntry> notifications) {
+    Map<String, List<Integer>> byUser = new LinkedHashMap<>();
+    for (int i = 0; i < notifications.size(); i++)
+      byUser.computeIfAbsent(notifications.get(i).getUserid(), u -> new ArrayList<>()).add(i);
+
+    String[] mailErrors = new String[notifications.size()];
+    PushBatch push = new PushBatch();
+    // the notifications in every push message
+    List<List<Integer>> pushed = new ArrayList<>();
+    for (List<Integer> digest : byUser.values()) {
+      String userid = notifications.get(digest.get(0)).getUserid();
+      User user = userRepository.getFirstByUuid(userid);
+      if (user == null) {
+        LOGGER.error("Could not send notification to user {} because it does not exit.", userid);
+        continue;
+      }
+
+      List<Integer> unmailed =
+          digest.stream()
+              .filter(i -> !notifications.get(i).isMailed())
+              .collect(Collectors.toList());
+      if (!unmailed.isEmpty()) {
+        Digest mail = new Digest(notifications, unmailed);
+        LOGGER.info("Sending notifications to {} with header {}", user.getName(), mail.header);
+        String error = sendEmail(user, mail.header, mail.body);
+        for (int i : unmailed)
+          if (error == null) notifications.get(i).setMailed(true);
+          else mailErrors[i] = error;
+      }
+
+      for (String token : user.getRegistrationTokens()) {
+        List<Integer> unpushed =
+            digest.stream()
+                .filter(i -> !notifications.get(i).getPushedtokens().contains(token))
+                .collect(Collectors.toList());
+        if (unpushed.isEmpty()) continue;
+        push.add(token, user, new Digest(notifications, unpushed));
+        pushed.add(unpushed);
+      }
     }
 
-    LOGGER.trace("Notifying user about {} matches for watcher {}", matches.size(), watcher.getId());
+    List<String> results = push.send();
+    int[] messages = new int[notifications.size()];
+    int[] failed = new int[notifications.size()];
+    StringBuilder[] failures = new StringBuilder[notifications.size()];
+    for (int m = 0; m < results.size(); m++) {
+      String token = push.tokens.get(m);
+      String result = results.get(m);
+      if (result != null && PERMANENT_FCM_ERRORS.contains(result)) {
+        LOGGER.warn("Dropping the push message to token {}: {}", token, result);
+        result = null;
+      }
+      for (int i : pushed.get(m)) {
+        messages[i]++;
+        if (result == null) {
+          notifications.get(i).getPushedtokens().add(token);
+          continue;
+        }
+        failed[i]++;
+        if (failures[i] == null) failures[i] = new StringBuilder();
+        failures[i].append(token).append(": ").append(result).append("\n");
+      }
+    }
 
-    Collections.sort(matches);
+    IOException[] errors = new IOException[notifications.size()];
+    for (int i = 0; i < notifications.size(); i++)
+      errors[i] =
+          error(
+              mailErrors[i],
+              failed[i] == 0
+                  ? null
+                  : String.format(
+                      "%d of the %d messages failed: \n%s", failed[i], messages[i], failures[i]));
+    return Arrays.asList(errors);
+  }
 
-    String body =
-        matches.stream()
-            .sorted()
-            .map(PatheShowing::toMessageString)
-            .collect(Collectors.joining(lineSeparator()));
+  /** The text of one mail or push message about some notifications of one user. */
+  private static class Digest {
 
-    String header = makeMessageHeader(watcher, matches.size());
+    private final String header;
+    private final String body;
+    private final String watcherIds;
+    private final String watcherNames;
+    private final int matchCount;
+    private final String movieIds;
 
-    try {
-      sendUpdate(
-          user,
-          header,
-          body,
-          watcher.getId(),
-          watcher.getName(),
-          matches.size(),
-          watcher.getMovieid());
-    } catch (IOException e) {
-      LOGGER.error(
-          "Could not send notification to {}. title: {}. Caused By: {}\n",
-          user.getName(),
-          header,
-          e.getMessage());
+    private Digest(List<OutboxEntry> notifications, List<Integer> indices) {
+      List<OutboxEntry> digest =
+          indices.stream().map(notifications::get).collect(Collectors.toList());
+      matchCount = digest.stream().mapToInt(n -> n.getMatches().size()).sum();
+      if (digest.size() == 1) body = makeMessageBody(digest.get(0).getMatches());
+      else
+        body =
+            digest.stream()
+                .map(
+                    n ->
+                        n.getWatchername()
+                            + ":"
+                            + lineSeparator()
+                            + makeMessageBody(n.getMatches()))
+                .collect(Collectors.joining(lineSeparator() + lineSeparator()));
+      watcherIds = join(digest, OutboxEntry::getWatcherid, ",");
+      watcherNames = join(digest, OutboxEntry::getWatchername, ", ");
+      movieIds = join(digest, n -> Integer.toString(n.getMovieid()), ",");
+      header = makeMessageHeader(watcherNames, matchCount);
     }
   }
 
+  private static String makeMessageBody(List<PatheShowing> matches) {
+    return matches.stream()
+        .sorted()
+        .map(PatheShowing::toMessageString)
+        .collect(Collectors.joining(lineSeparator()));
+  }
+
+  /** @return the values of the notifications, in order and without duplicates */
+  private static String join(
+      List<OutboxEntry> digest, Function<OutboxEntry, String> value, String delimiter) {
+    return digest.stream().map(value).distinct().collect(Collectors.joining(delimiter));
+  }
+
   public void sendUpdate(
       User user,
       String header,
@@ -100,58 +224,101 @@ public class NotificationService {
       throws IOException {
     LOGGER.info("Sending notifications to {} with header {}", user.getName(), header);
 
-    IOException mailError = null;
-    IOException firebaseError = null;
+    String mailError = sendEmail(user, header, body);
+    PushBatch push = new PushBatch();
+    for (String token : user.getRegistrationTokens())
+      push.add(token, user, body, watcherId, watcherName, matchCount, Integer.toString(movieid));
+    List<String> results = push.send();
+    StringBuilder failures = new StringBuilder();
+    for (int m = 0; m < results.size(); m++)
+      if (results.get(m) != null)
+        failures.append(push.tokens.get(m)).append(": ").append(results.get(m)).append("\n");
+    IOException error =
+        error(mailError, failures.length() == 0 ? null : "Messages failed: \n" + failures);
+    if (error != null) throw error;
+  }
 
-    if (user.getEmail() != null && !user.getEmail().equals("")) {
-      try {
-        sendEmail(user.getEmail(), header, body);
-      } catch (IOException e) {
-        mailError = e;
-      }
+  private static IOException error(String mailError, String firebaseError) {
+    if (mailError != null && firebaseError != null)
+      return new IOException(
+          "Notification to mail and firebase failed: \n" + mailError + "\n" + firebaseError);
+    else if (mailError != null)
+      return new IOException("Notification to mail failed: \n" + mailError);
+    else if (firebaseError != null)
+      return new IOException("Notification to firebase failed: \n" + firebaseError);
+    return null;
+  }
+
+  /** Push messages, one per token, that are sent together. */
+  private class PushBatch {
+
+    private final AndroidConfig config =
+        AndroidConfig.builder().setPriority(AndroidConfig.Priority.HIGH).build();
+
+    private final List<Message> messages = new ArrayList<>();
+
+    /** The token of every message. */
+    private final List<String> tokens = new ArrayList<>();
+
+    private void add(String token, User user, Digest digest) {
+      add(
+          token,
+          user,
+          digest.body,
+          digest.watcherIds,
+          digest.watcherNames,
+          digest.matchCount,
+          digest.movieIds);
     }
 
-    try {
-      sendAndroidNotification(user, body, watcherId, watcherName, matchCount, movieid);
-    } catch (IOException e) {
-      firebaseError = e;
+    private void add(
+        String token,
+        User user,
+        String body,
+        String watcherId,
+        String watcherName,
+        int matchCount,
+        String movieids) {
+      messages.add(
+          Message.builder()
+              .setToken(token)
+              .putData("user.id", user.getId())
+              .putData("watcher.id", watcherId)
+              .putData("watcher.name", watcherName)
+              .putData("watcher.movieid", movieids)
+              .putData("matches.count", Integer.toString(matchCount))
+              .putData("body", body)
+              .setAndroidConfig(config)
+              .build());
+      tokens.add(token);
     }
 
-    if (mailError != null && firebaseError != null) {
-      throw new IOException(
-          "Notification to mail and firebase failed: \n"
-              + mailError.getMessage()
-              + "\n"
-              + firebaseError.getMessage());
-    } else if (mailError != null) {
-      throw new IOException("Notification to mail failed: \n" + mailError.getMessage());
-    } else if (firebaseError != null) {
-      throw new IOException("Notification to firebase failed: \n" + firebaseError.getMessage());
+    /**
+     * @return for every message, in the same order, null when it was sent or the error code. When a
+     *     call to Firebase fails as a whole, all its messages failed with the reason.
+     */
+    private List<String> send() {
+      List<String> results = new ArrayList<>(messages.size());
+      for (int from = 0; from < messages.size(); from += FCM_BATCH_SIZE) {
+        int to = Math.min(messages.size(), from + FCM_BATCH_SIZE);
+        try {
+          fcmCalls.increment();
+          fcmMessages.add(to - from);
+          results.addAll(sendAll(messages.subList(from, to)));
+        } catch (IOException e) {
+          results.addAll(Collections.nCopies(to - from, e.getMessage()));
+        }
+      }
+      return results;
     }
   }
 
-  private void sendAndroidNotification(
-      User user, String body, String watcherId, String watcherName, int matchCount, int movieid)
-      throws IOException {
-    AndroidConfig config = AndroidConfig.builder().setPriority(AndroidConfig.Priority.HIGH).build();
-
-    List<Message> messages =
-        user.getRegistrationTokens().stream()
-            .map(
-                token ->
-                    Message.builder()
-                        .setToken(token)
-                        .putData("user.id", user.getId())
-                        .putData("watcher.id", watcherId)
-                        .putData("watcher.name", watcherName)
-                        .putData("watcher.movieid", Integer.toString(movieid))
-                        .putData("matches.count", Integer.toString(matchCount))
-                        .putData("body", body)
-                        .setAndroidConfig(config)
-                        .build())
-            .collect(Collectors.toList());
-
-    if (messages.isEmpty()) return;
+  /**
+   * Sends at most {@value #FCM_BATCH_SIZE} messages in one call to Firebase.
+   *
+   * @return for every message the error code when it failed or null when it was sent
+   */
+  List<String> sendAll(List<Message> messages) throws IOException {
     BatchResponse response;
     try {
       LOGGER.info("Sending notifications to {} devices.", messages.size());
@@ -160,25 +327,20 @@ public class NotificationService {
     } catch (FirebaseMessagingException e) {
       throw new IOException("Something went wront at firebase: " + e.getErrorCode(), e);
     }
+    List<String> results = new ArrayList<>(messages.size());
+    for (SendResponse r : response.getResponses())
+      results.add(r.isSuccessful() ? null : r.getException().getErrorCode());
+    return results;
+  }
 
-    if (response.getFailureCount() > 0) {
-      List<SendResponse> responses = response.getResponses();
-      StringBuilder failureMessage = new StringBuilder();
-      for (int i = 0; i < responses.size(); i++) {
-        SendResponse r = responses.get(i);
-        if (r.isSuccessful()) continue;
-        failureMessage
-            .append(user.getRegistrationTokens().get(i))
-            .append(": ")
-            .append(r.getException().getErrorCode())
-            .append("\n");
-      }
-
-      String error =
-          String.format(
-              "%d of the %d messages failed: \n%s",
-              response.getFailureCount(), messages.size(), failureMessage.toString());
-      throw new IOException(error);
+  /** @return null when the user has no email address or the mail was sent, or why it failed */
+  String sendEmail(User user, String header, String body) {
+    if (user.getEmail() == null || user.getEmail().equals("")) return null;
+    try {
+      sendEmail(user.getEmail(), header, body);
+      return null;
+    } catch (IOException e) {
+      return e.getMessage();
     }
   }
 
@@ -214,7 +376,14 @@ public class NotificationService {
     return message.length() > 20 ? message.substring(0, 20) + "..." : message;
   }
 
-  private String makeMessageHeader(Watcher watcher, int matches) {
-    return watcher.getName() + lineSeparator() + "+" + matches + " matches";
+  private static String makeMessageHeader(String watcherName, int matches) {
+    return watcherName + lineSeparator() + "+" + matches + " matches";
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    return Arrays.asList(
+        new Metric<>("notifications.fcm.calls", fcmCalls.sum()),
+        new Metric<>("notifications.fcm.messages", fcmMessages.sum()));
   }
 }
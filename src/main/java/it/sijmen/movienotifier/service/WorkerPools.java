@@ -0,0 +1,81 @@
+package it.sijmen.movienotifier.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * The thread pools that background work runs on, so nothing blocks the common fork join pool.
+ *
+ * <ul>
+ *   <li>{@link #cpu()} for matching and other work that never blocks. It has {@code
+ *       executor.cpu.threads} threads, or one per processor when that is 0.
+ *   <li>{@link #io()} for calls to the pathe api, Mongo, Mailgun and Firebase. It has {@code
+ *       executor.io.threads} threads.
+ * </ul>
+ *
+ * Both pools queue work that arrives while all threads are busy.
+ */
+@Service
+public class WorkerPools implements PublicMetrics {
+
+  private final ThreadPoolExecutor cpu;
+  private final ThreadPoolExecutor io;
+
+  @Autowired
+  public WorkerPools(
+      @Value("${executor.cpu.threads}") int cpuThreads,
+      @Value("${executor.io.threads}") int ioThreads) {
+    if (cpuThreads == 0) cpuThreads = Runtime.getRuntime().availableProcessors();
+    this.cpu = pool("cpu-", cpuThreads);
+    this.io = pool("io-", ioThreads);
+  }
+
+  private static ThreadPoolExecutor pool(String prefix, int threads) {
+    if (threads < 1) throw new IllegalArgumentException("A pool needs at least one thread");
+    CustomizableThreadFactory factory = new CustomizableThreadFactory(prefix);
+    factory.setDaemon(true);
+    return new ThreadPoolExecutor(
+        threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), factory);
+  }
+
+  public Executor cpu() {
+    return cpu;
+  }
+
+  public Executor io() {
+    return io;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    cpu.shutdown();
+    io.shutdown();
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = new ArrayList<>();
+    addMetrics(metrics, "executor.cpu", cpu);
+    addMetrics(metrics, "executor.io", io);
+    return metrics;
+  }
+
+  private static void addMetrics(List<Metric<?>> metrics, String name, ThreadPoolExecutor pool) {
+    metrics.add(new Metric<>(name + ".threads", pool.getPoolSize()));
+    metrics.add(new Metric<>(name + ".active", pool.getActiveCount()));
+    metrics.add(new Metric<>(name + ".queued", pool.getQueue().size()));
+    metrics.add(new Metric<>(name + ".completed", pool.getCompletedTaskCount()));
+  }
+}
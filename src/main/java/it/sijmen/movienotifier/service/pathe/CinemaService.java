@@ -8,6 +8,9 @@ public class CinemaService {
 
   private static final List<Cinema> allCinemas;
 
+  /** The cinemas at the index of their id, for lookups in the hot path of matching showings. */
+  private static final Cinema[] cinemasById;
+
   static {
     allCinemas = new ArrayList<>();
 
@@ -40,6 +43,9 @@ public class CinemaService {
     allCinemas.add(new Cinema(36, "Pathé Amsterdam Noord", 52.40113f, 4.93474f));
     allCinemas.add(new Cinema(38, "Pathé Euroscoop Schiedam", 51.92439f, 4.40648f));
     allCinemas.add(new Cinema(37, "Pathé Euroscoop Tilburg", 51.53925f, 5.07611f));
+
+    cinemasById = new Cinema[allCinemas.stream().mapToInt(Cinema::getId).max().orElse(-1) + 1];
+    for (Cinema cinema : allCinemas) cinemasById[cinema.getId()] = cinema;
   }
 
   public static List<Cinema> getAllCinemaLocations() {
@@ -47,14 +53,16 @@ public class CinemaService {
   }
 
   public static Cinema getFirstById(int id) {
-    return allCinemas.stream().filter(cinema -> cinema.getId() == id).findFirst().orElse(null);
+    return id >= 0 && id < cinemasById.length ? cinemasById[id] : null;
+  }
+
+  /** @return the highest id of all cinemas */
+  public static int getMaxId() {
+    return cinemasById.length - 1;
   }
 
   public static boolean hasLaserImax(int id) {
-    return allCinemas.stream()
-        .filter(cinema -> cinema.getId() == id)
-        .map(Cinema::hasLaserImax)
-        .findFirst()
-        .orElse(false);
+    Cinema cinema = getFirstById(id);
+    return cinema != null && cinema.hasLaserImax();
   }
 }
@@ -0,0 +1,85 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import it.sijmen.movienotifier.model.WatcherFilters;
+import java.util.Arrays;
+
+/**
+ * The cinemas a watcher accepts, as a bitset over the ids of the {@link CinemaService cinemas}.
+ * Every set has {@link #WORDS} words, so testing whether it contains a cinema is one array access
+ * and sets can be stored next to each other in {@link WatcherColumns}. Ids that are not the id of a
+ * known cinema are left out, because no showing of a known cinema can match them.
+ */
+public final class CinemaSet {
+
+  /** The number of words of every set. */
+  static final int WORDS = (CinemaService.getMaxId() >>> 6) + 1;
+
+  private final long[] words;
+
+  private CinemaSet(long[] words) {
+    this.words = words;
+  }
+
+  /** @return the set of the cinemaid and the optional cinemaids of the filters */
+  public static CinemaSet of(WatcherFilters filters) {
+    long[] words = new long[WORDS];
+    add(words, filters.getCinemaid());
+    if (filters.getCinemaids() != null)
+      for (Integer id : filters.getCinemaids()) if (id != null) add(words, id);
+    return new CinemaSet(words);
+  }
+
+  public static CinemaSet of(int... ids) {
+    long[] words = new long[WORDS];
+    for (int id : ids) add(words, id);
+    return new CinemaSet(words);
+  }
+
+  private static void add(long[] words, int id) {
+    if (id >= 0 && id >>> 6 < WORDS) words[id >>> 6] |= 1L << id;
+  }
+
+  public boolean contains(int id) {
+    return id >= 0 && id >>> 6 < WORDS && (words[id >>> 6] & (1L << id)) != 0;
+  }
+
+  /**
+   * @return the word with the bits of the cinemas {@code 64 * index} up to {@code 64 * index + 63}
+   */
+  long getWord(int index) {
+    return words[index];
+  }
+
+  /** @return the ids of the cinemas in ascending order */
+  public int[] toArray() {
+    int[] ids = new int[size()];
+    int i = 0;
+    for (int w = 0; w < WORDS; w++)
+      for (long word = words[w]; word != 0; word &= word - 1)
+        ids[i++] = (w << 6) + Long.numberOfTrailingZeros(word);
+    return ids;
+  }
+
+  public int size() {
+    int size = 0;
+    for (long word : words) size += Long.bitCount(word);
+    return size;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    return Arrays.equals(words, ((CinemaSet) o).words);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(words);
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.toString(toArray());
+  }
+}
@@ -0,0 +1,214 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import it.sijmen.movienotifier.model.Cinema;
+import it.sijmen.movienotifier.service.pathe.api.PatheShowing;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The form of a {@link PatheShowing} that watchers are matched against. It is created once when a
+ * schedule is received and never changes.
+ *
+ * <p>All attributes are packed in one int: for every attribute one bit in the upper half that tells
+ * whether it is known and one bit in the lower half with its value, so an attribute is yes, no or
+ * unknown. Attributes that combine more than one field of the showing are derived here, so matching
+ * does not have to:
+ *
+ * <ul>
+ *   <li>{@link #ATMOS}: the showing has atmos or is a dolby cinema showing
+ *   <li>{@link #LASER}: the showing has laser, is a dolby cinema showing or is an imax showing in a
+ *       cinema with a laser imax
+ *   <li>{@link #PREMIUM}: the showing is imax, dolby cinema, 4dx or screenx, so it is not a regular
+ *       showing
+ * </ul>
+ *
+ * Such an attribute is only known when all fields it combines are known.
+ *
+ * <p>The time of day and the day of the week of the start are those in the timezone of the cinema.
+ *
+ * <p>The original showing is kept to render notifications.
+ */
+public final class CompactShowing {
+
+  static final int D3 = 1;
+  static final int NL = 1 << 1;
+  static final int IMAX = 1 << 2;
+  static final int OV = 1 << 3;
+  static final int HFR = 1 << 4;
+  static final int K4 = 1 << 5;
+  static final int DX4 = 1 << 6;
+  static final int SCREENX = 1 << 7;
+  static final int VISION = 1 << 8;
+  static final int ATMOS = 1 << 9;
+  static final int LASER = 1 << 10;
+  static final int PREMIUM = 1 << 11;
+
+  private static final ZoneId DEFAULT_ZONE = ZoneId.of("Europe/Amsterdam");
+
+  private static final Map<String, ZoneId> ZONES = new ConcurrentHashMap<>();
+
+  private final long id;
+  private final long movieId;
+  private final int cinemaId;
+  private final long start;
+  private final int attributes;
+  private final short minuteOfDay;
+  private final byte dayOfWeek;
+  private final PatheShowing source;
+
+  private CompactShowing(PatheShowing source, int attributes) {
+    this(source, source.getCinemaId(), source.getStart(), attributes);
+  }
+
+  private CompactShowing(PatheShowing source, int cinemaId, long start, int attributes) {
+    this.id = source.getId();
+    this.movieId = source.getMovieId();
+    this.cinemaId = cinemaId;
+    this.start = start;
+    this.attributes = attributes;
+    ZonedDateTime local = Instant.ofEpochMilli(start).atZone(zone(cinemaId));
+    this.minuteOfDay = (short) (local.getHour() * 60 + local.getMinute());
+    this.dayOfWeek = (byte) local.getDayOfWeek().getValue();
+    this.source = source;
+  }
+
+  private static ZoneId zone(int cinemaId) {
+    Cinema cinema = CinemaService.getFirstById(cinemaId);
+    if (cinema == null || cinema.getTimezone() == null) return DEFAULT_ZONE;
+    return ZONES.computeIfAbsent(cinema.getTimezone(), ZoneId::of);
+  }
+
+  public static CompactShowing of(PatheShowing s) {
+    return new CompactShowing(s, attributes(s));
+  }
+
+  /**
+   * @return the known attributes of the showing in the upper and their values in the lower 16 bits
+   */
+  static int attributes(PatheShowing s) {
+    int known = 0;
+    int value = 0;
+    Integer is3d = s.getIs3d();
+    Integer nl = s.getNl();
+    Integer imax = s.getImax();
+    Integer ov = s.getOv();
+    Integer hfr = s.getHfr();
+    Integer is4k = s.getIs4k();
+    Integer isAtmos = s.getIsAtmos();
+    Integer isLaser = s.getIsLaser();
+    Boolean is4dx = s.getIs4dx();
+    Boolean isScreenx = s.getIsScreenx();
+    Boolean isVision = s.getIsVision();
+
+    if (is3d != null) known |= D3;
+    if (is3d != null && is3d == 1) value |= D3;
+    if (nl != null) known |= NL;
+    if (nl != null && nl == 1) value |= NL;
+    if (imax != null) known |= IMAX;
+    if (imax != null && imax == 1) value |= IMAX;
+    if (ov != null) known |= OV;
+    if (ov != null && ov == 1) value |= OV;
+    if (hfr != null) known |= HFR;
+    if (hfr != null && hfr == 1) value |= HFR;
+    if (is4k != null) known |= K4;
+    if (is4k != null && is4k == 1) value |= K4;
+    if (is4dx != null) known |= DX4;
+    if (is4dx != null && is4dx) value |= DX4;
+    if (isScreenx != null) known |= SCREENX;
+    if (isScreenx != null && isScreenx) value |= SCREENX;
+    if (isVision != null) known |= VISION;
+    if (isVision != null && isVision) value |= VISION;
+
+    if (isAtmos != null && isVision != null) {
+      known |= ATMOS;
+      if (isAtmos == 1 || isVision) value |= ATMOS;
+    }
+    if (isLaser != null && isVision != null && imax != null) {
+      known |= LASER;
+      if (isLaser == 1 || isVision || (imax == 1 && CinemaService.hasLaserImax(s.getCinemaId())))
+        value |= LASER;
+    }
+    if (imax != null && isVision != null && is4dx != null && isScreenx != null) {
+      known |= PREMIUM;
+      if (imax == 1 || isVision || is4dx || isScreenx) value |= PREMIUM;
+    }
+    return (known << 16) | value;
+  }
+
+  /**
+   * @return this showing as it was before it changed, with the cinema, start and {@link
+   *     #attributes(PatheShowing) attributes} it had then. It is only meant to be matched, the
+   *     source is that of this showing.
+   */
+  CompactShowing previous(int cinemaId, long start, int attributes) {
+    return new CompactShowing(source, cinemaId, start, attributes);
+  }
+
+  /** @return the compact form of every showing, in the same order */
+  public static List<CompactShowing> of(List<PatheShowing> showings) {
+    List<CompactShowing> out = new ArrayList<>(showings.size());
+    for (PatheShowing showing : showings) out.add(of(showing));
+    return Collections.unmodifiableList(out);
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public long getMovieId() {
+    return movieId;
+  }
+
+  public int getCinemaId() {
+    return cinemaId;
+  }
+
+  public long getStart() {
+    return start;
+  }
+
+  /** @return the minutes since midnight at the start */
+  public int getMinuteOfDay() {
+    return minuteOfDay;
+  }
+
+  /** @return the day of the week at the start, from 1 for monday to 7 for sunday */
+  public int getDayOfWeek() {
+    return dayOfWeek;
+  }
+
+  /** @return the attributes that are known */
+  public int getKnown() {
+    return attributes >>> 16;
+  }
+
+  /** @return the known attributes that are set */
+  public int getSet() {
+    return attributes & 0xFFFF;
+  }
+
+  /** @return the showing as it was received, to render notifications */
+  public PatheShowing getSource() {
+    return source;
+  }
+
+  @Override
+  public String toString() {
+    return "CompactShowing{"
+        + "id="
+        + id
+        + ", cinemaId="
+        + cinemaId
+        + ", start="
+        + start
+        + ", attributes="
+        + Integer.toHexString(attributes)
+        + '}';
+  }
+}
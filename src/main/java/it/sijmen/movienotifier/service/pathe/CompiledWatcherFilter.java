@@ -0,0 +1,207 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import it.sijmen.movienotifier.model.FilterOption;
+import it.sijmen.movienotifier.model.Watcher;
+import it.sijmen.movienotifier.model.WatcherFilters;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The filters of a watcher compiled into two bit masks, so a {@link CompactShowing} is accepted
+ * with a few bitwise operations and without allocating anything.
+ *
+ * <p>Every filter option is compiled into one bit in the {@code yes} or {@code no} mask, or into
+ * none for {@code NOPREFERENCE}. A showing is accepted when no known attribute that must be set is
+ * unset and no known attribute that must not be set is set. Unknown attributes are always accepted.
+ * A watcher that wants a regular showing must not have a {@link CompactShowing#PREMIUM} showing.
+ *
+ * <p>The {@link FilterExpression filter expression} of a watcher, when it has one, is tested last.
+ *
+ * <p>A watcher for {@link Watcher#isAnymovie() any movie} is compiled with movieid {@link
+ * #ANY_MOVIE} and accepts the showings of every movie.
+ */
+public final class CompiledWatcherFilter {
+
+  /** The movieid of the watchers for any movie. Never the id of a real movie. */
+  static final int ANY_MOVIE = 0;
+
+  /** The name of the filter option of every {@link CompactShowing} attribute, by bit. */
+  private static final String[] OPTIONS = {
+    "3d",
+    "nl",
+    "imax",
+    "ov",
+    "hfr",
+    "4k",
+    "4dx",
+    "screenx",
+    "dolbycinema",
+    "dolbyatmos",
+    "laser",
+    "regularshowing"
+  };
+
+  private final int movieid;
+  private final CinemaSet cinemas;
+  private final long startafter;
+  private final long startbefore;
+
+  /** The attributes that must be set when they are known. */
+  private final int yes;
+
+  /** The attributes that must not be set when they are known. */
+  private final int no;
+
+  /** Null when the watcher has no expression. */
+  private final FilterExpression expression;
+
+  private CompiledWatcherFilter(
+      int movieid,
+      CinemaSet cinemas,
+      long startafter,
+      long startbefore,
+      int yes,
+      int no,
+      FilterExpression expression) {
+    this.movieid = movieid;
+    this.cinemas = cinemas;
+    this.startafter = startafter;
+    this.startbefore = startbefore;
+    this.yes = yes;
+    this.no = no;
+    this.expression = expression;
+  }
+
+  public static CompiledWatcherFilter compile(Watcher watcher) {
+    WatcherFilters f = watcher.getFilters();
+    int[] masks = new int[2];
+    add(masks, f.isD3(), CompactShowing.D3);
+    add(masks, f.isImax(), CompactShowing.IMAX);
+    add(masks, f.isOv(), CompactShowing.OV);
+    add(masks, f.isNl(), CompactShowing.NL);
+    add(masks, f.isHfr(), CompactShowing.HFR);
+    add(masks, f.isK4(), CompactShowing.K4);
+    add(masks, f.isDx4(), CompactShowing.DX4);
+    add(masks, f.isScreenx(), CompactShowing.SCREENX);
+    add(masks, f.isDolbycinema(), CompactShowing.VISION);
+    add(masks, f.isDolbyatmos(), CompactShowing.ATMOS);
+    add(masks, f.isLaser(), CompactShowing.LASER);
+    add(masks, invert(f.isRegularshowing()), CompactShowing.PREMIUM);
+    return new CompiledWatcherFilter(
+        watcher.isAnymovie() ? ANY_MOVIE : watcher.getMovieid(),
+        CinemaSet.of(f),
+        f.getStartafter(),
+        f.getStartbefore(),
+        masks[0],
+        masks[1],
+        f.hasExpression() ? FilterExpression.compile(f.getExpression()) : null);
+  }
+
+  private static void add(int[] masks, FilterOption option, int attribute) {
+    if (option == FilterOption.YES) masks[0] |= attribute;
+    else if (option == FilterOption.NO) masks[1] |= attribute;
+  }
+
+  private static FilterOption invert(FilterOption option) {
+    if (option == FilterOption.YES) return FilterOption.NO;
+    if (option == FilterOption.NO) return FilterOption.YES;
+    return option;
+  }
+
+  public boolean accepts(CompactShowing showing) {
+    return cinemas.contains(showing.getCinemaId())
+        && showing.getStart() <= startbefore
+        && showing.getStart() >= startafter
+        && (showing.getMovieId() == movieid || movieid == ANY_MOVIE)
+        && ((yes & showing.getKnown() & ~showing.getSet()) | (no & showing.getSet())) == 0
+        && (expression == null || expression.test(showing));
+  }
+
+  /**
+   * Tells why a showing is not accepted. This is slow compared to {@link #accepts(CompactShowing)}
+   * and meant to explain a watcher to its owner.
+   *
+   * @return the names of the watcher fields that reject the showing, as they are named in the api.
+   *     Empty when the showing is accepted.
+   */
+  public List<String> rejections(CompactShowing showing) {
+    List<String> rejections = new ArrayList<>();
+    if (showing.getMovieId() != movieid && movieid != ANY_MOVIE) rejections.add("movieid");
+    if (!cinemas.contains(showing.getCinemaId())) rejections.add("cinemaid");
+    if (showing.getStart() < startafter) rejections.add("startafter");
+    if (showing.getStart() > startbefore) rejections.add("startbefore");
+    int rejected = (yes & showing.getKnown() & ~showing.getSet()) | (no & showing.getSet());
+    for (int bit = 0; bit < OPTIONS.length; bit++)
+      if ((rejected & (1 << bit)) != 0) rejections.add(OPTIONS[bit]);
+    if (expression != null && !expression.test(showing)) rejections.add("expression");
+    return rejections;
+  }
+
+  int getMovieid() {
+    return movieid;
+  }
+
+  public CinemaSet getCinemas() {
+    return cinemas;
+  }
+
+  public long getStartafter() {
+    return startafter;
+  }
+
+  public long getStartbefore() {
+    return startbefore;
+  }
+
+  int getYes() {
+    return yes;
+  }
+
+  int getNo() {
+    return no;
+  }
+
+  FilterExpression getExpression() {
+    return expression;
+  }
+
+  /**
+   * Two filters are equal when they were compiled from the same movie, cinemas, start window and
+   * filter options, so they accept the same showings.
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    CompiledWatcherFilter that = (CompiledWatcherFilter) o;
+    return movieid == that.movieid
+        && cinemas.equals(that.cinemas)
+        && startafter == that.startafter
+        && startbefore == that.startbefore
+        && yes == that.yes
+        && no == that.no
+        && Objects.equals(expression, that.expression);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(movieid, cinemas, startafter, startbefore, yes, no, expression);
+  }
+
+  @Override
+  public String toString() {
+    return "CompiledWatcherFilter{"
+        + "movieid="
+        + movieid
+        + ", cinemas="
+        + cinemas
+        + ", yes="
+        + Integer.toBinaryString(yes)
+        + ", no="
+        + Integer.toBinaryString(no)
+        + ", expression="
+        + expression
+        + '}';
+  }
+}
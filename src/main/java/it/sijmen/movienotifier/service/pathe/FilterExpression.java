@@ -0,0 +1,322 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * An optional filter of a watcher that is written as an expression, for filters that the fixed
+ * filter options can not express. For instance {@code (imax or dolbycinema) and time >= 18:00}.
+ *
+ * <pre>
+ * expression = term { "or" term }
+ * term       = factor { "and" factor }
+ * factor     = "not" factor | "(" expression ")" | attribute | time | day
+ * attribute  = "3d" | "nl" | "imax" | "ov" | "hfr" | "4k" | "4dx" | "screenx" | "dolbycinema"
+ *            | "dolbyatmos" | "laser" | "regularshowing"
+ * time       = "time" ( "&lt;" | "&lt;=" | "&gt;" | "&gt;=" | "=" ) hh:mm
+ * day        = "day" ( "=" name | "in" "(" name { "," name } ")" )
+ * </pre>
+ *
+ * Times and days are those of the showing in the timezone of its cinema, days are named {@code mon}
+ * to {@code sun}. Like the filter options, an attribute that is unknown for a showing never rejects
+ * it, also not when it is negated.
+ *
+ * <p>An expression is at most {@value #MAX_LENGTH} characters long and nests at most {@value
+ * #MAX_DEPTH} levels of {@code not} and parentheses.
+ *
+ * <p>An expression is parsed once into a tree of predicates that the JIT inlines like hand-written
+ * code. A chain of {@code and} or {@code or} is one node that tests its parts in a loop, so the
+ * tree is only as deep as the nesting. Compiled expressions are shared by their text, the {@value
+ * #CACHE_SIZE} that were used last are kept.
+ */
+public final class FilterExpression {
+
+  public static final int MAX_LENGTH = 1000;
+
+  public static final int MAX_DEPTH = 20;
+
+  private static final int CACHE_SIZE = 10_000;
+
+  private static final Map<String, FilterExpression> CACHE =
+      new LinkedHashMap<String, FilterExpression>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FilterExpression> eldest) {
+          return size() > CACHE_SIZE;
+        }
+      };
+
+  private static final Map<String, Integer> ATTRIBUTES = new HashMap<>();
+
+  private static final List<String> DAYS =
+      Arrays.asList("mon", "tue", "wed", "thu", "fri", "sat", "sun");
+
+  static {
+    ATTRIBUTES.put("3d", CompactShowing.D3);
+    ATTRIBUTES.put("nl", CompactShowing.NL);
+    ATTRIBUTES.put("imax", CompactShowing.IMAX);
+    ATTRIBUTES.put("ov", CompactShowing.OV);
+    ATTRIBUTES.put("hfr", CompactShowing.HFR);
+    ATTRIBUTES.put("4k", CompactShowing.K4);
+    ATTRIBUTES.put("4dx", CompactShowing.DX4);
+    ATTRIBUTES.put("screenx", CompactShowing.SCREENX);
+    ATTRIBUTES.put("dolbycinema", CompactShowing.VISION);
+    ATTRIBUTES.put("dolbyatmos", CompactShowing.ATMOS);
+    ATTRIBUTES.put("laser", CompactShowing.LASER);
+  }
+
+  private final String text;
+
+  private final Predicate<CompactShowing> predicate;
+
+  private FilterExpression(String text, Predicate<CompactShowing> predicate) {
+    this.text = text;
+    this.predicate = predicate;
+  }
+
+  /**
+   * @return the compiled expression, shared with all other expressions with the same text
+   * @throws IllegalArgumentException when the expression is not valid, with a message that tells
+   *     where
+   */
+  public static FilterExpression compile(String text) {
+    synchronized (CACHE) {
+      FilterExpression cached = CACHE.get(text);
+      if (cached != null) return cached;
+    }
+    FilterExpression compiled = new FilterExpression(text, new Parser(text).parse());
+    synchronized (CACHE) {
+      CACHE.put(text, compiled);
+    }
+    return compiled;
+  }
+
+  public boolean test(CompactShowing showing) {
+    return predicate.test(showing);
+  }
+
+  public String getText() {
+    return text;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    return text.equals(((FilterExpression) o).text);
+  }
+
+  @Override
+  public int hashCode() {
+    return text.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return text;
+  }
+
+  /**
+   * Compiles while it parses. Every method gets whether its part of the expression is negated, so
+   * negations are pushed down to the attributes, which accept unknown values both ways.
+   */
+  private static class Parser {
+
+    private final String text;
+    private final List<String> tokens = new ArrayList<>();
+    private final List<Integer> positions = new ArrayList<>();
+    private int next;
+    private int depth;
+
+    private Parser(String text) {
+      if (text.length() > MAX_LENGTH)
+        throw new IllegalArgumentException("longer than " + MAX_LENGTH + " characters");
+      this.text = text;
+      tokenize();
+    }
+
+    private void tokenize() {
+      int i = 0;
+      while (i < text.length()) {
+        char c = text.charAt(i);
+        int start = i;
+        if (Character.isWhitespace(c)) {
+          i++;
+          continue;
+        }
+        if (Character.isLetterOrDigit(c)) {
+          while (i < text.length()
+              && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == ':')) i++;
+        } else if ((c == '<' || c == '>') && i + 1 < text.length() && text.charAt(i + 1) == '=') {
+          i += 2;
+        } else if ("()<>=,".indexOf(c) >= 0) {
+          i++;
+        } else {
+          throw new IllegalArgumentException("unexpected '" + c + "' at position " + (start + 1));
+        }
+        tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+        positions.add(start);
+      }
+    }
+
+    private Predicate<CompactShowing> parse() {
+      Predicate<CompactShowing> predicate = expression(false);
+      if (next < tokens.size()) throw error("unexpected '" + tokens.get(next) + "'");
+      return predicate;
+    }
+
+    private Predicate<CompactShowing> expression(boolean negated) {
+      List<Predicate<CompactShowing>> terms = new ArrayList<>();
+      do terms.add(term(negated));
+      while (accept("or"));
+      return negated ? all(terms) : any(terms);
+    }
+
+    private Predicate<CompactShowing> term(boolean negated) {
+      List<Predicate<CompactShowing>> factors = new ArrayList<>();
+      do factors.add(factor(negated));
+      while (accept("and"));
+      return negated ? any(factors) : all(factors);
+    }
+
+    private Predicate<CompactShowing> factor(boolean negated) {
+      if (accept("not")) return nested(() -> factor(!negated));
+      if (accept("(")) {
+        Predicate<CompactShowing> predicate = nested(() -> expression(negated));
+        expect(")");
+        return predicate;
+      }
+      if (accept("time")) return time(negated);
+      if (accept("day")) return day(negated);
+      String name = take("a filter");
+      if (name.equals("regularshowing")) return attribute(CompactShowing.PREMIUM, !negated);
+      Integer attribute = ATTRIBUTES.get(name);
+      if (attribute == null) throw error("unknown filter '" + name + "'", next - 1);
+      return attribute(attribute, negated);
+    }
+
+    private Predicate<CompactShowing> nested(Supplier<Predicate<CompactShowing>> part) {
+      if (++depth > MAX_DEPTH) throw error("nested deeper than " + MAX_DEPTH + " levels", next - 1);
+      Predicate<CompactShowing> predicate = part.get();
+      depth--;
+      return predicate;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Predicate<CompactShowing> all(List<Predicate<CompactShowing>> parts) {
+      if (parts.size() == 1) return parts.get(0);
+      Predicate<CompactShowing>[] array = parts.toArray(new Predicate[0]);
+      return s -> {
+        for (Predicate<CompactShowing> part : array) if (!part.test(s)) return false;
+        return true;
+      };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Predicate<CompactShowing> any(List<Predicate<CompactShowing>> parts) {
+      if (parts.size() == 1) return parts.get(0);
+      Predicate<CompactShowing>[] array = parts.toArray(new Predicate[0]);
+      return s -> {
+        for (Predicate<CompactShowing> part : array) if (part.test(s)) return true;
+        return false;
+      };
+    }
+
+    private static Predicate<CompactShowing> attribute(int attribute, boolean negated) {
+      if (negated) return s -> (s.getSet() & attribute) == 0;
+      return s -> (s.getKnown() & ~s.getSet() & attribute) == 0;
+    }
+
+    private Predicate<CompactShowing> time(boolean negated) {
+      String operator = take("a comparison");
+      int minute = minuteOfDay(take("a time"));
+      Predicate<CompactShowing> predicate;
+      switch (operator) {
+        case "<":
+          predicate = s -> s.getMinuteOfDay() < minute;
+          break;
+        case "<=":
+          predicate = s -> s.getMinuteOfDay() <= minute;
+          break;
+        case ">":
+          predicate = s -> s.getMinuteOfDay() > minute;
+          break;
+        case ">=":
+          predicate = s -> s.getMinuteOfDay() >= minute;
+          break;
+        case "=":
+          predicate = s -> s.getMinuteOfDay() == minute;
+          break;
+        default:
+          throw error("unknown comparison '" + operator + "'", next - 2);
+      }
+      return negated ? predicate.negate() : predicate;
+    }
+
+    private Predicate<CompactShowing> day(boolean negated) {
+      int days = 0;
+      if (accept("=")) days = day(take("a day"));
+      else {
+        expect("in");
+        expect("(");
+        do days |= day(take("a day"));
+        while (accept(","));
+        expect(")");
+      }
+      int mask = negated ? ~days : days;
+      return s -> (mask & (1 << s.getDayOfWeek())) != 0;
+    }
+
+    private int day(String name) {
+      int day = DAYS.indexOf(name);
+      if (day < 0) throw error("unknown day '" + name + "'", next - 1);
+      return 1 << (day + 1);
+    }
+
+    private int minuteOfDay(String time) {
+      String[] parts = time.split(":");
+      try {
+        if (parts.length == 2) {
+          int hour = Integer.parseInt(parts[0]);
+          int minute = Integer.parseInt(parts[1]);
+          if (hour >= 0 && hour < 24 && minute >= 0 && minute < 60) return hour * 60 + minute;
+        }
+      } catch (NumberFormatException e) {
+        // reported below
+      }
+      throw error("'" + time + "' is not a time like 18:30", next - 1);
+    }
+
+    private boolean accept(String token) {
+      if (next < tokens.size() && tokens.get(next).equals(token)) {
+        next++;
+        return true;
+      }
+      return false;
+    }
+
+    private void expect(String token) {
+      if (!accept(token)) throw error("expected '" + token + "'");
+    }
+
+    private String take(String what) {
+      if (next >= tokens.size()) throw error("expected " + what);
+      return tokens.get(next++);
+    }
+
+    private IllegalArgumentException error(String message) {
+      return error(message, next);
+    }
+
+    private IllegalArgumentException error(String message, int token) {
+      int position = token < positions.size() ? positions.get(token) : text.length();
+      return new IllegalArgumentException(message + " at position " + (position + 1));
+    }
+  }
+}
@@ -0,0 +1,21 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import it.sijmen.movienotifier.model.Watcher;
+import java.util.List;
+import org.springframework.stereotype.Component;
+
+/** Matches with a {@link WatcherIndex}, which only tests the watchers that can accept a showing. */
+@Component
+public class IndexMatcher implements ShowingMatcher {
+
+  @Override
+  public String getName() {
+    return "index";
+  }
+
+  @Override
+  public WatcherMatches match(List<Watcher> watchers, List<CompactShowing> showings) {
+    WatcherIndex index = WatcherIndex.of(watchers);
+    return new WatcherMatches(index.match(showings), index.getDistinctFilters());
+  }
+}
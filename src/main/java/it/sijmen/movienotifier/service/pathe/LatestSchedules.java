@@ -0,0 +1,84 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import it.sijmen.movienotifier.service.WorkerPools;
+import it.sijmen.movienotifier.service.pathe.api.PatheApiClient;
+import it.sijmen.movienotifier.service.pathe.api.PatheShowings;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps the latest complete schedule of every movie in memory for at most {@code
+ * cache.pathe.schedule.maxage} minutes. When a schedule is not known it is fetched once, requests
+ * for the same movie that arrive while it is being fetched wait for that same fetch.
+ */
+@Service
+public class LatestSchedules {
+
+  private final PatheApiClient apiClient;
+  private final WorkerPools pools;
+  private final long maxAge;
+
+  private final ConcurrentHashMap<Integer, Snapshot> snapshots = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<Integer, CompletableFuture<PatheShowings>> fetches =
+      new ConcurrentHashMap<>();
+
+  @Autowired
+  public LatestSchedules(
+      PatheApiClient apiClient,
+      WorkerPools pools,
+      @Value("${cache.pathe.schedule.maxage}") long maxAgeMinutes) {
+    this.apiClient = apiClient;
+    this.pools = pools;
+    this.maxAge = TimeUnit.MINUTES.toMillis(maxAgeMinutes);
+  }
+
+  /** @return the latest schedule of the movie, completed right away when it is in memory */
+  public CompletableFuture<PatheShowings> get(int movieId) {
+    Snapshot snapshot = snapshots.get(movieId);
+    if (snapshot != null && System.currentTimeMillis() - snapshot.fetched <= maxAge)
+      return CompletableFuture.completedFuture(snapshot.showings);
+
+    CompletableFuture<PatheShowings> fetch = new CompletableFuture<>();
+    CompletableFuture<PatheShowings> running = fetches.putIfAbsent(movieId, fetch);
+    if (running != null) return running;
+
+    CompletableFuture.runAsync(
+        () -> {
+          // the fetch is forgotten before it completes, so a failed fetch can be retried at once
+          try {
+            PatheShowings showings = apiClient.getShowingsForMovie(movieId);
+            update(movieId, showings);
+            fetches.remove(movieId, fetch);
+            fetch.complete(showings);
+          } catch (Exception e) {
+            fetches.remove(movieId, fetch);
+            fetch.completeExceptionally(e);
+          }
+        },
+        pools.io());
+    return fetch;
+  }
+
+  /** Stores the schedule that was just fetched and forgets the schedules that are too old. */
+  private void update(int movieId, PatheShowings showings) {
+    long now = System.currentTimeMillis();
+    snapshots.put(movieId, new Snapshot(showings, now));
+    snapshots.values().removeIf(s -> now - s.fetched > maxAge);
+  }
+
+  private static class Snapshot {
+
+    private final PatheShowings showings;
+
+    private final long fetched;
+
+    private Snapshot(PatheShowings showings, long fetched) {
+      this.showings = showings;
+      this.fetched = fetched;
+    }
+  }
+}
@@ -1,229 +1,471 @@
 package it.sijmen.movienotifier.service.pathe;
 
-import static it.sijmen.movienotifier.model.FilterOption.NOPREFERENCE;
-import static it.sijmen.movienotifier.model.FilterOption.YES;
-
-import it.sijmen.movienotifier.model.FilterOption;
 import it.sijmen.movienotifier.model.PatheMovieCache;
+import it.sijmen.movienotifier.model.ShowingEvent;
 import it.sijmen.movienotifier.model.Watcher;
-import it.sijmen.movienotifier.model.WatcherFilters;
-import it.sijmen.movienotifier.repositories.PatheCacheRepository;
-import it.sijmen.movienotifier.service.NotificationService;
+import it.sijmen.movienotifier.repositories.ShowingEventRepository;
+import it.sijmen.movienotifier.service.NotificationOutbox;
+import it.sijmen.movienotifier.service.WorkerPools;
 import it.sijmen.movienotifier.service.pathe.api.PatheApiClient;
 import it.sijmen.movienotifier.service.pathe.api.PatheShowing;
 import it.sijmen.movienotifier.service.pathe.api.PatheShowings;
+import it.sijmen.movienotifier.service.pathe.api.SchedulePredicate;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.stereotype.Service;
 
 @Service
-public class PatheNotifier {
+public class PatheNotifier implements PublicMetrics {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(PatheNotifier.class);
 
-  private PatheCacheRepository repository;
-  private NotificationService notificationService;
+  private ScheduleCache cache;
+  private ShowingEventRepository eventRepository;
+  private NotificationOutbox outbox;
   private PatheApiClient apiClient;
+  private WorkerPools pools;
+  private ShadowMatching matching;
+  private boolean packCache;
+  private long cacheHorizon;
+
+  /** The partitions that were compared and that changed during the current run. */
+  private long runPartitions;
+
+  private long runChangedPartitions;
+
+  private volatile double skippedPartitions;
+
+  /**
+   * The watchers and their distinct filters of the movies that were matched in the current run,
+   * counted by the matching on the cpu pool.
+   */
+  private final LongAdder runWatchers = new LongAdder();
+
+  private final LongAdder runDistinctFilters = new LongAdder();
+
+  private volatile double dedupeRatio = 1;
+
+  /** The watchers for any movie, which are matched against the new showings of every movie. */
+  private List<Watcher> runWildcards = Collections.emptyList();
+
+  /** The new and changed showings of all movies in the current run. */
+  private List<CompactShowing> runShowings = new ArrayList<>();
+
+  /** The known old versions of the changed showings of all movies in the current run. */
+  private List<CompactShowing> runPrevious = new ArrayList<>();
+
+  /**
+   * The new cache entries of the movies that changed in the current run, each with the matching and
+   * enqueueing of its notifications. An entry is only saved once its notifications are in the
+   * outbox, so showings whose notifications were lost are detected again in the next run.
+   */
+  private Map<Integer, PendingSave> runSaves = new LinkedHashMap<>();
+
+  /**
+   * The showings of earlier runs whose notifications to the watchers for any movie could not be put
+   * in the outbox, by id. They are matched again in the next run, so such a failure does not keep
+   * the schedules of their movies from being stored.
+   */
+  private Map<Long, CompactShowing> unsentWildcardShowings = new LinkedHashMap<>();
+
+  /** The known old versions of the unsent showings that changed, by id. */
+  private Map<Long, CompactShowing> unsentWildcardPrevious = new HashMap<>();
 
   @Autowired
   public PatheNotifier(
-      PatheCacheRepository repository,
-      NotificationService notificationService,
-      PatheApiClient apiClient) {
-    this.repository = repository;
-    this.notificationService = notificationService;
+      ScheduleCache cache,
+      ShowingEventRepository eventRepository,
+      NotificationOutbox outbox,
+      PatheApiClient apiClient,
+      WorkerPools pools,
+      ShadowMatching matching,
+      @Value("${cache.pathe.packed}") boolean packCache,
+      @Value("${cache.pathe.horizonminutes}") long cacheHorizonMinutes) {
+    this.cache = cache;
+    this.eventRepository = eventRepository;
+    this.outbox = outbox;
     this.apiClient = apiClient;
+    this.pools = pools;
+    this.matching = matching;
+    this.packCache = packCache;
+    this.cacheHorizon = TimeUnit.MINUTES.toMillis(cacheHorizonMinutes);
   }
 
+  /**
+   * Fetches the schedules of the movies of the watchers and notifies the watchers about the
+   * showings that are new or changed. The watchers for any movie do not cause any schedule to be
+   * fetched, but are matched against the new showings of all movies that are. When the
+   * notifications of a movie could not be put in the outbox, the new schedule of that movie is not
+   * stored and its showings are detected again in the next run. When those of the watchers for any
+   * movie could not, only the watchers for any movie are matched again against those showings in
+   * the next run.
+   */
   public void checkWatcher(List<Watcher> watcher) {
     LOGGER.trace("Checking #{} watchers", watcher.size());
-    watcher.stream()
-        .collect(Collectors.groupingBy(Watcher::getMovieid))
-        .forEach(this::checkForUpdates);
+    Map<Boolean, List<Watcher>> wildcard =
+        watcher.stream().collect(Collectors.partitioningBy(Watcher::isAnymovie));
+    Map<Integer, List<Watcher>> byMovie =
+        wildcard.get(false).stream().collect(Collectors.groupingBy(Watcher::getMovieid));
+    try {
+      cache.preload(byMovie.keySet());
+    } catch (Exception e) {
+      LOGGER.error("Could not preload the cache, loading movies one by one", e);
+    }
+    runPartitions = 0;
+    runChangedPartitions = 0;
+    runWatchers.reset();
+    runDistinctFilters.reset();
+    runSaves = new LinkedHashMap<>();
+    runWildcards = wildcard.get(true);
+    runShowings = new ArrayList<>();
+    runPrevious = new ArrayList<>();
+    byMovie.forEach(this::checkForUpdates);
+    notifyWildcards();
+    for (PendingSave pending : runSaves.values())
+      if (await(pending.notified, pending.data.getMovieid())) cache.save(pending.data);
+    cache.flush();
+    if (runPartitions > 0) skippedPartitions = 1 - (double) runChangedPartitions / runPartitions;
+    long distinct = runDistinctFilters.sum();
+    if (distinct > 0) dedupeRatio = (double) runWatchers.sum() / distinct;
+  }
+
+  /**
+   * Matches the watchers for any movie against the new showings of this run and the unsent ones of
+   * earlier runs that did not start yet. An unsent showing that was detected again keeps the old
+   * version it was first detected against, the watchers were not notified about the version in
+   * between.
+   */
+  private void notifyWildcards() {
+    long now = System.currentTimeMillis();
+    Map<Long, CompactShowing> showings = new LinkedHashMap<>();
+    Map<Long, CompactShowing> previous = new HashMap<>();
+    for (CompactShowing showing : unsentWildcardShowings.values())
+      if (showing.getStart() >= now) {
+        showings.put(showing.getId(), showing);
+        CompactShowing old = unsentWildcardPrevious.get(showing.getId());
+        if (old != null) previous.put(showing.getId(), old);
+      }
+    Set<Long> unsent = new HashSet<>(showings.keySet());
+    for (CompactShowing showing : runShowings) showings.put(showing.getId(), showing);
+    for (CompactShowing old : runPrevious)
+      if (!unsent.contains(old.getId())) previous.put(old.getId(), old);
+    unsentWildcardShowings = new LinkedHashMap<>();
+    unsentWildcardPrevious = new HashMap<>();
+    if (runWildcards.isEmpty() || showings.isEmpty()) return;
+
+    LOGGER.debug(
+        "Matching {} watchers for any movie with {} new showings, {} of earlier runs",
+        runWildcards.size(),
+        showings.size(),
+        unsent.size());
+    CompletableFuture<Void> notified =
+        notifyWatchers(
+            runWildcards, new ArrayList<>(showings.values()), new ArrayList<>(previous.values()));
+    if (!await(notified, "any movie")) {
+      unsentWildcardShowings = showings;
+      unsentWildcardPrevious = previous;
+    }
   }
 
   private void checkForUpdates(int movieId, List<Watcher> watchers) {
     LOGGER.trace("Checking #{} watchers with modieid {}", watchers.size(), movieId);
+    long now = System.currentTimeMillis();
+    // the showings the watchers for any movie are interested in are parsed as well
+    SchedulePredicate predicate =
+        SchedulePredicate.forWatchers(
+            runWildcards.isEmpty() ? watchers : concat(watchers, runWildcards), now);
     PatheMovieCache oldData;
     PatheShowings newData;
     try {
-      oldData = repository.getFirstByMovieid(movieId);
-      newData = apiClient.getShowingsForMovie(movieId);
+      oldData = cache.get(movieId);
+      newData = apiClient.getShowingsForMovie(movieId, predicate);
     } catch (Exception e) {
       LOGGER.error("Could not load old or new data for movieId {}", movieId, e);
       return;
     }
+    newData.sortById();
+    SortedShowings newShowings = newData.getSortedShowings();
+    SchedulePartitions newPartitions = SchedulePartitions.of(newData.getShowings());
     if (oldData == null) {
-      repository.save(makeCacheFromResponse(newData));
+      cache.save(cacheEntry(movieId, newShowings, newPartitions, predicate, now));
       LOGGER.trace("First time retreving data for movie {} and storing in repo", movieId);
       return;
     }
-    if (newData.getShowingsids().isEmpty()) {
+    if (newData.getShowings().isEmpty()) {
       LOGGER.trace(
           "Received no showings for movieid {} so nothing to do for this movieid", movieId);
       return;
     }
-    if (oldData.getShowingids().containsAll(newData.getShowingsids())) {
+    runPartitions += newPartitions.size();
+    SortedShowings oldShowings = oldData.getSortedShowings();
+    ShowingIdDiff diff = ShowingIdDiff.between(oldShowings, newShowings, now);
+    if (!diff.hasAdditions() && !diff.hasChanges()) {
       LOGGER.trace("Old and new data for movie {} are equal", movieId);
       return;
     }
-    repository.save(makeCacheFromResponse(newData));
-    LOGGER.trace("Stored new data for movie {}", movieId);
-
-    List<PatheShowing> showings = newData.getShowings();
-    List<Long> oldshowings = oldData.getShowingids();
-
-    showings.removeIf(s -> oldshowings.contains(s.getId()));
-    watchers
-        .parallelStream()
-        .forEach(
-            w -> {
-              List<PatheShowing> collect =
-                  showings.stream()
-                      .filter(showing -> accepts(w, showing))
-                      .collect(Collectors.toList());
-              if (!collect.isEmpty()) {
-                try {
-                  notificationService.sendUpdates(w, collect);
-                } catch (Exception e) {
-                  LOGGER.error(e.getMessage());
-                }
-              }
-            });
-  }
-
-  private PatheMovieCache makeCacheFromResponse(PatheShowings newData) {
-    return new PatheMovieCache(newData.getMovieid(), newData.getShowingsids());
+    ShowingIdDiff.Selection selection =
+        diff.select(newData.getCompactShowings(), oldData.getScope());
+    List<CompactShowing> showings = selection.getAll();
+    logEvents(movieId, selection);
+    runShowings.addAll(showings);
+    runPrevious.addAll(selection.getPrevious());
+
+    List<Watcher> affected =
+        affectedWatchers(watchers, oldData, oldShowings, newShowings, newPartitions, predicate);
+    CompletableFuture<Void> notified =
+        notifyWatchers(
+            affected,
+            showings,
+            selection.getPrevious(),
+            distinct -> countDistinct(movieId, affected.size(), distinct));
+    runSaves.put(
+        movieId,
+        new PendingSave(cacheEntry(movieId, newShowings, newPartitions, predicate, now), notified));
   }
 
-  public boolean accepts(Watcher watcher, PatheShowing showing) {
-    WatcherFilters d = watcher.getFilters();
-    if (showing.getCinemaId() != watcher.getFilters().getCinemaid()) {
-      LOGGER.debug(
-          "Watcher's cinemaid {} does not equal showing cinemaid {}",
-          watcher.getFilters().getCinemaid(),
-          showing.getCinemaId());
-      return false;
-    }
-    if (!(showing.getStart() <= d.getStartbefore())) {
-      LOGGER.debug("End does not do good");
-      return false;
-    }
-    if (!(showing.getStart() >= d.getStartafter())) {
-      LOGGER.debug("Start does not do good");
-      return false;
+  private static List<Watcher> concat(List<Watcher> first, List<Watcher> second) {
+    List<Watcher> out = new ArrayList<>(first.size() + second.size());
+    out.addAll(first);
+    out.addAll(second);
+    return out;
+  }
+
+  /**
+   * Compares the partitions of the old and new showings over the scope that both were loaded with,
+   * so showings that started since the old ones were stored or that only one scope covers do not
+   * count as changes. Falls back to the stored partitions for caches without the cinema, start or
+   * fingerprint of every showing.
+   *
+   * @return the watchers that look at one of the partitions that changed, or all watchers when the
+   *     old partitions are unknown
+   */
+  private List<Watcher> affectedWatchers(
+      List<Watcher> watchers,
+      PatheMovieCache oldData,
+      SortedShowings oldShowings,
+      SortedShowings newShowings,
+      SchedulePartitions newPartitions,
+      SchedulePredicate scope) {
+    SchedulePartitions oldCompared = SchedulePartitions.of(oldShowings, scope, oldData.getScope());
+    SchedulePartitions newCompared = SchedulePartitions.of(newShowings, scope, oldData.getScope());
+    if (oldCompared == null || newCompared == null) {
+      oldCompared = oldData.getPartitions();
+      newCompared = newPartitions;
     }
-    if (showing.getMovieId() != watcher.getMovieid()) {
-      LOGGER.debug("Movie id is not equal!");
-      return false;
+    if (oldCompared == null) {
+      runChangedPartitions += newCompared.size();
+      return watchers;
     }
+    long[] changed = SchedulePartitions.changed(oldCompared, newCompared);
+    for (long key : changed)
+      if (Arrays.binarySearch(newCompared.getKeys(), key) >= 0) runChangedPartitions++;
+    return watchers.stream()
+        .filter(w -> SchedulePartitions.overlaps(changed, w.getFilters()))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Matches the watchers on the cpu pool and puts the matches in the outbox on the io pool, so the
+   * caller can go on with the next movie in the meantime. Delivery happens later, by the outbox.
+   *
+   * @param previous the old versions of the changed showings. A watcher is not notified about a
+   *     changed showing it already accepted before the change, it was notified about that one.
+   */
+  private CompletableFuture<Void> notifyWatchers(
+      List<Watcher> watchers, List<CompactShowing> showings, List<CompactShowing> previous) {
+    return notifyWatchers(watchers, showings, previous, distinct -> {});
+  }
 
-    return accepts(d.isD3(), toBool(showing.getIs3d()))
-        && accepts(d.isImax(), toBool(showing.getImax()))
-        && accepts(d.isOv(), toBool(showing.getOv()))
-        && accepts(d.isNl(), toBool(showing.getNl()))
-        && accepts(d.isHfr(), toBool(showing.getHfr()))
-        && accepts(d.isK4(), toBool(showing.getIs4k()))
-        && accepts(d.isDx4(), showing.getIs4dx())
-        && accepts(d.isScreenx(), showing.getIsScreenx())
-        && accepts(d.isDolbycinema(), showing.getIsVision())
-        &&
-
-        /*
-         * A movie is shown using the Dolby Atmos sound system when one of the following conditions are true:
-         *  - the `isAtmos` property is set on the PatheShowing
-         *  - the showing takes place in a Dolby Cinema room
-         */
-        accepts(d.isDolbyatmos(), toBool(showing.getIsAtmos()), showing.getIsVision())
-        &&
-
-        /*
-         * A movie is projected using a laser-projector if one of the following conditions are true:
-         *   - the `isLaser` property is set on the PatheShowing
-         *   - the showing takes places in a DolbyCinema cinema room
-         *   - the showing takes place in a IMAX room that has an Laser projector
-         */
-        accepts(
-            d.isLaser(),
-            toBool(showing.getIsLaser()),
-            showing.getIsVision(),
-            (showing.getImax() == 1 && CinemaService.hasLaserImax(showing.getCinemaId())))
-        &&
-
-        /*
-         * A showing is considered 'regular' when it is not any premium experience
-         */
-        acceptsAll(
-            d.isRegularshowing(),
-            !toBool(showing.getImax()),
-            !showing.getIsVision(),
-            !showing.getIs4dx(),
-            !showing.getIsScreenx());
-  }
-
-  private Boolean toBool(Integer i) {
-    if (i == null) {
-      return null;
+  /** @param distinctFilters receives the number of distinct filters of the watchers */
+  private CompletableFuture<Void> notifyWatchers(
+      List<Watcher> watchers,
+      List<CompactShowing> showings,
+      List<CompactShowing> previous,
+      IntConsumer distinctFilters) {
+    return CompletableFuture.supplyAsync(
+            () -> {
+              WatcherMatches matches = match(watchers, showings);
+              distinctFilters.accept(matches.getDistinctFilters());
+              return withoutPrevious(watchers, matches.getAccepted(), previous);
+            },
+            pools.cpu())
+        .thenAcceptAsync(matches -> outbox.enqueue(watchers, matches), pools.io());
+  }
+
+  private void countDistinct(int movieId, int watchers, int distinct) {
+    if (distinct == 0) return;
+    if (LOGGER.isDebugEnabled())
+      LOGGER.debug(
+          "Matched {} watchers with {} distinct filters for movie {}, {} watchers per filter",
+          watchers,
+          distinct,
+          movieId,
+          String.format("%.2f", (double) watchers / distinct));
+    runWatchers.add(watchers);
+    runDistinctFilters.add(distinct);
+  }
+
+  /** @return the matches without the changed showings the watchers accepted before the change */
+  private List<List<PatheShowing>> withoutPrevious(
+      List<Watcher> watchers, List<List<PatheShowing>> matches, List<CompactShowing> previous) {
+    if (previous.isEmpty()) return matches;
+    List<List<PatheShowing>> before = match(watchers, previous).getAccepted();
+    List<List<PatheShowing>> out = new ArrayList<>(matches.size());
+    for (int i = 0; i < matches.size(); i++) {
+      List<PatheShowing> accepted = matches.get(i);
+      if (accepted.isEmpty() || before.get(i).isEmpty()) {
+        out.add(accepted);
+        continue;
+      }
+      Set<Long> notified = new HashSet<>();
+      for (PatheShowing showing : before.get(i)) notified.add(showing.getId());
+      out.add(
+          accepted.stream()
+              .filter(showing -> !notified.contains(showing.getId()))
+              .collect(Collectors.toList()));
     }
-    return i == 1;
+    return out;
   }
 
   /**
-   * If option is NOPREFERENCE, always return true If one of the value is null, return true If
-   * option is YES, all value's are or'ed: (A || B || C ...) If option is NO, all values are inverse
-   * or'ed: !(A || B || C ...)
+   * Waits until the watchers are matched and their notifications are enqueued.
+   *
+   * @param movie the movie the watchers are for, for the log
+   * @return false when that failed
    */
-  private boolean accepts(FilterOption option, Boolean... value) {
-    if (option == NOPREFERENCE) {
+  private static boolean await(CompletableFuture<Void> notified, Object movie) {
+    try {
+      notified.join();
       return true;
+    } catch (Exception e) {
+      LOGGER.error("Could not notify the watchers for movie {}", movie, e);
+      return false;
     }
-    boolean result = false;
+  }
 
-    for (Boolean b : value) {
-      // if there is missing data, always return true
-      if (b == null) {
-        return true;
-      }
-      if (b) {
-        result = true;
-      }
+  WatcherMatches match(List<Watcher> watchers, List<CompactShowing> showings) {
+    return matching.match(watchers, showings);
+  }
+
+  /** Appends the detected showings to the event log. Failing to do so does not stop the check. */
+  private void logEvents(int movieId, ShowingIdDiff.Selection selection) {
+    if (selection.isEmpty()) return;
+    Date detected = new Date();
+    List<ShowingEvent> events = new ArrayList<>();
+    for (CompactShowing showing : selection.getAdded())
+      events.add(new ShowingEvent(detected, movieId, ShowingEvent.Type.NEW, showing.getSource()));
+    for (CompactShowing showing : selection.getChanged())
+      events.add(
+          new ShowingEvent(detected, movieId, ShowingEvent.Type.CHANGED, showing.getSource()));
+    try {
+      eventRepository.insert(events);
+    } catch (Exception e) {
+      LOGGER.error("Could not log {} showing events for movie {}", events.size(), movieId, e);
     }
+  }
 
-    if (option == YES) {
-      return result;
+  /**
+   * Matches the given watchers again against the showings that were detected between from and to,
+   * as if they were detected right now. Showings that already started are skipped and of a showing
+   * that was detected multiple times only the last version is used. The watchers for any movie are
+   * matched against the showings of all movies.
+   *
+   * @return the number of showings that were replayed
+   */
+  public int replay(Date from, Date to, List<Watcher> watchers) {
+    long now = System.currentTimeMillis();
+    Map<Integer, Map<Long, PatheShowing>> byMovie = new HashMap<>();
+    for (ShowingEvent event : eventRepository.getAllByDetectedBetweenOrderByDetectedAsc(from, to))
+      if (event.getShowing() != null && event.getShowing().getStart() >= now)
+        byMovie
+            .computeIfAbsent(event.getMovieid(), m -> new HashMap<>())
+            .put(event.getShowing().getId(), event.getShowing());
+
+    int replayed = 0;
+    List<CompletableFuture<Void>> notifications = new ArrayList<>();
+    Map<Boolean, List<Watcher>> wildcard =
+        watchers.stream().collect(Collectors.partitioningBy(Watcher::isAnymovie));
+    List<Watcher> wildcards = wildcard.get(true);
+    Map<Integer, List<Watcher>> watchersByMovie =
+        wildcard.get(false).stream().collect(Collectors.groupingBy(Watcher::getMovieid));
+    List<CompactShowing> all = new ArrayList<>();
+    for (Map.Entry<Integer, Map<Long, PatheShowing>> movie : byMovie.entrySet()) {
+      List<Watcher> movieWatchers = watchersByMovie.get(movie.getKey());
+      if (movieWatchers == null && wildcards.isEmpty()) continue;
+      List<CompactShowing> showings = CompactShowing.of(new ArrayList<>(movie.getValue().values()));
+      if (movieWatchers != null)
+        notifications.add(notifyWatchers(movieWatchers, showings, Collections.emptyList()));
+      all.addAll(showings);
+      replayed += movie.getValue().size();
     }
+    if (!wildcards.isEmpty() && !all.isEmpty())
+      notifications.add(notifyWatchers(wildcards, all, Collections.emptyList()));
+    for (CompletableFuture<Void> notified : notifications) await(notified, "replay");
+    LOGGER.info("Replayed {} showings detected between {} and {}", replayed, from, to);
+    return replayed;
+  }
 
-    return !result;
+  /**
+   * @return the cache entry of the showings, without the ones that started longer than the cache
+   *     horizon ago
+   */
+  private PatheMovieCache cacheEntry(
+      int movieId,
+      SortedShowings showings,
+      SchedulePartitions partitions,
+      SchedulePredicate scope,
+      long now) {
+    SortedShowings pruned = showings.startingFrom(now - cacheHorizon);
+    PatheMovieCache data = new PatheMovieCache(movieId, pruned, scope, packCache);
+    data.setPartitions(partitions);
+    return data;
+  }
+
+  /** @return the fraction of the compared partitions that did not change in the last run */
+  public double getSkippedPartitions() {
+    return skippedPartitions;
   }
 
   /**
-   * If option is NOPREFERENCE, always return true If one of the value is null, return true If
-   * option is YES, all value's are and'ed: (A && B && C ...) If option is NO, all values are
-   * inverse and'ed: !(A && B && C ...)
+   * @return the number of watchers per distinct filter of the movies that were matched in the last
+   *     run with a match. A ratio of 1 means every watcher has its own filter. The ratio of every
+   *     movie is logged at debug level.
    */
-  private boolean acceptsAll(FilterOption option, Boolean... value) {
-    if (option == NOPREFERENCE) {
-      return true;
-    }
-    boolean result = true;
+  public double getDedupeRatio() {
+    return dedupeRatio;
+  }
 
-    for (Boolean b : value) {
-      // if there is missing data, always return true
-      if (b == null) {
-        return true;
-      }
-      if (!b) {
-        result = false;
-      }
-    }
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = new ArrayList<>();
+    metrics.add(new Metric<>("pathe.partitions.skipped", skippedPartitions));
+    metrics.add(new Metric<>("pathe.watchers.dedupe", dedupeRatio));
+    return metrics;
+  }
 
-    if (option == YES) {
-      return result;
-    }
+  public boolean accepts(Watcher watcher, PatheShowing showing) {
+    return CompiledWatcherFilter.compile(watcher).accepts(CompactShowing.of(showing));
+  }
+
+  private static class PendingSave {
+
+    private final PatheMovieCache data;
 
-    return !result;
+    private final CompletableFuture<Void> notified;
+
+    private PendingSave(PatheMovieCache data, CompletableFuture<Void> notified) {
+      this.data = data;
+      this.notified = notified;
+    }
   }
 }
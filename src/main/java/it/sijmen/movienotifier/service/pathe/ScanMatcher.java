@@ -0,0 +1,38 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import it.sijmen.movienotifier.model.Watcher;
+import it.sijmen.movienotifier.service.pathe.api.PatheShowing;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.springframework.stereotype.Component;
+
+/** Tests every showing against the compiled filter of every watcher. Slow, but simple. */
+@Component
+public class ScanMatcher implements ShowingMatcher {
+
+  @Override
+  public String getName() {
+    return "scan";
+  }
+
+  @Override
+  public WatcherMatches match(List<Watcher> watchers, List<CompactShowing> showings) {
+    List<List<PatheShowing>> out = new ArrayList<>(watchers.size());
+    Set<CompiledWatcherFilter> distinct = new HashSet<>();
+    for (Watcher watcher : watchers) {
+      CompiledWatcherFilter filter = CompiledWatcherFilter.compile(watcher);
+      distinct.add(filter);
+      List<PatheShowing> accepted = Collections.emptyList();
+      for (CompactShowing showing : showings) {
+        if (!filter.accepts(showing)) continue;
+        if (accepted.isEmpty()) accepted = new ArrayList<>();
+        accepted.add(showing.getSource());
+      }
+      out.add(accepted);
+    }
+    return new WatcherMatches(out, distinct.size());
+  }
+}
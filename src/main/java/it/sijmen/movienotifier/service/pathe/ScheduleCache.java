@@ -0,0 +1,228 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import it.sijmen.movienotifier.model.PatheMovieCache;
+import it.sijmen.movienotifier.repositories.PatheCacheRepository;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Write-behind cache in front of the {@link PatheCacheRepository}. Reads are served from memory
+ * when possible, writes are kept in memory and written to Mongo in batches.
+ *
+ * <p>A run over many movies should {@link #preload(Collection) preload} them, which reads all
+ * missing entries with a single query, and {@link #flush()} at the end, which writes all changes
+ * with unordered bulk upserts of at most {@value #BULK_SIZE} entries.
+ *
+ * <p>At most {@code cache.pathe.memory.size} movies are kept, the least recently used ones are
+ * evicted first. Entries that were read from Mongo longer than {@code cache.pathe.memory.maxage}
+ * minutes ago are read again. Written entries are dirty until they are flushed; they are never
+ * evicted before that. A dirty entry is flushed at most {@code cache.pathe.flushseconds} seconds
+ * after it was written. When that setting is 0 every write goes to Mongo directly.
+ */
+@Service
+public class ScheduleCache implements PublicMetrics {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ScheduleCache.class);
+
+  static final int BULK_SIZE = 500;
+
+  private final PatheCacheRepository repository;
+  private final int maxSize;
+  private final long maxAge;
+  private final long flushInterval;
+
+  /** The clean entries, in access order. */
+  private final LinkedHashMap<Integer, Entry> entries;
+
+  /** The written entries that are not yet flushed. */
+  private final Map<Integer, PatheMovieCache> dirty = new LinkedHashMap<>();
+
+  /** When the oldest dirty entry was written or 0 when nothing is dirty. */
+  private long dirtySince;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder flushes = new LongAdder();
+  private final AtomicLong lastFlushMillis = new AtomicLong();
+
+  @Autowired
+  public ScheduleCache(
+      PatheCacheRepository repository,
+      @Value("${cache.pathe.memory.size}") int maxSize,
+      @Value("${cache.pathe.memory.maxage}") long maxAgeMinutes,
+      @Value("${cache.pathe.flushseconds}") long flushSeconds) {
+    this.repository = repository;
+    this.maxSize = maxSize;
+    this.maxAge = TimeUnit.MINUTES.toMillis(maxAgeMinutes);
+    this.flushInterval = TimeUnit.SECONDS.toMillis(flushSeconds);
+    this.entries =
+        new LinkedHashMap<Integer, Entry>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+            return size() > ScheduleCache.this.maxSize;
+          }
+        };
+  }
+
+  /** @return the cached schedule of the movie or null when it was never stored */
+  public PatheMovieCache get(int movieId) {
+    long now = System.currentTimeMillis();
+    synchronized (this) {
+      PatheMovieCache written = dirty.get(movieId);
+      if (written != null) {
+        hits.increment();
+        return written;
+      }
+      Entry entry = entries.get(movieId);
+      if (entry != null && now - entry.loaded <= maxAge) {
+        hits.increment();
+        return entry.value;
+      }
+    }
+    misses.increment();
+    PatheMovieCache loaded = repository.getFirstByMovieid(movieId);
+    synchronized (this) {
+      // a write that happened while loading wins
+      if (!dirty.containsKey(movieId)) entries.put(movieId, new Entry(loaded, now));
+    }
+    return loaded;
+  }
+
+  /** Loads the entries of the given movies that are not in memory with a single query. */
+  public void preload(Collection<Integer> movieIds) {
+    long now = System.currentTimeMillis();
+    Set<Integer> missing = new HashSet<>();
+    synchronized (this) {
+      for (Integer movieId : movieIds) {
+        if (dirty.containsKey(movieId)) continue;
+        Entry entry = entries.get(movieId);
+        if (entry == null || now - entry.loaded > maxAge) missing.add(movieId);
+      }
+    }
+    if (missing.isEmpty()) return;
+    // more than fit would evict each other right away
+    if (missing.size() > maxSize) return;
+
+    List<PatheMovieCache> loaded = repository.findAllByMovieidIn(missing);
+    misses.add(missing.size());
+    synchronized (this) {
+      // remember the movies that have no cache yet, so get does not look them up again
+      for (Integer movieId : missing)
+        if (!dirty.containsKey(movieId)) entries.put(movieId, new Entry(null, now));
+      for (PatheMovieCache cache : loaded)
+        if (!dirty.containsKey(cache.getMovieid()))
+          entries.put(cache.getMovieid(), new Entry(cache, now));
+    }
+  }
+
+  public void save(PatheMovieCache cache) {
+    if (flushInterval <= 0) {
+      repository.save(cache);
+      synchronized (this) {
+        entries.put(cache.getMovieid(), new Entry(cache, System.currentTimeMillis()));
+      }
+      return;
+    }
+    synchronized (this) {
+      entries.remove(cache.getMovieid());
+      if (dirty.isEmpty()) dirtySince = System.currentTimeMillis();
+      dirty.put(cache.getMovieid(), cache);
+    }
+  }
+
+  /** Flushes the dirty entries once the oldest of them waited for the flush interval. */
+  @Scheduled(fixedDelay = 1000)
+  public void flushDue() {
+    synchronized (this) {
+      if (dirty.isEmpty() || System.currentTimeMillis() - dirtySince < flushInterval) return;
+    }
+    flush();
+  }
+
+  /** Writes all dirty entries to Mongo with bulk upserts. */
+  @PreDestroy
+  public void flush() {
+    List<PatheMovieCache> batch;
+    synchronized (this) {
+      if (dirty.isEmpty()) return;
+      batch = new ArrayList<>(dirty.values());
+      dirty.clear();
+      dirtySince = 0;
+    }
+
+    long start = System.nanoTime();
+    try {
+      for (int from = 0; from < batch.size(); from += BULK_SIZE)
+        repository.upsertAll(batch.subList(from, Math.min(batch.size(), from + BULK_SIZE)));
+    } catch (Exception e) {
+      LOGGER.error("Could not flush {} cached schedules, retrying later", batch.size(), e);
+      synchronized (this) {
+        // keep the entries that were written again in the meantime
+        for (PatheMovieCache cache : batch) dirty.putIfAbsent(cache.getMovieid(), cache);
+        if (dirtySince == 0) dirtySince = System.currentTimeMillis();
+      }
+      return;
+    }
+    lastFlushMillis.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    flushes.increment();
+
+    long now = System.currentTimeMillis();
+    synchronized (this) {
+      for (PatheMovieCache cache : batch)
+        if (!dirty.containsKey(cache.getMovieid()))
+          entries.put(cache.getMovieid(), new Entry(cache, now));
+    }
+    LOGGER.trace("Flushed {} cached schedules", batch.size());
+  }
+
+  public synchronized int getDirtyCount() {
+    return dirty.size();
+  }
+
+  public double getHitRate() {
+    long hitCount = hits.sum();
+    long total = hitCount + misses.sum();
+    return total == 0 ? 0 : (double) hitCount / total;
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    return Arrays.asList(
+        new Metric<>("pathe.cache.hits", hits.sum()),
+        new Metric<>("pathe.cache.misses", misses.sum()),
+        new Metric<>("pathe.cache.hitrate", getHitRate()),
+        new Metric<>("pathe.cache.dirty", getDirtyCount()),
+        new Metric<>("pathe.cache.flushes", flushes.sum()),
+        new Metric<>("pathe.cache.flush.latency", lastFlushMillis.get()));
+  }
+
+  private static class Entry {
+
+    private final PatheMovieCache value;
+
+    private final long loaded;
+
+    private Entry(PatheMovieCache value, long loaded) {
+      this.value = value;
+      this.loaded = loaded;
+    }
+  }
+}
@@ -0,0 +1,169 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import it.sijmen.movienotifier.model.WatcherFilters;
+import it.sijmen.movienotifier.service.pathe.api.PatheShowing;
+import it.sijmen.movienotifier.service.pathe.api.SchedulePredicate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Splits the schedule of a movie in partitions of one cinema and one (UTC) day and keeps a hash of
+ * the showings in every partition. Comparing the hashes of two schedules tells which partitions
+ * changed, so only the watchers that look at those partitions have to be evaluated.
+ *
+ * <p>A partition is identified by a key that holds the cinema id in the upper and the day since the
+ * epoch in the lower 32 bits. Keys are sorted, so all partitions of a cinema are adjacent and
+ * ordered by day.
+ *
+ * <p>Two schedules are only comparable over the same scope: a showing that started in the meantime
+ * or a cinema that is no longer looked at changes a hash without a real change. {@link
+ * #of(SortedShowings, SchedulePredicate, SchedulePredicate)} builds the partitions of the showings
+ * within a scope.
+ */
+public class SchedulePartitions {
+
+  private static final long DAY = 86_400_000;
+
+  private static final long[] NONE = new long[0];
+
+  private final long[] keys;
+
+  private final long[] hashes;
+
+  private SchedulePartitions(long[] keys, long[] hashes) {
+    this.keys = keys;
+    this.hashes = hashes;
+  }
+
+  public static SchedulePartitions of(List<PatheShowing> showings) {
+    // the hashes of a partition are added up, so the order of the showings does not matter
+    TreeMap<Long, Long> partitions = new TreeMap<>();
+    for (PatheShowing showing : showings)
+      partitions.merge(
+          key(showing.getCinemaId(), showing.getStart()),
+          hash(showing.getId(), showing.getFingerprint()),
+          Long::sum);
+    return of(partitions);
+  }
+
+  /**
+   * Builds the partitions of the showings that both scopes accept.
+   *
+   * @return null when the cinema, start or fingerprint of one of the showings is unknown
+   */
+  public static SchedulePartitions of(
+      SortedShowings showings, SchedulePredicate scope, SchedulePredicate otherScope) {
+    long[] ids = showings.getIds();
+    long[] fingerprints = showings.getFingerprints();
+    long[] starts = showings.getStarts();
+    long[] attributes = showings.getAttributes();
+    TreeMap<Long, Long> partitions = new TreeMap<>();
+    for (int i = 0; i < ids.length; i++) {
+      if (fingerprints[i] == 0 || starts[i] == 0 || attributes[i] == 0) return null;
+      int cinemaId = (int) (attributes[i] >>> 32);
+      if (!scope.accepts(cinemaId, starts[i]) || !otherScope.accepts(cinemaId, starts[i])) continue;
+      partitions.merge(key(cinemaId, starts[i]), hash(ids[i], fingerprints[i]), Long::sum);
+    }
+    return of(partitions);
+  }
+
+  private static SchedulePartitions of(TreeMap<Long, Long> partitions) {
+    long[] keys = new long[partitions.size()];
+    long[] hashes = new long[keys.length];
+    int i = 0;
+    for (Map.Entry<Long, Long> partition : partitions.entrySet()) {
+      keys[i] = partition.getKey();
+      hashes[i++] = partition.getValue();
+    }
+    return new SchedulePartitions(keys, hashes);
+  }
+
+  /**
+   * Rebuilds stored partitions.
+   *
+   * @param keys the sorted keys
+   * @param hashes the hash of every key
+   */
+  public static SchedulePartitions of(long[] keys, long[] hashes) {
+    if (keys.length != hashes.length)
+      throw new IllegalArgumentException("Every partition must have exactly one hash");
+    return new SchedulePartitions(keys, hashes);
+  }
+
+  /** @return the sorted keys of the partitions that are not in both or have a different hash */
+  public static long[] changed(SchedulePartitions oldPartitions, SchedulePartitions newPartitions) {
+    long[] oldKeys = oldPartitions.keys;
+    long[] newKeys = newPartitions.keys;
+    long[] changed = new long[oldKeys.length + newKeys.length];
+    int count = 0;
+    int o = 0;
+    int n = 0;
+    while (o < oldKeys.length && n < newKeys.length) {
+      if (oldKeys[o] == newKeys[n]) {
+        if (oldPartitions.hashes[o] != newPartitions.hashes[n]) changed[count++] = newKeys[n];
+        o++;
+        n++;
+      } else if (oldKeys[o] < newKeys[n]) changed[count++] = oldKeys[o++];
+      else changed[count++] = newKeys[n++];
+    }
+    while (o < oldKeys.length) changed[count++] = oldKeys[o++];
+    while (n < newKeys.length) changed[count++] = newKeys[n++];
+    return count == 0 ? NONE : Arrays.copyOf(changed, count);
+  }
+
+  /**
+   * @param changed sorted partition keys, see {@link #changed(SchedulePartitions,
+   *     SchedulePartitions)}
+   * @return whether one of the partitions is in one of the cinemas and the start window of the
+   *     filters
+   */
+  public static boolean overlaps(long[] changed, WatcherFilters filters) {
+    if (filters.getStartafter() > filters.getStartbefore()) return false;
+    for (int cinemaId : CinemaSet.of(filters).toArray()) {
+      long from = key(cinemaId, filters.getStartafter());
+      long to = key(cinemaId, filters.getStartbefore());
+      int index = Arrays.binarySearch(changed, from);
+      if (index >= 0) return true;
+      int insertion = -index - 1;
+      if (insertion < changed.length && changed[insertion] <= to) return true;
+    }
+    return false;
+  }
+
+  static long key(int cinemaId, long start) {
+    long day = Math.max(0, Math.min(Integer.MAX_VALUE, Math.floorDiv(start, DAY)));
+    return ((long) cinemaId << 32) | day;
+  }
+
+  private static long hash(long id, long fingerprint) {
+    return mix(id * 31 + fingerprint);
+  }
+
+  /** Spreads the bits, so the sum of the hashes of a partition does not cancel out. */
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
+  public int size() {
+    return keys.length;
+  }
+
+  /** @return the sorted keys. Must not be modified. */
+  public long[] getKeys() {
+    return keys;
+  }
+
+  /** @return the hashes in the order of {@link #getKeys()}. Must not be modified. */
+  public long[] getHashes() {
+    return hashes;
+  }
+
+  @Override
+  public String toString() {
+    return "SchedulePartitions{" + "keys=" + Arrays.toString(keys) + '}';
+  }
+}
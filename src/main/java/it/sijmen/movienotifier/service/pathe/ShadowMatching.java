@@ -0,0 +1,181 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import it.sijmen.movienotifier.model.MatcherDivergence;
+import it.sijmen.movienotifier.model.Watcher;
+import it.sijmen.movienotifier.repositories.MatcherDivergenceRepository;
+import it.sijmen.movienotifier.service.WorkerPools;
+import it.sijmen.movienotifier.service.pathe.api.PatheShowing;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Service;
+
+/**
+ * Matches watchers with the {@link ShowingMatcher} named by {@code matcher.primary}. When {@code
+ * matcher.shadow} names another matcher, that candidate matches the same watchers and showings
+ * right after the primary. Only the result of the primary is used. Every watcher and showing for
+ * which the verdicts differ is counted and stored as a {@link MatcherDivergence}, at most {@value
+ * #MAX_STORED_PER_MATCH} per match, in a capped collection of {@code matcher.shadow.divergences}
+ * documents. The cpu time of both matchers is measured to compare their speed.
+ */
+@Service
+public class ShadowMatching implements PublicMetrics {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ShadowMatching.class);
+
+  static final int MAX_STORED_PER_MATCH = 100;
+
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  private final ShowingMatcher primary;
+  private final ShowingMatcher shadow;
+  private final MatcherDivergenceRepository repository;
+  private final WorkerPools pools;
+  private final int maxDivergences;
+
+  private final LongAdder comparisons = new LongAdder();
+  private final LongAdder divergences = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+  private final LongAdder primaryNanos = new LongAdder();
+  private final LongAdder shadowNanos = new LongAdder();
+
+  @Autowired
+  public ShadowMatching(
+      List<ShowingMatcher> matchers,
+      MatcherDivergenceRepository repository,
+      WorkerPools pools,
+      @Value("${matcher.primary}") String primary,
+      @Value("${matcher.shadow}") String shadow,
+      @Value("${matcher.shadow.divergences}") int maxDivergences) {
+    this.primary = find(matchers, primary);
+    this.shadow = shadow.isEmpty() ? null : find(matchers, shadow);
+    this.repository = repository;
+    this.pools = pools;
+    this.maxDivergences = maxDivergences;
+  }
+
+  private static ShowingMatcher find(List<ShowingMatcher> matchers, String name) {
+    for (ShowingMatcher matcher : matchers) if (matcher.getName().equals(name)) return matcher;
+    throw new IllegalArgumentException("There is no matcher named " + name);
+  }
+
+  @PostConstruct
+  public void createCollection() {
+    if (shadow == null) return;
+    try {
+      repository.createCapped(maxDivergences);
+    } catch (Exception e) {
+      LOGGER.error("Could not create the capped collection for matcher divergences", e);
+    }
+  }
+
+  /** @see ShowingMatcher#match(List, List) */
+  public WatcherMatches match(List<Watcher> watchers, List<CompactShowing> showings) {
+    long start = cpuTime();
+    WatcherMatches matches = primary.match(watchers, showings);
+    long primaryDone = cpuTime();
+    primaryNanos.add(primaryDone - start);
+    if (shadow == null) return matches;
+
+    try {
+      WatcherMatches candidate = shadow.match(watchers, showings);
+      shadowNanos.add(cpuTime() - primaryDone);
+      compare(watchers, matches.getAccepted(), candidate.getAccepted());
+    } catch (Exception e) {
+      failures.increment();
+      LOGGER.error("Shadow matcher {} failed", shadow.getName(), e);
+    }
+    return matches;
+  }
+
+  private void compare(
+      List<Watcher> watchers,
+      List<List<PatheShowing>> matches,
+      List<List<PatheShowing>> candidate) {
+    comparisons.increment();
+    Date detected = new Date();
+    List<MatcherDivergence> found = new ArrayList<>();
+    long count = 0;
+    for (int i = 0; i < watchers.size(); i++) {
+      Set<Long> accepted = ids(matches.get(i));
+      Set<Long> candidateAccepted = ids(candidate.get(i));
+      if (accepted.equals(candidateAccepted)) continue;
+      Set<Long> all = new HashSet<>(accepted);
+      all.addAll(candidateAccepted);
+      for (long showing : all) {
+        boolean primaryAccepts = accepted.contains(showing);
+        boolean shadowAccepts = candidateAccepted.contains(showing);
+        if (primaryAccepts == shadowAccepts) continue;
+        count++;
+        if (found.size() < MAX_STORED_PER_MATCH)
+          found.add(
+              new MatcherDivergence(
+                  detected,
+                  primary.getName(),
+                  shadow.getName(),
+                  watchers.get(i).getId(),
+                  showing,
+                  primaryAccepts,
+                  shadowAccepts));
+      }
+    }
+    if (count == 0) return;
+    divergences.add(count);
+    LOGGER.warn("Shadow matcher {} diverged {} times", shadow.getName(), count);
+    CompletableFuture.runAsync(() -> store(found), pools.io());
+  }
+
+  private void store(List<MatcherDivergence> found) {
+    try {
+      repository.insert(found);
+    } catch (Exception e) {
+      LOGGER.error("Could not store {} matcher divergences", found.size(), e);
+    }
+  }
+
+  private static Set<Long> ids(List<PatheShowing> showings) {
+    Set<Long> ids = new HashSet<>();
+    for (PatheShowing showing : showings) ids.add(showing.getId());
+    return ids;
+  }
+
+  private static long cpuTime() {
+    return THREADS.isCurrentThreadCpuTimeSupported()
+        ? THREADS.getCurrentThreadCpuTime()
+        : System.nanoTime();
+  }
+
+  public long getDivergences() {
+    return divergences.sum();
+  }
+
+  /** @return the cpu time of the shadow matcher relative to the primary, or 0 without shadow */
+  public double getRelativeCpuTime() {
+    long primaryTime = primaryNanos.sum();
+    return shadow == null || primaryTime == 0 ? 0 : (double) shadowNanos.sum() / primaryTime;
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    return Arrays.asList(
+        new Metric<>("matcher.shadow.comparisons", comparisons.sum()),
+        new Metric<>("matcher.shadow.divergences", divergences.sum()),
+        new Metric<>("matcher.shadow.failures", failures.sum()),
+        new Metric<>("matcher.shadow.cpu.relative", getRelativeCpuTime()));
+  }
+}
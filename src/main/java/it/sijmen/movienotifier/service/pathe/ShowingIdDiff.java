@@ -0,0 +1,228 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import it.sijmen.movienotifier.service.pathe.api.SchedulePredicate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The difference between an old and a new set of showings. Both sets are sorted primitive long
+ * arrays without duplicates, so the difference is computed in a single merge pass without boxing.
+ * Showings that are in both sets but whose fingerprints differ are reported as changed, with the
+ * start and attributes they had before when those are known. Showings that already started can be
+ * left out of the difference altogether.
+ */
+public class ShowingIdDiff {
+
+  private static final long[] EMPTY = new long[0];
+
+  private final long[] added;
+
+  private final long[] changed;
+
+  /** The old start and attributes of every changed showing, 0 when they are unknown. */
+  private final long[] changedStarts;
+
+  private final long[] changedAttributes;
+
+  private ShowingIdDiff(
+      long[] added, long[] changed, long[] changedStarts, long[] changedAttributes) {
+    this.added = added;
+    this.changed = changed;
+    this.changedStarts = changedStarts;
+    this.changedAttributes = changedAttributes;
+  }
+
+  public static ShowingIdDiff between(SortedShowings oldShowings, SortedShowings newShowings) {
+    return between(oldShowings, newShowings, Long.MIN_VALUE);
+  }
+
+  /**
+   * Ignores the showings on either side that started before {@code now}. They can not be watched
+   * anymore, so it does not matter whether they were added, removed or changed. Showings with an
+   * unknown start are never ignored.
+   */
+  public static ShowingIdDiff between(
+      SortedShowings oldShowings, SortedShowings newShowings, long now) {
+    SortedShowings oldUpcoming = oldShowings.startingFrom(now);
+    SortedShowings newUpcoming = newShowings.startingFrom(now);
+    return between(
+        oldUpcoming.getIds(),
+        oldUpcoming.getFingerprints(),
+        oldUpcoming.getStarts(),
+        oldUpcoming.getAttributes(),
+        newUpcoming.getIds(),
+        newUpcoming.getFingerprints());
+  }
+
+  /**
+   * @param oldIds sorted ids without duplicates
+   * @param newIds sorted ids without duplicates
+   */
+  public static ShowingIdDiff between(long[] oldIds, long[] newIds) {
+    return between(oldIds, null, null, null, newIds, null);
+  }
+
+  /**
+   * A fingerprint of 0 is unknown. A showing is only changed when both its old and its new
+   * fingerprint are known and they differ.
+   */
+  private static ShowingIdDiff between(
+      long[] oldIds,
+      long[] oldFingerprints,
+      long[] oldStarts,
+      long[] oldAttributes,
+      long[] newIds,
+      long[] newFingerprints) {
+    long[] added = new long[newIds.length];
+    long[] changed = new long[Math.min(oldIds.length, newIds.length)];
+    long[] changedStarts = new long[changed.length];
+    long[] changedAttributes = new long[changed.length];
+    int addedCount = 0;
+    int changedCount = 0;
+
+    int o = 0;
+    int n = 0;
+    while (o < oldIds.length && n < newIds.length) {
+      long oldId = oldIds[o];
+      long newId = newIds[n];
+      if (oldId == newId) {
+        if (oldFingerprints != null && newFingerprints != null) {
+          long oldFingerprint = oldFingerprints[o];
+          long newFingerprint = newFingerprints[n];
+          if (oldFingerprint != 0 && newFingerprint != 0 && oldFingerprint != newFingerprint) {
+            if (oldStarts != null) changedStarts[changedCount] = oldStarts[o];
+            if (oldAttributes != null) changedAttributes[changedCount] = oldAttributes[o];
+            changed[changedCount++] = newId;
+          }
+        }
+        o++;
+        n++;
+      } else if (oldId < newId) {
+        o++;
+      } else {
+        added[addedCount++] = newId;
+        n++;
+      }
+    }
+    while (n < newIds.length) added[addedCount++] = newIds[n++];
+
+    return new ShowingIdDiff(
+        trim(added, addedCount),
+        trim(changed, changedCount),
+        trim(changedStarts, changedCount),
+        trim(changedAttributes, changedCount));
+  }
+
+  private static long[] trim(long[] ids, int length) {
+    if (length == 0) return EMPTY;
+    return length == ids.length ? ids : Arrays.copyOf(ids, length);
+  }
+
+  public boolean hasAdditions() {
+    return added.length > 0;
+  }
+
+  public boolean hasChanges() {
+    return changed.length > 0;
+  }
+
+  /**
+   * Selects the added and changed showings in a single pass that walks the showings together with
+   * the sorted added and changed ids. Of the changed showings whose old start and attributes are
+   * known, the old version is selected as well.
+   *
+   * @param sortedById the new showings, sorted by id
+   * @param oldScope the scope the old showings were loaded with. Added showings outside of it were
+   *     skipped last time, so they are not new and are not selected.
+   */
+  public Selection select(List<CompactShowing> sortedById, SchedulePredicate oldScope) {
+    List<CompactShowing> selectedAdded = new ArrayList<>(added.length);
+    List<CompactShowing> selectedChanged = new ArrayList<>(changed.length);
+    List<CompactShowing> previous = new ArrayList<>(changed.length);
+    int a = 0;
+    int c = 0;
+    for (CompactShowing showing : sortedById) {
+      long id = showing.getId();
+      while (a < added.length && added[a] < id) a++;
+      while (c < changed.length && changed[c] < id) c++;
+      if (a < added.length && added[a] == id) {
+        if (oldScope.accepts(showing.getCinemaId(), showing.getStart())) selectedAdded.add(showing);
+      } else if (c < changed.length && changed[c] == id) {
+        selectedChanged.add(showing);
+        if (changedStarts[c] != 0 && changedAttributes[c] != 0)
+          previous.add(
+              showing.previous(
+                  (int) (changedAttributes[c] >>> 32),
+                  changedStarts[c],
+                  (int) changedAttributes[c]));
+      }
+    }
+    return new Selection(selectedAdded, selectedChanged, previous);
+  }
+
+  /** @return the sorted ids that are in the new set but not in the old set */
+  public long[] getAdded() {
+    return added;
+  }
+
+  /** @return the sorted ids that are in both sets but with a different fingerprint */
+  public long[] getChanged() {
+    return changed;
+  }
+
+  @Override
+  public String toString() {
+    return "ShowingIdDiff{"
+        + "added="
+        + Arrays.toString(added)
+        + ", changed="
+        + Arrays.toString(changed)
+        + '}';
+  }
+
+  /** The new showings that were added or changed, see {@link #select(List, SchedulePredicate)}. */
+  public static final class Selection {
+
+    private final List<CompactShowing> added;
+
+    private final List<CompactShowing> changed;
+
+    private final List<CompactShowing> previous;
+
+    private Selection(
+        List<CompactShowing> added, List<CompactShowing> changed, List<CompactShowing> previous) {
+      this.added = added;
+      this.changed = changed;
+      this.previous = previous;
+    }
+
+    public List<CompactShowing> getAdded() {
+      return added;
+    }
+
+    public List<CompactShowing> getChanged() {
+      return changed;
+    }
+
+    /**
+     * @return the changed showings as they were before they changed, as far as that is known. They
+     *     have the id and source of the changed showing.
+     */
+    public List<CompactShowing> getPrevious() {
+      return previous;
+    }
+
+    /** @return the added and then the changed showings */
+    public List<CompactShowing> getAll() {
+      List<CompactShowing> all = new ArrayList<>(added.size() + changed.size());
+      all.addAll(added);
+      all.addAll(changed);
+      return all;
+    }
+
+    public boolean isEmpty() {
+      return added.isEmpty() && changed.isEmpty();
+    }
+  }
+}
@@ -0,0 +1,21 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import it.sijmen.movienotifier.model.Watcher;
+import java.util.List;
+
+/**
+ * Decides which showings every watcher accepts. Implementations must give the same verdicts as
+ * {@link CompiledWatcherFilter#accepts(CompactShowing)}; they only differ in how fast they are.
+ * Which implementation is used is configured in {@link ShadowMatching}.
+ */
+public interface ShowingMatcher {
+
+  /** @return the name that selects this matcher in the configuration */
+  String getName();
+
+  /**
+   * @return the showings every watcher accepts, see {@link WatcherMatches#getAccepted()}, and the
+   *     number of distinct filters the watchers have
+   */
+  WatcherMatches match(List<Watcher> watchers, List<CompactShowing> showings);
+}
@@ -0,0 +1,219 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import it.sijmen.movienotifier.service.pathe.api.PatheShowing;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The showings of a schedule in their most compact form: the showing ids sorted ascending without
+ * duplicates, each with the {@link PatheShowing#getFingerprint() fingerprint} of its content, its
+ * start time and its {@link #attributes(PatheShowing) attributes} at the same index. A fingerprint,
+ * start or attributes of 0 means it is unknown.
+ */
+public class SortedShowings {
+
+  public static final SortedShowings EMPTY =
+      new SortedShowings(new long[0], new long[0], new long[0], new long[0]);
+
+  private final long[] ids;
+
+  private final long[] fingerprints;
+
+  private final long[] starts;
+
+  private final long[] attributes;
+
+  private SortedShowings(long[] ids, long[] fingerprints, long[] starts, long[] attributes) {
+    this.ids = ids;
+    this.fingerprints = fingerprints;
+    this.starts = starts;
+    this.attributes = attributes;
+  }
+
+  public static SortedShowings of(List<PatheShowing> showings) {
+    long[] ids = new long[showings.size()];
+    long[] fingerprints = new long[ids.length];
+    long[] starts = new long[ids.length];
+    long[] attributes = new long[ids.length];
+    for (int i = 0; i < ids.length; i++) {
+      PatheShowing showing = showings.get(i);
+      ids[i] = showing.getId();
+      fingerprints[i] = showing.getFingerprint();
+      starts[i] = showing.getStart();
+      attributes[i] = attributes(showing);
+    }
+    return sort(ids, fingerprints, starts, attributes);
+  }
+
+  /**
+   * @return what a watcher matches of a showing besides its movie and start: the cinema in the
+   *     upper and the {@link CompactShowing#attributes(PatheShowing) compact attributes} in the
+   *     lower 32 bits. Together with the start it is enough to rebuild the showing as it was
+   *     matched, see {@link CompactShowing#previous(int, long, int)}.
+   */
+  static long attributes(PatheShowing showing) {
+    return ((long) showing.getCinemaId() << 32) | CompactShowing.attributes(showing);
+  }
+
+  /**
+   * Sorts the arrays in place by id and removes duplicate ids. Only one of the fingerprints, starts
+   * and attributes of a duplicate id is kept.
+   *
+   * @param fingerprints the fingerprints at the index of their id or null when they are unknown
+   * @param starts the start times at the index of their id or null when they are unknown
+   * @param attributes the attributes at the index of their id or null when they are unknown
+   */
+  public static SortedShowings sort(
+      long[] ids, long[] fingerprints, long[] starts, long[] attributes) {
+    if (fingerprints == null) fingerprints = new long[ids.length];
+    if (starts == null) starts = new long[ids.length];
+    if (attributes == null) attributes = new long[ids.length];
+    if (ids.length != fingerprints.length
+        || ids.length != starts.length
+        || ids.length != attributes.length)
+      throw new IllegalArgumentException(
+          "Every id must have exactly one fingerprint, start and attributes");
+    if (ids.length == 0) return EMPTY;
+
+    if (!isSorted(ids)) sort(ids, fingerprints, starts, attributes, 0, ids.length - 1);
+    int unique = 1;
+    for (int i = 1; i < ids.length; i++) {
+      if (ids[i] == ids[unique - 1]) continue;
+      ids[unique] = ids[i];
+      fingerprints[unique] = fingerprints[i];
+      starts[unique] = starts[i];
+      attributes[unique] = attributes[i];
+      unique++;
+    }
+    return new SortedShowings(ids, fingerprints, starts, attributes).truncate(unique);
+  }
+
+  private SortedShowings truncate(int length) {
+    if (length == ids.length) return this;
+    if (length == 0) return EMPTY;
+    return new SortedShowings(
+        Arrays.copyOf(ids, length),
+        Arrays.copyOf(fingerprints, length),
+        Arrays.copyOf(starts, length),
+        Arrays.copyOf(attributes, length));
+  }
+
+  /**
+   * Drops the showings that started before the given time. Showings with an unknown start are
+   * always kept.
+   *
+   * @return this instance when nothing was dropped
+   */
+  public SortedShowings startingFrom(long time) {
+    int kept = 0;
+    for (long start : starts) if (start == 0 || start >= time) kept++;
+    if (kept == ids.length) return this;
+
+    long[] keptIds = new long[kept];
+    long[] keptFingerprints = new long[kept];
+    long[] keptStarts = new long[kept];
+    long[] keptAttributes = new long[kept];
+    int k = 0;
+    for (int i = 0; i < ids.length; i++) {
+      if (starts[i] != 0 && starts[i] < time) continue;
+      keptIds[k] = ids[i];
+      keptFingerprints[k] = fingerprints[i];
+      keptStarts[k] = starts[i];
+      keptAttributes[k] = attributes[i];
+      k++;
+    }
+    return kept == 0
+        ? EMPTY
+        : new SortedShowings(keptIds, keptFingerprints, keptStarts, keptAttributes);
+  }
+
+  private static boolean isSorted(long[] ids) {
+    for (int i = 1; i < ids.length; i++) if (ids[i - 1] > ids[i]) return false;
+    return true;
+  }
+
+  /** Quicksort of the four arrays by id. Equal ids keep no particular order. */
+  private static void sort(
+      long[] ids, long[] fingerprints, long[] starts, long[] attributes, int low, int high) {
+    while (high - low > 16) {
+      long pivot = ids[(low + high) >>> 1];
+      int i = low;
+      int j = high;
+      while (i <= j) {
+        while (ids[i] < pivot) i++;
+        while (ids[j] > pivot) j--;
+        if (i <= j) swap(ids, fingerprints, starts, attributes, i++, j--);
+      }
+      // recurse into the smaller half to bound the stack depth
+      if (j - low < high - i) {
+        sort(ids, fingerprints, starts, attributes, low, j);
+        low = i;
+      } else {
+        sort(ids, fingerprints, starts, attributes, i, high);
+        high = j;
+      }
+    }
+    for (int i = low + 1; i <= high; i++)
+      for (int j = i; j > low && ids[j - 1] > ids[j]; j--)
+        swap(ids, fingerprints, starts, attributes, j - 1, j);
+  }
+
+  private static void swap(
+      long[] ids, long[] fingerprints, long[] starts, long[] attributes, int a, int b) {
+    long id = ids[a];
+    ids[a] = ids[b];
+    ids[b] = id;
+    long fingerprint = fingerprints[a];
+    fingerprints[a] = fingerprints[b];
+    fingerprints[b] = fingerprint;
+    long start = starts[a];
+    starts[a] = starts[b];
+    starts[b] = start;
+    long attribute = attributes[a];
+    attributes[a] = attributes[b];
+    attributes[b] = attribute;
+  }
+
+  public int size() {
+    return ids.length;
+  }
+
+  public boolean isEmpty() {
+    return ids.length == 0;
+  }
+
+  /** @return the sorted ids. The array must not be modified. */
+  public long[] getIds() {
+    return ids;
+  }
+
+  /** @return the fingerprints in the order of {@link #getIds()}. Must not be modified. */
+  public long[] getFingerprints() {
+    return fingerprints;
+  }
+
+  /** @return the start times in the order of {@link #getIds()}. Must not be modified. */
+  public long[] getStarts() {
+    return starts;
+  }
+
+  /** @return the attributes in the order of {@link #getIds()}. Must not be modified. */
+  public long[] getAttributes() {
+    return attributes;
+  }
+
+  public boolean hasAttributes() {
+    for (long attribute : attributes) if (attribute != 0) return true;
+    return false;
+  }
+
+  public boolean hasStarts() {
+    for (long start : starts) if (start != 0) return true;
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return "SortedShowings{" + "ids=" + Arrays.toString(ids) + '}';
+  }
+}
@@ -0,0 +1,149 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import java.util.Arrays;
+
+/**
+ * Packs {@link SortedShowings} into a single byte array that is stored as one BSON binary field.
+ *
+ * <p>Layout: a version byte, a flags byte, the number of showings as varint, the ids as varint
+ * deltas to the previous id (the first one zigzag encoded) and, when any fingerprint is known, all
+ * fingerprints as fixed 8 byte big endian longs. Fingerprints are hashes, varints would only make
+ * them longer. When any start time is known, the start times follow as zigzag varint deltas to the
+ * previous start. Showings of one movie start close to each other, so these deltas stay small. When
+ * any attributes are known, they follow as plain varints. Packed showings without the attributes
+ * flag were written before attributes were stored and decode with unknown attributes.
+ */
+public final class SortedShowingsCodec {
+
+  private static final byte VERSION = 1;
+
+  private static final int FLAG_FINGERPRINTS = 1;
+
+  private static final int FLAG_STARTS = 2;
+
+  private static final int FLAG_ATTRIBUTES = 4;
+
+  private SortedShowingsCodec() {}
+
+  public static byte[] encode(SortedShowings showings) {
+    long[] ids = showings.getIds();
+    long[] fingerprints = showings.getFingerprints();
+    boolean hasFingerprints = false;
+    for (long fingerprint : fingerprints) hasFingerprints |= fingerprint != 0;
+    long[] starts = showings.getStarts();
+    boolean hasStarts = showings.hasStarts();
+    long[] attributes = showings.getAttributes();
+    boolean hasAttributes = showings.hasAttributes();
+
+    byte[] out =
+        new byte
+            [2
+                + 5
+                + ids.length * 10
+                + (hasFingerprints ? ids.length * 8 : 0)
+                + (hasStarts ? ids.length * 10 : 0)
+                + (hasAttributes ? ids.length * 10 : 0)];
+    int pos = 0;
+    out[pos++] = VERSION;
+    out[pos++] =
+        (byte)
+            ((hasFingerprints ? FLAG_FINGERPRINTS : 0)
+                | (hasStarts ? FLAG_STARTS : 0)
+                | (hasAttributes ? FLAG_ATTRIBUTES : 0));
+    pos = writeVarint(out, pos, ids.length);
+
+    long previous = 0;
+    for (int i = 0; i < ids.length; i++) {
+      long value = i == 0 ? zigzag(ids[0]) : ids[i] - previous;
+      pos = writeVarint(out, pos, value);
+      previous = ids[i];
+    }
+    if (hasFingerprints)
+      for (long fingerprint : fingerprints)
+        for (int shift = 56; shift >= 0; shift -= 8) out[pos++] = (byte) (fingerprint >>> shift);
+    if (hasStarts) {
+      previous = 0;
+      for (long start : starts) {
+        pos = writeVarint(out, pos, zigzag(start - previous));
+        previous = start;
+      }
+    }
+    if (hasAttributes) for (long attribute : attributes) pos = writeVarint(out, pos, attribute);
+
+    return Arrays.copyOf(out, pos);
+  }
+
+  public static SortedShowings decode(byte[] data) {
+    if (data.length < 3 || data[0] != VERSION)
+      throw new IllegalArgumentException("Unsupported packed showings format");
+    boolean hasFingerprints = (data[1] & FLAG_FINGERPRINTS) != 0;
+    boolean hasStarts = (data[1] & FLAG_STARTS) != 0;
+    boolean hasAttributes = (data[1] & FLAG_ATTRIBUTES) != 0;
+    int[] pos = {2};
+    int count = (int) readVarint(data, pos);
+
+    long[] ids = new long[count];
+    long previous = 0;
+    for (int i = 0; i < count; i++) {
+      long value = readVarint(data, pos);
+      ids[i] = i == 0 ? unzigzag(value) : previous + value;
+      previous = ids[i];
+    }
+
+    long[] fingerprints = new long[count];
+    if (hasFingerprints) {
+      if (data.length - pos[0] < count * 8)
+        throw new IllegalArgumentException("Packed showings are truncated");
+      for (int i = 0; i < count; i++) {
+        long fingerprint = 0;
+        for (int b = 0; b < 8; b++) fingerprint = (fingerprint << 8) | (data[pos[0]++] & 0xFF);
+        fingerprints[i] = fingerprint;
+      }
+    }
+
+    long[] starts = new long[count];
+    if (hasStarts) {
+      previous = 0;
+      for (int i = 0; i < count; i++) {
+        starts[i] = previous + unzigzag(readVarint(data, pos));
+        previous = starts[i];
+      }
+    }
+
+    long[] attributes = new long[count];
+    if (hasAttributes) for (int i = 0; i < count; i++) attributes[i] = readVarint(data, pos);
+    if (pos[0] != data.length)
+      throw new IllegalArgumentException("Packed showings have trailing bytes");
+    return SortedShowings.sort(ids, fingerprints, starts, attributes);
+  }
+
+  private static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unzigzag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static int writeVarint(byte[] out, int pos, long value) {
+    while ((value & ~0x7FL) != 0) {
+      out[pos++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out[pos++] = (byte) value;
+    return pos;
+  }
+
+  /** Reads a varint at pos[0] and moves pos[0] past it. */
+  private static long readVarint(byte[] data, int[] pos) {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      if (pos[0] >= data.length)
+        throw new IllegalArgumentException("Packed showings are truncated");
+      byte b = data[pos[0]++];
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) return value;
+    }
+    throw new IllegalArgumentException("Malformed varint in packed showings");
+  }
+}
@@ -0,0 +1,89 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import java.util.List;
+
+/**
+ * The {@link CompiledWatcherFilter compiled filters} of a list of watchers, stored as one primitive
+ * array per field instead of one object per watcher. Scanning a range of watchers then reads a few
+ * consecutive arrays without following references. The cinema is tested first, because it rejects
+ * most watchers; see {@code WatcherMatchingBenchmark}. The {@link CinemaSet cinemas} of watcher
+ * {@code i} are the {@link CinemaSet#WORDS} words from {@code i * WORDS} on.
+ */
+final class WatcherColumns {
+
+  private final int[] movieid;
+  private final long[] cinemas;
+  private final long[] startafter;
+  private final long[] startbefore;
+  private final int[] yes;
+  private final int[] no;
+
+  /** Null for the watchers without an expression. */
+  private final FilterExpression[] expressions;
+
+  private WatcherColumns(int size) {
+    movieid = new int[size];
+    cinemas = new long[size * CinemaSet.WORDS];
+    startafter = new long[size];
+    startbefore = new long[size];
+    yes = new int[size];
+    no = new int[size];
+    expressions = new FilterExpression[size];
+  }
+
+  static WatcherColumns of(List<CompiledWatcherFilter> filters) {
+    WatcherColumns columns = new WatcherColumns(filters.size());
+    for (int i = 0; i < filters.size(); i++) {
+      CompiledWatcherFilter filter = filters.get(i);
+      columns.movieid[i] = filter.getMovieid();
+      for (int w = 0; w < CinemaSet.WORDS; w++)
+        columns.cinemas[i * CinemaSet.WORDS + w] = filter.getCinemas().getWord(w);
+      columns.startafter[i] = filter.getStartafter();
+      columns.startbefore[i] = filter.getStartbefore();
+      columns.yes[i] = filter.getYes();
+      columns.no[i] = filter.getNo();
+      columns.expressions[i] = filter.getExpression();
+    }
+    return columns;
+  }
+
+  /**
+   * Tests the watchers {@code from} (inclusive) to {@code to} (exclusive) against one showing.
+   *
+   * @param out receives the positions of the watchers that accept the showing, in ascending order.
+   *     Must have room for {@code to - from} positions.
+   * @return the number of positions written to {@code out}
+   */
+  int scan(CompactShowing showing, int from, int to, int[] out) {
+    long movie = showing.getMovieId();
+    int cinema = showing.getCinemaId();
+    if (cinema < 0 || cinema >>> 6 >= CinemaSet.WORDS) return 0;
+    int word = cinema >>> 6;
+    long bit = 1L << cinema;
+    long start = showing.getStart();
+    int set = showing.getSet();
+    int unset = showing.getKnown() & ~set;
+
+    int count = 0;
+    for (int i = from; i < to; i++)
+      if ((cinemas[i * CinemaSet.WORDS + word] & bit) != 0
+          && startafter[i] <= start
+          && start <= startbefore[i]
+          && (movieid[i] == movie || movieid[i] == CompiledWatcherFilter.ANY_MOVIE)
+          && ((yes[i] & unset) | (no[i] & set)) == 0
+          && (expressions[i] == null || expressions[i].test(showing))) out[count++] = i;
+    return count;
+  }
+
+  int size() {
+    return movieid.length;
+  }
+
+  long getStartafter(int i) {
+    return startafter[i];
+  }
+
+  long getStartbefore(int i) {
+    return startbefore[i];
+  }
+}
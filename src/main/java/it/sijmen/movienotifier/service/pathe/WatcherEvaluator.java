@@ -0,0 +1,146 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import it.sijmen.movienotifier.model.ShowingExplanation;
+import it.sijmen.movienotifier.model.Watcher;
+import it.sijmen.movienotifier.model.exceptions.BadGatewayException;
+import it.sijmen.movienotifier.model.exceptions.ServiceUnavailableException;
+import it.sijmen.movienotifier.service.NotificationOutbox;
+import it.sijmen.movienotifier.service.WorkerPools;
+import it.sijmen.movienotifier.service.pathe.api.PatheShowings;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Evaluates a single watcher right after it was created or changed against the latest schedule of
+ * its movie, so the user is told about showings that already match instead of only about showings
+ * that appear later on.
+ */
+@Service
+public class WatcherEvaluator {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(WatcherEvaluator.class);
+
+  private final LatestSchedules schedules;
+  private final NotificationOutbox outbox;
+  private final WorkerPools pools;
+  private final long explainTimeout;
+
+  @Autowired
+  public WatcherEvaluator(
+      LatestSchedules schedules,
+      NotificationOutbox outbox,
+      WorkerPools pools,
+      @Value("${explain.timeoutseconds}") long explainTimeoutSeconds) {
+    this.schedules = schedules;
+    this.outbox = outbox;
+    this.pools = pools;
+    this.explainTimeout = TimeUnit.SECONDS.toMillis(explainTimeoutSeconds);
+  }
+
+  /**
+   * Returns right away, matches are sent in the background. Inactive watchers are ignored, as are
+   * watchers for any movie: those only match showings that are detected later on.
+   */
+  public void evaluateAsync(Watcher watcher) {
+    long now = System.currentTimeMillis();
+    if (!isActive(watcher, now)) return;
+    // later changes to the watcher must not affect this evaluation
+    Watcher snapshot = new Watcher(watcher);
+    evaluate(snapshot, CompiledWatcherFilter.compile(snapshot), null, now);
+  }
+
+  /**
+   * Like {@link #evaluateAsync(Watcher)} for a watcher that was changed from previous. Nothing is
+   * evaluated when the movie, the filters and the active window did not change. When the previous
+   * version was active, showings that it accepted are not sent again: those were sent when the
+   * previous version was evaluated or when they were detected.
+   */
+  public void evaluateAsync(Watcher previous, Watcher watcher) {
+    long now = System.currentTimeMillis();
+    if (!isActive(watcher, now)) return;
+    Watcher snapshot = new Watcher(watcher);
+    CompiledWatcherFilter filter = CompiledWatcherFilter.compile(snapshot);
+    CompiledWatcherFilter old = CompiledWatcherFilter.compile(previous);
+    if (old.equals(filter)
+        && previous.getBegin() == snapshot.getBegin()
+        && previous.getEnd() == snapshot.getEnd()) return;
+    evaluate(snapshot, filter, isActive(previous, now) ? old : null, now);
+  }
+
+  private static boolean isActive(Watcher watcher, long now) {
+    return watcher.getBegin() <= now && watcher.getEnd() >= now && !watcher.isAnymovie();
+  }
+
+  /** Sends the upcoming showings that filter accepts and sent, when given, does not. */
+  private void evaluate(
+      Watcher snapshot, CompiledWatcherFilter filter, CompiledWatcherFilter sent, long now) {
+    schedules
+        .get(snapshot.getMovieid())
+        .thenApplyAsync(
+            showings ->
+                showings.getCompactShowings().stream()
+                    .filter(
+                        s ->
+                            s.getStart() >= now
+                                && filter.accepts(s)
+                                && (sent == null || !sent.accepts(s)))
+                    .map(CompactShowing::getSource)
+                    .collect(Collectors.toList()),
+            pools.cpu())
+        .thenAcceptAsync(
+            matches -> {
+              LOGGER.trace(
+                  "Watcher {} has {} matches right away", snapshot.getId(), matches.size());
+              if (!matches.isEmpty()) outbox.enqueue(snapshot, matches);
+            },
+            pools.io())
+        .exceptionally(
+            e -> {
+              LOGGER.error("Could not evaluate watcher {}", snapshot.getId(), e);
+              return null;
+            });
+  }
+
+  /**
+   * Evaluates the watcher against the showings of the latest schedule of its movie in its cinemas
+   * that did not start yet, whether the watcher is active or not, and tells for every showing why
+   * it is rejected. Waits at most {@code explain.timeoutseconds} for the schedule when it is not in
+   * memory. A watcher for any movie has no schedule, so nothing is explained for it.
+   *
+   * @throws ServiceUnavailableException when the schedule is not fetched in time
+   * @throws BadGatewayException when the schedule could not be fetched
+   */
+  public List<ShowingExplanation> explain(Watcher watcher) {
+    if (watcher.isAnymovie()) return Collections.emptyList();
+    long now = System.currentTimeMillis();
+    CompiledWatcherFilter filter = CompiledWatcherFilter.compile(watcher);
+    PatheShowings showings;
+    try {
+      showings = schedules.get(watcher.getMovieid()).get(explainTimeout, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ServiceUnavailableException("The schedule of the movie is not available yet");
+    } catch (TimeoutException e) {
+      throw new ServiceUnavailableException("The schedule of the movie is not available yet");
+    } catch (ExecutionException e) {
+      LOGGER.warn("Could not fetch the schedule of movie {}", watcher.getMovieid(), e.getCause());
+      throw new BadGatewayException("The schedule of the movie could not be fetched");
+    }
+    return showings.getCompactShowings().stream()
+        .filter(s -> s.getStart() >= now && filter.getCinemas().contains(s.getCinemaId()))
+        .map(
+            s ->
+                new ShowingExplanation(
+                    s.getId(), s.getCinemaId(), s.getStart(), filter.rejections(s)))
+        .collect(Collectors.toList());
+  }
+}
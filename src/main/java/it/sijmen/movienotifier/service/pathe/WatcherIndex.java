@@ -0,0 +1,186 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import it.sijmen.movienotifier.model.Watcher;
+import it.sijmen.movienotifier.service.pathe.api.PatheShowing;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the watchers that accept a showing without testing every watcher. The watchers are grouped
+ * by cinema, once for every cinema they accept, and by the attributes they require, and within such
+ * a group sorted by the start of their window. Groups that require an attribute the showing is
+ * known not to have are skipped. The watchers whose window contains the start of a showing all have
+ * a window start in {@code [start - widest window, start]}, which is found with a binary search.
+ * Only those candidates are tested completely, in one scan over the {@link WatcherColumns columns}
+ * of the group.
+ *
+ * <p>The cost of matching a showing therefore depends on the watchers of its cinema and start time,
+ * not on all watchers. This keeps matching the watchers for any movie cheap, because those are
+ * matched against every new showing.
+ */
+final class WatcherIndex {
+
+  private final List<Watcher> watchers;
+
+  /** The groups of every cinema, one per set of required attributes. */
+  private final Map<Integer, Cinema[]> cinemas;
+
+  /** The number of distinct filters of the group with the most distinct filters. */
+  private final int largest;
+
+  private final int distinctFilters;
+
+  private WatcherIndex(
+      List<Watcher> watchers, Map<Integer, Cinema[]> cinemas, int distinctFilters) {
+    this.watchers = watchers;
+    this.cinemas = cinemas;
+    this.distinctFilters = distinctFilters;
+    this.largest =
+        cinemas.values().stream()
+            .flatMap(Arrays::stream)
+            .mapToInt(c -> c.groups.length)
+            .max()
+            .orElse(0);
+  }
+
+  static WatcherIndex of(List<Watcher> watchers) {
+    CompiledWatcherFilter[] filters = new CompiledWatcherFilter[watchers.size()];
+    Map<Integer, Map<Integer, List<Integer>>> byCinema = new HashMap<>();
+    for (int i = 0; i < watchers.size(); i++) {
+      filters[i] = CompiledWatcherFilter.compile(watchers.get(i));
+      for (int cinemaId : filters[i].getCinemas().toArray())
+        byCinema
+            .computeIfAbsent(cinemaId, c -> new HashMap<>())
+            .computeIfAbsent(filters[i].getYes(), y -> new ArrayList<>())
+            .add(i);
+    }
+
+    Map<Integer, Cinema[]> cinemas = new HashMap<>(byCinema.size() * 2);
+    byCinema.forEach(
+        (cinemaId, byYes) ->
+            cinemas.put(
+                cinemaId,
+                byYes.entrySet().stream()
+                    .map(e -> new Cinema(e.getKey(), filters, e.getValue()))
+                    .toArray(Cinema[]::new)));
+    return new WatcherIndex(watchers, cinemas, new HashSet<>(Arrays.asList(filters)).size());
+  }
+
+  /**
+   * @return for every watcher, in the order they were indexed in, the {@link
+   *     CompactShowing#getSource() original} showings it accepts. Watchers that accept nothing get
+   *     an empty list.
+   */
+  List<List<PatheShowing>> match(List<CompactShowing> showings) {
+    List<List<PatheShowing>> out = new ArrayList<>(watchers.size());
+    for (int i = 0; i < watchers.size(); i++) out.add(Collections.emptyList());
+
+    int[] accepted = new int[largest];
+    for (CompactShowing showing : showings) {
+      Cinema[] groups = cinemas.get(showing.getCinemaId());
+      if (groups == null) continue;
+      long start = showing.getStart();
+      int unset = showing.getKnown() & ~showing.getSet();
+
+      for (Cinema cinema : groups) {
+        if ((cinema.yes & unset) != 0) continue;
+
+        // the watchers whose window starts in [start - widest window, start]
+        long earliest = start - cinema.widest;
+        int from = earliest > start ? 0 : lowerBound(cinema.startafter, earliest);
+        int to = upperBound(cinema.startafter, start);
+
+        int count = cinema.columns.scan(showing, from, to, accepted);
+        for (int i = 0; i < count; i++)
+          for (int watcher : cinema.groups[accepted[i]]) {
+            if (out.get(watcher).isEmpty()) out.set(watcher, new ArrayList<>());
+            out.get(watcher).add(showing.getSource());
+          }
+      }
+    }
+    return out;
+  }
+
+  /** @return the number of indexed watchers */
+  int size() {
+    return watchers.size();
+  }
+
+  /** @return the number of distinct filters of the indexed watchers */
+  int getDistinctFilters() {
+    return distinctFilters;
+  }
+
+  /** @return the index of the first value that is not smaller than the key */
+  private static int lowerBound(long[] sorted, long key) {
+    int low = 0;
+    int high = sorted.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (sorted[mid] < key) low = mid + 1;
+      else high = mid;
+    }
+    return low;
+  }
+
+  /** @return the index of the first value that is larger than the key */
+  private static int upperBound(long[] sorted, long key) {
+    int low = 0;
+    int high = sorted.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (sorted[mid] <= key) low = mid + 1;
+      else high = mid;
+    }
+    return low;
+  }
+
+  /**
+   * The distinct filters of the watchers of one cinema that require the same attributes, sorted by
+   * startafter.
+   */
+  private static class Cinema {
+
+    /** The attributes that must be set, when they are known, for every filter. */
+    private final int yes;
+
+    private final long[] startafter;
+    private final WatcherColumns columns;
+
+    /** The indices of the watchers that have each filter. */
+    private final int[][] groups;
+
+    /** The widest window of all watchers, saturated at Long.MAX_VALUE. */
+    private final long widest;
+
+    private Cinema(int yes, CompiledWatcherFilter[] all, List<Integer> indices) {
+      this.yes = yes;
+      Map<CompiledWatcherFilter, List<Integer>> byFilter = new HashMap<>();
+      for (int index : indices)
+        byFilter.computeIfAbsent(all[index], f -> new ArrayList<>()).add(index);
+
+      List<CompiledWatcherFilter> filters = new ArrayList<>(byFilter.keySet());
+      filters.sort(Comparator.comparingLong(CompiledWatcherFilter::getStartafter));
+      columns = WatcherColumns.of(filters);
+      groups = new int[filters.size()][];
+      startafter = new long[filters.size()];
+      long max = 0;
+      for (int i = 0; i < filters.size(); i++) {
+        groups[i] = byFilter.get(filters.get(i)).stream().mapToInt(Integer::intValue).toArray();
+        startafter[i] = columns.getStartafter(i);
+        long startbefore = columns.getStartbefore(i);
+        long width = startbefore - startafter[i];
+        // a negative width is either an empty window or an overflow of a very wide one
+        if (width < 0 && startbefore > startafter[i]) width = Long.MAX_VALUE;
+        max = Math.max(max, width);
+      }
+      widest = max;
+    }
+  }
+}
@@ -0,0 +1,33 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import it.sijmen.movienotifier.service.pathe.api.PatheShowing;
+import java.util.List;
+
+/** What a {@link ShowingMatcher} found for a list of watchers. */
+public final class WatcherMatches {
+
+  private final List<List<PatheShowing>> accepted;
+
+  private final int distinctFilters;
+
+  public WatcherMatches(List<List<PatheShowing>> accepted, int distinctFilters) {
+    this.accepted = accepted;
+    this.distinctFilters = distinctFilters;
+  }
+
+  /**
+   * @return for every watcher, in the same order, the {@link CompactShowing#getSource() original}
+   *     showings it accepts in the order of the showings. Watchers that accept nothing get an empty
+   *     list.
+   */
+  public List<List<PatheShowing>> getAccepted() {
+    return accepted;
+  }
+
+  /**
+   * @return the number of distinct {@link CompiledWatcherFilter compiled filters} of the watchers
+   */
+  public int getDistinctFilters() {
+    return distinctFilters;
+  }
+}
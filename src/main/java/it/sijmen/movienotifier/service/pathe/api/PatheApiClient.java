@@ -1,16 +1,25 @@
 package it.sijmen.movienotifier.service.pathe.api;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mashape.unirest.http.HttpResponse;
 import com.mashape.unirest.http.Unirest;
 import com.mashape.unirest.http.exceptions.UnirestException;
+import it.sijmen.movienotifier.model.serialization.PatheTimestampDeserializer;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.stereotype.Service;
 
 @Service
-public class PatheApiClient {
+public class PatheApiClient implements PublicMetrics {
 
   private ObjectMapper mapper;
   private String patheApiKey;
@@ -22,19 +31,135 @@ public class PatheApiClient {
   }
 
   public PatheShowings getShowingsForMovie(int movieId) throws IOException {
+    return getShowingsForMovie(movieId, SchedulePredicate.ALL);
+  }
+
+  /**
+   * Loads the schedule of a movie. Only the showings that are accepted by the predicate are
+   * returned, all other schedule entries are skipped while parsing.
+   */
+  public PatheShowings getShowingsForMovie(int movieId, SchedulePredicate predicate)
+      throws IOException {
     String uri = "https://connect.pathe.nl/v1/movies/" + movieId + "/schedules";
     HttpResponse<String> stringHttpResponse = makeGetRequest(uri);
 
     if (stringHttpResponse.getStatus() != 200)
       throw new IOException(
           "Status returned " + stringHttpResponse.getStatus() + " after request " + uri);
-    PatheShowings patheShowings =
-        mapper.readValue(stringHttpResponse.getBody(), PatheShowings.class);
+    PatheShowings patheShowings = readShowings(stringHttpResponse.getBody(), predicate);
     if (patheShowings == null) throw new IOException("Unexpected api result");
     patheShowings.setMovieid(movieId);
     return patheShowings;
   }
 
+  private PatheShowings readShowings(String body, SchedulePredicate predicate) throws IOException {
+    try (JsonParser parser = mapper.getFactory().createParser(body)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) return null;
+
+      List<PatheShowing> showings = new ArrayList<>();
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        if (parser.nextToken() == JsonToken.START_ARRAY && "schedules".equals(field)) {
+          while (parser.nextToken() == JsonToken.START_OBJECT) {
+            PatheShowing showing = readShowing(parser, predicate);
+            if (showing != null) showings.add(showing);
+          }
+        } else {
+          parser.skipChildren();
+        }
+      }
+      return new PatheShowings(0, showings);
+    }
+  }
+
+  /**
+   * Reads a single schedule entry straight into a {@link PatheShowing}, field by field, like the
+   * {@code @JsonProperty} mapping of that class. As soon as the cinemaId or start field shows that
+   * the predicate does not accept the entry, the rest of the entry is skipped and null is returned.
+   * Nothing is buffered and every value is parsed once; timestamps are parsed from the character
+   * buffer of the parser.
+   */
+  private static PatheShowing readShowing(JsonParser parser, SchedulePredicate predicate)
+      throws IOException {
+    PatheShowing showing = new PatheShowing();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      if (parser.nextToken() == JsonToken.VALUE_NULL) continue;
+      switch (field) {
+        case "cinemaId":
+          showing.setCinemaId(parser.getValueAsInt());
+          if (!predicate.acceptsCinema(showing.getCinemaId())) {
+            skipRemainder(parser);
+            return null;
+          }
+          break;
+        case "start":
+          showing.setStart(PatheTimestampDeserializer.parse(parser));
+          if (!predicate.acceptsStart(showing.getStart())) {
+            skipRemainder(parser);
+            return null;
+          }
+          break;
+        case "end":
+          showing.setEnd(PatheTimestampDeserializer.parse(parser));
+          break;
+        case "movieId":
+          showing.setMovieId(parser.getValueAsLong());
+          break;
+        case "id":
+          showing.setId(parser.getValueAsLong());
+          break;
+        case "3d":
+          showing.setIs3d(parser.getValueAsInt());
+          break;
+        case "nl":
+          showing.setNl(parser.getValueAsInt());
+          break;
+        case "imax":
+          showing.setImax(parser.getValueAsInt());
+          break;
+        case "ov":
+          showing.setOv(parser.getValueAsInt());
+          break;
+        case "hfr":
+          showing.setHfr(parser.getValueAsInt());
+          break;
+        case "isAtmos":
+          showing.setIsAtmos(parser.getValueAsInt());
+          break;
+        case "is4k":
+          showing.setIs4k(parser.getValueAsInt());
+          break;
+        case "isLaser":
+          showing.setIsLaser(parser.getValueAsInt());
+          break;
+        case "is4dx":
+          showing.setIs4dx(parser.getValueAsBoolean());
+          break;
+        case "isScreenx":
+          showing.setIsScreenx(parser.getValueAsBoolean());
+          break;
+        case "isVision":
+          showing.setIsVision(parser.getValueAsBoolean());
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+    return showing;
+  }
+
+  private static void skipRemainder(JsonParser parser) throws IOException {
+    parser.skipChildren();
+    while (parser.nextToken() != JsonToken.END_OBJECT) parser.skipChildren();
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    return Collections.singletonList(
+        new Metric<>("pathe.timestamps.malformed", PatheTimestampDeserializer.getMalformedCount()));
+  }
+
   HttpResponse<String> makeGetRequest(String uri) throws IOException {
     try {
       return Unirest.get(uri).header("X-Client-Token", patheApiKey).asString();
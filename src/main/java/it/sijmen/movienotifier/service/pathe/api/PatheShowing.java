@@ -4,7 +4,7 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import it.sijmen.movienotifier.model.Cinema;
-import it.sijmen.movienotifier.model.serialization.UnixTimestampDeserializer;
+import it.sijmen.movienotifier.model.serialization.PatheTimestampDeserializer;
 import it.sijmen.movienotifier.service.pathe.CinemaService;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -20,11 +20,11 @@ public class PatheShowing implements Comparable<PatheShowing> {
 
   @JsonProperty private long id;
 
-  @JsonDeserialize(using = UnixTimestampDeserializer.class)
+  @JsonDeserialize(using = PatheTimestampDeserializer.class)
   @JsonProperty
   private long start;
 
-  @JsonDeserialize(using = UnixTimestampDeserializer.class)
+  @JsonDeserialize(using = PatheTimestampDeserializer.class)
   @JsonProperty
   private long end;
 
@@ -257,6 +257,43 @@ public class PatheShowing implements Comparable<PatheShowing> {
         && Objects.equals(isVision, that.isVision);
   }
 
+  /**
+   * A hash over everything that can change about a showing without it getting a new id: start, end,
+   * cinema and all attribute flags. Two showings with the same id and an equal fingerprint are
+   * considered {@link #equalsContent(PatheShowing) equal in content}. Never returns 0, which is
+   * reserved for an unknown fingerprint.
+   */
+  public long getFingerprint() {
+    long h = cinemaId;
+    h = 31 * h + start;
+    h = 31 * h + end;
+    h = 31 * h + flag(is3d);
+    h = 31 * h + flag(nl);
+    h = 31 * h + flag(imax);
+    h = 31 * h + flag(ov);
+    h = 31 * h + flag(hfr);
+    h = 31 * h + flag(isAtmos);
+    h = 31 * h + flag(is4k);
+    h = 31 * h + flag(isLaser);
+    h = 31 * h + flag(is4dx);
+    h = 31 * h + flag(isScreenx);
+    h = 31 * h + flag(isVision);
+
+    // spread the bits with the splitmix64 finalizer so similar showings differ everywhere
+    h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+    h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+    h = h ^ (h >>> 31);
+    return h == 0 ? 1 : h;
+  }
+
+  private static int flag(Integer value) {
+    return value == null ? 0 : value + 1;
+  }
+
+  private static int flag(Boolean value) {
+    return value == null ? 0 : (value ? 2 : 1);
+  }
+
   private static final SimpleDateFormat format1 = new SimpleDateFormat("EEE d MMMM HH:mm");
   private static final SimpleDateFormat format2 = new SimpleDateFormat("HH:mm");
 
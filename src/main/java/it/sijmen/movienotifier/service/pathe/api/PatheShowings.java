@@ -1,9 +1,14 @@
 package it.sijmen.movienotifier.service.pathe.api;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import it.sijmen.movienotifier.service.pathe.CompactShowing;
+import it.sijmen.movienotifier.service.pathe.SortedShowings;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
 
 public class PatheShowings {
 
@@ -12,6 +17,8 @@ public class PatheShowings {
   @JsonProperty("schedules")
   private List<PatheShowing> showings;
 
+  @JsonIgnore @Transient private volatile List<CompactShowing> compactShowings;
+
   public PatheShowings(int movieid, List<PatheShowing> showings) {
     this.movieid = movieid;
     this.showings = showings;
@@ -29,6 +36,27 @@ public class PatheShowings {
 
   public void setShowings(List<PatheShowing> showings) {
     this.showings = showings;
+    this.compactShowings = null;
+  }
+
+  /**
+   * @return the showings in the form watchers are matched against, created when they are first
+   *     needed and shared afterwards
+   */
+  public List<CompactShowing> getCompactShowings() {
+    List<CompactShowing> compact = compactShowings;
+    if (compact == null) compactShowings = compact = CompactShowing.of(showings);
+    return compact;
+  }
+
+  /**
+   * Sorts the showings by id, so they can be walked together with the ids of {@link
+   * SortedShowings}, which are then sorted already.
+   */
+  public void sortById() {
+    List<PatheShowing> sorted = new ArrayList<>(showings);
+    sorted.sort(Comparator.comparingLong(PatheShowing::getId));
+    setShowings(sorted);
   }
 
   public int getMovieid() {
@@ -65,6 +93,11 @@ public class PatheShowings {
     return out;
   }
 
+  /** @return the ids and fingerprints of the showings, sorted by id without duplicates */
+  public SortedShowings getSortedShowings() {
+    return SortedShowings.of(showings);
+  }
+
   @Override
   public String toString() {
     return "PatheShowings{" + "movieid=" + movieid + ", showings=" + showings + '}';
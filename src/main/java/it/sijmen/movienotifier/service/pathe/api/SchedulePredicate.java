@@ -0,0 +1,102 @@
+package it.sijmen.movienotifier.service.pathe.api;
+
+import it.sijmen.movienotifier.model.Watcher;
+import it.sijmen.movienotifier.model.WatcherFilters;
+import it.sijmen.movienotifier.service.pathe.CinemaSet;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Describes which schedule entries of a movie can possibly be accepted by the watchers of that
+ * movie. Entries outside of this predicate are discarded while the Pathe api response is parsed,
+ * before a {@link PatheShowing} is built for them.
+ */
+public class SchedulePredicate {
+
+  public static final SchedulePredicate ALL =
+      new SchedulePredicate((BitSet) null, Long.MIN_VALUE, Long.MAX_VALUE);
+
+  /** The cinemas that are referenced by at least one watcher. When null all cinemas match. */
+  private final BitSet cinemaIds;
+
+  private final long startafter;
+
+  private final long startbefore;
+
+  public SchedulePredicate(BitSet cinemaIds, long startafter, long startbefore) {
+    this.cinemaIds = cinemaIds;
+    this.startafter = startafter;
+    this.startbefore = startbefore;
+  }
+
+  public SchedulePredicate(List<Integer> cinemaIds, long startafter, long startbefore) {
+    this(toBitSet(cinemaIds), startafter, startbefore);
+  }
+
+  /**
+   * Builds the predicate that covers every showing that one of the given watchers could accept.
+   * Showings that start before {@code now} are never interesting.
+   */
+  public static SchedulePredicate forWatchers(Collection<Watcher> watchers, long now) {
+    if (watchers.isEmpty()) return ALL;
+    BitSet cinemaIds = new BitSet();
+    long startafter = Long.MAX_VALUE;
+    long startbefore = Long.MIN_VALUE;
+    for (Watcher watcher : watchers) {
+      WatcherFilters filters = watcher.getFilters();
+      for (int cinemaId : CinemaSet.of(filters).toArray()) cinemaIds.set(cinemaId);
+      startafter = Math.min(startafter, filters.getStartafter());
+      startbefore = Math.max(startbefore, filters.getStartbefore());
+    }
+    return new SchedulePredicate(cinemaIds, Math.max(now, startafter), startbefore);
+  }
+
+  private static BitSet toBitSet(List<Integer> ids) {
+    if (ids == null) return null;
+    BitSet out = new BitSet();
+    for (Integer id : ids) out.set(id);
+    return out;
+  }
+
+  public boolean acceptsCinema(int cinemaId) {
+    return cinemaIds == null || (cinemaId >= 0 && cinemaIds.get(cinemaId));
+  }
+
+  public boolean acceptsStart(long start) {
+    return start >= startafter && start <= startbefore;
+  }
+
+  public boolean accepts(int cinemaId, long start) {
+    return acceptsCinema(cinemaId) && acceptsStart(start);
+  }
+
+  /** @return the accepted cinema ids or null when all cinemas are accepted */
+  public List<Integer> getCinemaIds() {
+    if (cinemaIds == null) return null;
+    List<Integer> out = new ArrayList<>(cinemaIds.cardinality());
+    for (int i = cinemaIds.nextSetBit(0); i >= 0; i = cinemaIds.nextSetBit(i + 1)) out.add(i);
+    return out;
+  }
+
+  public long getStartafter() {
+    return startafter;
+  }
+
+  public long getStartbefore() {
+    return startbefore;
+  }
+
+  @Override
+  public String toString() {
+    return "SchedulePredicate{"
+        + "cinemaIds="
+        + cinemaIds
+        + ", startafter="
+        + startafter
+        + ", startbefore="
+        + startbefore
+        + '}';
+  }
+}
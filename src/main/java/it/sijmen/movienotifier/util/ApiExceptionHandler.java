@@ -1,7 +1,9 @@
 package it.sijmen.movienotifier.util;
 
 import it.sijmen.movienotifier.model.exceptions.ApiException;
+import it.sijmen.movienotifier.model.exceptions.BadGatewayException;
 import it.sijmen.movienotifier.model.exceptions.BadRequestException;
+import it.sijmen.movienotifier.model.exceptions.ServiceUnavailableException;
 import it.sijmen.movienotifier.model.exceptions.UnauthorizedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,6 +21,8 @@ public class ApiExceptionHandler {
   private static final String BADREQUEST = "Bad Request";
   private static final String INTERNALSERVERERROR = "Internal Server Error";
   private static final String UNAUTH = "Unauthorized Request";
+  private static final String SERVICEUNAVAILABLE = "Service Unavailable";
+  private static final String BADGATEWAY = "Bad Gateway";
 
   private static final Logger LOGGER = LoggerFactory.getLogger(ApiExceptionHandler.class);
 
@@ -46,6 +50,22 @@ public class ApiExceptionHandler {
     return new ApiException(UNAUTH);
   }
 
+  @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+  @ExceptionHandler(ServiceUnavailableException.class)
+  @ResponseBody
+  public ApiException handleServiceUnavailable(ServiceUnavailableException e) {
+    LOGGER.debug(SERVICEUNAVAILABLE, e);
+    return e;
+  }
+
+  @ResponseStatus(HttpStatus.BAD_GATEWAY)
+  @ExceptionHandler(BadGatewayException.class)
+  @ResponseBody
+  public ApiException handleBadGateway(BadGatewayException e) {
+    LOGGER.debug(BADGATEWAY, e);
+    return e;
+  }
+
   @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
   @ExceptionHandler(Exception.class)
   @ResponseBody
@@ -0,0 +1,93 @@
+package it.sijmen.movienotifier.api;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import it.sijmen.movienotifier.controllers.ReplayController;
+import it.sijmen.movienotifier.model.Watcher;
+import it.sijmen.movienotifier.service.pathe.PatheNotifier;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@WebMvcTest(ReplayController.class)
+public class ReplayTest extends UserTestBase {
+
+  @MockBean PatheNotifier notifier;
+
+  @Test
+  public void testReplay() throws Exception {
+    List<Watcher> watchers = Collections.singletonList(new Watcher());
+    when(watcherRepo.getAllByBeginIsLessThanAndEndIsGreaterThan(anyLong(), anyLong()))
+        .thenReturn(watchers);
+    when(notifier.replay(any(Date.class), any(Date.class), eq(watchers))).thenReturn(2);
+
+    this.mvc
+        .perform(
+            post("/replay")
+                .param("from", "1000")
+                .param("to", "2000")
+                .accept(MediaType.APPLICATION_JSON)
+                .header("APIKEY", "REPLAYKEY"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.replayed").value(2));
+
+    verify(notifier).replay(new Date(1000), new Date(2000), watchers);
+  }
+
+  @Test
+  public void testReplayWithTheKeyOfAUser() throws Exception {
+    addToMockedDb(testuser);
+
+    this.mvc
+        .perform(
+            post("/replay")
+                .param("from", "1000")
+                .param("to", "2000")
+                .accept(MediaType.APPLICATION_JSON)
+                .header("APIKEY", testuser.getApikey()))
+        .andExpect(status().isUnauthorized())
+        .andExpect(jsonPath("$.message").value("Unauthorized Request"));
+
+    verify(notifier, never()).replay(any(Date.class), any(Date.class), anyListOf(Watcher.class));
+  }
+
+  @Test
+  public void testReplayWithoutKey() throws Exception {
+    this.mvc
+        .perform(
+            post("/replay")
+                .param("from", "1000")
+                .param("to", "2000")
+                .accept(MediaType.APPLICATION_JSON))
+        .andExpect(status().isUnauthorized());
+
+    verify(notifier, never()).replay(any(Date.class), any(Date.class), anyListOf(Watcher.class));
+  }
+
+  @Test
+  public void testReplayBackwards() throws Exception {
+    this.mvc
+        .perform(
+            post("/replay")
+                .param("from", "2000")
+                .param("to", "1000")
+                .accept(MediaType.APPLICATION_JSON)
+                .header("APIKEY", "REPLAYKEY"))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.errors[0]").value("from must not be after to"));
+  }
+}
@@ -3,7 +3,10 @@ package it.sijmen.movienotifier.api;
 import static org.mockito.Mockito.when;
 
 import it.sijmen.movienotifier.model.User;
+import it.sijmen.movienotifier.repositories.MatcherDivergenceRepository;
+import it.sijmen.movienotifier.repositories.OutboxRepository;
 import it.sijmen.movienotifier.repositories.PatheCacheRepository;
+import it.sijmen.movienotifier.repositories.ShowingEventRepository;
 import it.sijmen.movienotifier.repositories.UserRepository;
 import it.sijmen.movienotifier.repositories.WatcherRepository;
 import it.sijmen.movienotifier.util.PasswordAuthentication;
@@ -28,6 +31,12 @@ abstract class UserTestBase {
 
   @MockBean PatheCacheRepository patheCacheRepository;
 
+  @MockBean ShowingEventRepository showingEventRepository;
+
+  @MockBean MatcherDivergenceRepository matcherDivergenceRepository;
+
+  @MockBean OutboxRepository outboxRepository;
+
   final User testuser;
   final User testuser2;
 
@@ -8,6 +8,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 
 import it.sijmen.movienotifier.controllers.WatcherController;
 import it.sijmen.movienotifier.model.Watcher;
+import java.util.Arrays;
 import org.hamcrest.Matchers;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -61,6 +62,7 @@ public class WatcherCreateTest extends WatcherTestBase {
         .andExpect(jsonPath("$.end").value(testwatcher.getEnd()))
         .andExpect(jsonPath("$.begin").value(testwatcher.getBegin()));
     verify(watcherRepo, times(1)).save((Watcher) any());
+    verify(watcherEvaluator, times(1)).evaluateAsync(any());
   }
 
   @Test
@@ -120,6 +122,118 @@ public class WatcherCreateTest extends WatcherTestBase {
     verifyZeroInteractions(watcherRepo);
   }
 
+  @Test
+  public void testCreateInvalidExpression() throws Exception {
+    addToMockedDb(testuser);
+    Watcher watcher = new Watcher(testwatcher);
+    watcher.getFilters().setExpression("imax or");
+    this.mvc
+        .perform(
+            put("/watchers/")
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("APIKEY", testuser.getApikey())
+                .content(buildJsonCreation(watcher)))
+        .andExpect(status().isBadRequest())
+        .andExpect(
+            jsonPath("$.errors")
+                .value(
+                    Matchers.containsInAnyOrder(
+                        "filters.expression is not a valid filter expression: expected a filter at position 8")));
+    verifyZeroInteractions(watcherRepo);
+  }
+
+  @Test
+  public void testCreateExpressionIsNotReadAsTemplate() throws Exception {
+    addToMockedDb(testuser);
+    Watcher watcher = new Watcher(testwatcher);
+    watcher.getFilters().setExpression("imax and ${1+1}");
+    this.mvc
+        .perform(
+            put("/watchers/")
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("APIKEY", testuser.getApikey())
+                .content(buildJsonCreation(watcher)))
+        .andExpect(status().isBadRequest())
+        .andExpect(
+            jsonPath("$.errors")
+                .value(
+                    Matchers.containsInAnyOrder(
+                        "filters.expression is not a valid filter expression: unexpected '$' at position 10")));
+    verifyZeroInteractions(watcherRepo);
+  }
+
+  @Test
+  public void testCreateTooLongExpression() throws Exception {
+    addToMockedDb(testuser);
+    Watcher watcher = new Watcher(testwatcher);
+    StringBuilder expression = new StringBuilder("imax");
+    while (expression.length() <= 1000) expression.append(" and imax");
+    watcher.getFilters().setExpression(expression.toString());
+    this.mvc
+        .perform(
+            put("/watchers/")
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("APIKEY", testuser.getApikey())
+                .content(buildJsonCreation(watcher)))
+        .andExpect(status().isBadRequest())
+        .andExpect(
+            jsonPath("$.errors")
+                .value(
+                    Matchers.containsInAnyOrder(
+                        "filters.expression size must be between 0 and 1000")));
+    verifyZeroInteractions(watcherRepo);
+  }
+
+  @Test
+  public void testCreateAnyMovie() throws Exception {
+    addToMockedDb(testuser);
+    when(watcherRepo.save((Watcher) any())).then(a -> a.getArguments()[0]);
+    String json =
+        buildJson(
+            null,
+            testwatcher.getUserid(),
+            testwatcher.getName(),
+            -1,
+            testwatcher.getBegin(),
+            testwatcher.getEnd(),
+            buildJson(testwatcher.getFilters()));
+
+    this.mvc
+        .perform(
+            put("/watchers/")
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("APIKEY", testuser.getApikey())
+                .content(json.replaceFirst("\\{", "{\"anymovie\": true,")))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.anymovie").value(true));
+    verify(watcherRepo, times(1)).save((Watcher) any());
+  }
+
+  @Test
+  public void testCreateUnknownCinemaids() throws Exception {
+    addToMockedDb(testuser);
+    Watcher watcher = new Watcher(testwatcher);
+    watcher.getFilters().setCinemaids(Arrays.asList(9, 999));
+    this.mvc
+        .perform(
+            put("/watchers/")
+                .accept(MediaType.APPLICATION_JSON)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("APIKEY", testuser.getApikey())
+                .content(buildJsonCreation(watcher)))
+        .andExpect(status().isBadRequest())
+        .andExpect(
+            jsonPath("$.errors")
+                .value(
+                    Matchers.containsInAnyOrder(
+                        "filters.cinemaids contains a cinemaid that does not exist.")));
+    verifyZeroInteractions(watcherRepo);
+  }
+
   @Test
   public void testCreateNoParams() throws Exception {
     addToMockedDb(testuser);
@@ -1,12 +1,18 @@
 package it.sijmen.movienotifier.api;
 
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import it.sijmen.movienotifier.controllers.WatcherController;
+import it.sijmen.movienotifier.model.ShowingExplanation;
+import it.sijmen.movienotifier.model.exceptions.ServiceUnavailableException;
+import java.util.Collections;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
@@ -49,4 +55,56 @@ public class WatcherReadTest extends WatcherTestBase {
         .andExpect(jsonPath("$.id").doesNotExist());
     verify(watcherRepo, times(1)).getFirstByUuid(testwatcher.getId());
   }
+
+  @Test
+  public void testExplainOwn() throws Exception {
+    addToMockedDb(testuser);
+    addToMockedDb(testwatcher);
+    when(watcherEvaluator.explain(any()))
+        .thenReturn(
+            Collections.singletonList(
+                new ShowingExplanation(1, 2, 3, Collections.singletonList("imax"))));
+
+    this.mvc
+        .perform(
+            get("/watchers/" + testwatcher.getId() + "/explain")
+                .accept(MediaType.APPLICATION_JSON)
+                .header("APIKEY", testuser.getApikey()))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$[0].showingid").value(1))
+        .andExpect(jsonPath("$[0].accepted").value(false))
+        .andExpect(jsonPath("$[0].rejectedby[0]").value("imax"));
+  }
+
+  @Test
+  public void testExplainSomeoneElses() throws Exception {
+    addToMockedDb(testuser);
+    addToMockedDb(testuser2);
+    addToMockedDb(testwatcher);
+
+    this.mvc
+        .perform(
+            get("/watchers/" + testwatcher.getId() + "/explain")
+                .accept(MediaType.APPLICATION_JSON)
+                .header("APIKEY", testuser2.getApikey()))
+        .andExpect(status().isUnauthorized());
+    verify(watcherEvaluator, never()).explain(any());
+  }
+
+  @Test
+  public void testExplainWithoutSchedule() throws Exception {
+    addToMockedDb(testuser);
+    addToMockedDb(testwatcher);
+    when(watcherEvaluator.explain(any()))
+        .thenThrow(
+            new ServiceUnavailableException("The schedule of the movie is not available yet"));
+
+    this.mvc
+        .perform(
+            get("/watchers/" + testwatcher.getId() + "/explain")
+                .accept(MediaType.APPLICATION_JSON)
+                .header("APIKEY", testuser.getApikey()))
+        .andExpect(status().isServiceUnavailable())
+        .andExpect(jsonPath("$.message").value("The schedule of the movie is not available yet"));
+  }
 }
@@ -6,14 +6,19 @@ import static org.mockito.Mockito.when;
 import it.sijmen.movienotifier.model.FilterOption;
 import it.sijmen.movienotifier.model.Watcher;
 import it.sijmen.movienotifier.model.WatcherFilters;
+import it.sijmen.movienotifier.service.pathe.WatcherEvaluator;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 import org.joda.time.DateTime;
 import org.junit.After;
 import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.MockBean;
 
 abstract class WatcherTestBase extends UserTestBase {
 
+  @MockBean WatcherEvaluator watcherEvaluator;
+
   final Watcher testwatcher;
 
   public WatcherTestBase() {
@@ -79,8 +84,10 @@ abstract class WatcherTestBase extends UserTestBase {
         d.isDolbyatmos(),
         d.isRegularshowing(),
         d.getCinemaid(),
+        d.getCinemaids(),
         d.getStartafter(),
-        d.getStartbefore());
+        d.getStartbefore(),
+        d.getExpression());
   }
 
   private String buildJson(
@@ -97,10 +104,17 @@ abstract class WatcherTestBase extends UserTestBase {
       FilterOption dolbyatmos,
       FilterOption regularshowing,
       int cinemaid,
+      List<Integer> cinemaids,
       long startafter,
-      long startbefore) {
+      long startbefore,
+      String expression) {
     List<String> items = new ArrayList<>();
     if (cinemaid != 0) items.add("\"cinemaid\": \"" + cinemaid + "\"");
+    if (cinemaids != null)
+      items.add(
+          "\"cinemaids\": ["
+              + cinemaids.stream().map(String::valueOf).collect(Collectors.joining(", "))
+              + "]");
     if (ov != null) items.add("\"ov\": \"" + ov + "\"");
     if (nl != null) items.add("\"nl\": \"" + nl + "\"");
     if (imax != null) items.add("\"imax\": \"" + imax + "\"");
@@ -115,6 +129,7 @@ abstract class WatcherTestBase extends UserTestBase {
     if (regularshowing != null) items.add("\"regularshowing\": \"" + regularshowing + "\"");
     if (startafter != -1) items.add("\"startafter\": \"" + startafter + "\"");
     if (startbefore != -1) items.add("\"startbefore\": \"" + startbefore + "\"");
+    if (expression != null) items.add("\"expression\": \"" + expression + "\"");
 
     return "{\n" + String.join(",\n", items) + "}";
   }
@@ -0,0 +1,138 @@
+package it.sijmen.movienotifier.model;
+
+import static org.mockito.Mockito.mock;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.DefaultDBDecoder;
+import com.mongodb.DefaultDBEncoder;
+import it.sijmen.movienotifier.service.pathe.SortedShowings;
+import it.sijmen.movienotifier.service.pathe.api.PatheShowing;
+import it.sijmen.movienotifier.service.pathe.api.SchedulePredicate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.mongodb.core.convert.DbRefResolver;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+/**
+ * Compares storing the {@link PatheMovieCache} of a popular movie as arrays and packed. A write
+ * maps the cache to a document and encodes it to BSON, a read decodes the BSON, maps it back and
+ * restores the {@link SortedShowings}. That is the part of a Mongo round trip that runs in this
+ * process, the network and the server are not included. The BSON sizes are printed at setup. Run
+ * the main method from the test classpath.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PatheMovieCacheStorageBenchmark {
+
+  private static final int MOVIEID = 1;
+  private static final int CINEMAS = 25;
+  private static final int DAYS = 14;
+  private static final int SHOWINGS_PER_DAY = 7;
+  private static final long START = 1_513_368_000_000L;
+  private static final long HOUR = 3_600_000;
+
+  private final MappingMongoConverter converter =
+      new MappingMongoConverter(mock(DbRefResolver.class), new MongoMappingContext());
+
+  private SortedShowings showings;
+  private byte[] arrays;
+  private byte[] packed;
+
+  @Setup
+  public void setUp() {
+    converter.afterPropertiesSet();
+    Random random = new Random(30);
+    List<PatheShowing> list = new ArrayList<>();
+    long id = 2_400_000;
+    for (int day = 0; day < DAYS; day++)
+      for (int cinema = 1; cinema <= CINEMAS; cinema++)
+        for (int i = 0; i < SHOWINGS_PER_DAY; i++) {
+          // pathe hands out ids to the showings of all movies, so those of one movie have gaps
+          id += 1 + random.nextInt(40);
+          long start = START + day * 24 * HOUR + (11 + 2 * i) * HOUR;
+          list.add(
+              new PatheShowing(
+                  cinema,
+                  MOVIEID,
+                  id,
+                  start,
+                  start + 2 * HOUR + random.nextInt(4) * 900_000,
+                  random.nextInt(5) == 0 ? 1 : 0,
+                  0,
+                  random.nextInt(10) == 0 ? 1 : 0,
+                  1,
+                  0,
+                  random.nextInt(8) == 0 ? 1 : 0,
+                  0,
+                  0,
+                  false,
+                  false,
+                  false));
+        }
+    showings = SortedShowings.of(list);
+    arrays = write(false);
+    packed = write(true);
+    System.out.printf(
+        "%n%d showings: %d bytes as arrays, %d bytes packed%n",
+        list.size(), arrays.length, packed.length);
+  }
+
+  private byte[] write(boolean pack) {
+    PatheMovieCache cache =
+        new PatheMovieCache(
+            MOVIEID,
+            showings,
+            new SchedulePredicate(Collections.singletonList(1), 0, Long.MAX_VALUE),
+            pack);
+    DBObject document = new BasicDBObject();
+    converter.write(cache, document);
+    return new DefaultDBEncoder().encode(document);
+  }
+
+  private SortedShowings read(byte[] bson) {
+    DBObject document = new DefaultDBDecoder().decode(bson, (DBCollection) null);
+    return converter.read(PatheMovieCache.class, document).getSortedShowings();
+  }
+
+  @Benchmark
+  public byte[] writeArrays() {
+    return write(false);
+  }
+
+  @Benchmark
+  public byte[] writePacked() {
+    return write(true);
+  }
+
+  @Benchmark
+  public SortedShowings readArrays() {
+    return read(arrays);
+  }
+
+  @Benchmark
+  public SortedShowings readPacked() {
+    return read(packed);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(
+            new OptionsBuilder()
+                .include(PatheMovieCacheStorageBenchmark.class.getSimpleName())
+                .build())
+        .run();
+  }
+}
@@ -0,0 +1,66 @@
+package it.sijmen.movienotifier.model.serialization;
+
+import static org.junit.Assert.assertEquals;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+import org.junit.Test;
+
+public class PatheTimestampDeserializerTest {
+
+  private final SimpleDateFormat reference = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX");
+
+  @Test
+  public void testParsesLikeSimpleDateFormat() throws Exception {
+    assertParsesLikeReference("2017-12-15T21:00:00+01:00");
+    assertParsesLikeReference("2019-08-03T19:50:00+02:00");
+    assertParsesLikeReference("2020-02-29T00:00:00Z");
+    assertParsesLikeReference("1969-12-31T23:59:59-05:30");
+    assertParsesLikeReference("  2017-12-15T21:00:00+01:00 ");
+  }
+
+  @Test
+  public void testParsesRandomTimestamps() throws Exception {
+    Random random = new Random(42);
+    String[] zones = {"Europe/Amsterdam", "UTC", "America/New_York", "Asia/Kolkata"};
+    for (int i = 0; i < 1000; i++) {
+      reference.setTimeZone(TimeZone.getTimeZone(zones[random.nextInt(zones.length)]));
+      String text = reference.format(new Date((random.nextLong() >>> 23) / 1000 * 1000));
+      assertParsesLikeReference(text);
+    }
+  }
+
+  @Test
+  public void testParsesFractionAndCompactOffset() throws IOException {
+    assertEquals(1513368000123L, parse("2017-12-15T21:00:00.123+0100"));
+    assertEquals(1513368000500L, parse("2017-12-15T21:00:00.5+01"));
+  }
+
+  @Test
+  public void testCountsMalformedValues() throws IOException {
+    long before = PatheTimestampDeserializer.getMalformedCount();
+    assertEquals(-1, parse(""));
+    assertEquals(-1, parse("2017-12-15 21:00:00+01:00"));
+    assertEquals(-1, parse("2017-02-30T21:00:00+01:00"));
+    assertEquals(-1, parse("2017-12-15T21:00:00"));
+    assertEquals(-1, parse("2017-12-15T21:00:00+01:00x"));
+    assertEquals(before + 5, PatheTimestampDeserializer.getMalformedCount());
+  }
+
+  private void assertParsesLikeReference(String text) throws ParseException, IOException {
+    assertEquals(text, reference.parse(text.trim()).getTime(), parse(text));
+  }
+
+  private long parse(String text) throws IOException {
+    try (JsonParser parser = new JsonFactory().createParser("\"" + text + "\"")) {
+      parser.nextToken();
+      return new PatheTimestampDeserializer().deserialize(parser, null);
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package it.sijmen.movienotifier.model.serialization;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares {@link PatheTimestampDeserializer} with the shared {@link SimpleDateFormat} it replaced.
+ * Both deserialize the same json string token, the parser creation is shared overhead. Run the main
+ * method from the test classpath.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TimestampDeserializerBenchmark {
+
+  private final JsonFactory factory = new JsonFactory();
+  private final char[] json = "\"2017-12-15T21:00:00+01:00\"".toCharArray();
+
+  private final SimpleDateFormat simpleDateFormat =
+      new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX");
+
+  private final PatheTimestampDeserializer charBuffer = new PatheTimestampDeserializer();
+
+  @Benchmark
+  public long simpleDateFormat() throws IOException, ParseException {
+    try (JsonParser parser = factory.createParser(json)) {
+      parser.nextToken();
+      return simpleDateFormat.parse(parser.getText().trim()).getTime();
+    }
+  }
+
+  @Benchmark
+  public long charBuffer() throws IOException {
+    try (JsonParser parser = factory.createParser(json)) {
+      parser.nextToken();
+      return PatheTimestampDeserializer.parse(parser);
+    }
+  }
+
+  @Benchmark
+  public Long charBufferDeserializer() throws IOException {
+    try (JsonParser parser = factory.createParser(json)) {
+      parser.nextToken();
+      return charBuffer.deserialize(parser, null);
+    }
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(
+            new OptionsBuilder()
+                .include(TimestampDeserializerBenchmark.class.getSimpleName())
+                .build())
+        .run();
+  }
+}
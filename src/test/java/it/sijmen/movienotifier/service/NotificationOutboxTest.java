@@ -0,0 +1,226 @@
+package it.sijmen.movienotifier.service;
+
+import static it.sijmen.movienotifier.model.FilterOption.NOPREFERENCE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+import it.sijmen.movienotifier.model.OutboxEntry;
+import it.sijmen.movienotifier.model.Watcher;
+import it.sijmen.movienotifier.model.WatcherFilters;
+import it.sijmen.movienotifier.repositories.OutboxRepository;
+import it.sijmen.movienotifier.service.pathe.api.PatheShowing;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class NotificationOutboxTest {
+
+  private static final List<PatheShowing> MATCHES =
+      Collections.singletonList(
+          new PatheShowing(
+              12, 1, 1, 1_000_000, 2_000_000, 0, 0, 0, 1, 0, 1, 0, 0, false, false, false));
+
+  private OutboxRepository repository;
+  private NotificationService notificationService;
+  private NotificationOutbox outbox;
+
+  @Before
+  public void setUp() {
+    repository = mock(OutboxRepository.class);
+    notificationService = mock(NotificationService.class);
+    outbox = new NotificationOutbox(repository, notificationService, 1, 3, 1, 4, 60, 10, 0, 0, 0);
+  }
+
+  @After
+  public void tearDown() {
+    outbox.shutdown();
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testOnlyWatchersWithMatchesAreEnqueued() throws Exception {
+    Watcher matched = watcher("A");
+
+    outbox.enqueue(
+        Arrays.asList(watcher("B"), matched), Arrays.asList(Collections.emptyList(), MATCHES));
+
+    ArgumentCaptor<List> entries = ArgumentCaptor.forClass(List.class);
+    verify(repository).insert(entries.capture());
+    assertEquals(1, entries.getValue().size());
+    OutboxEntry entry = (OutboxEntry) entries.getValue().get(0);
+    assertEquals("A", entry.getWatcherid());
+    assertEquals(OutboxEntry.Status.PENDING, entry.getStatus());
+    assertEquals(MATCHES, entry.getMatches());
+    // the entries are delivered right away
+    verify(repository, timeout(1000)).claim(any(), any(), eq(10));
+  }
+
+  @Test
+  public void testEnqueuesOfOneRunAreDeliveredTogether() throws Exception {
+    outbox.shutdown();
+    outbox = new NotificationOutbox(repository, notificationService, 1, 3, 1, 4, 60, 10, 100, 0, 0);
+
+    outbox.enqueue(watcher("A"), MATCHES);
+    outbox.enqueue(watcher("B"), MATCHES);
+
+    verify(repository, timeout(1000)).claim(any(), any(), anyInt());
+    Thread.sleep(200);
+    verify(repository, times(1)).claim(any(), any(), anyInt());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testEnqueueHoldsEntriesBackForTheDigest() throws Exception {
+    outbox.shutdown();
+    outbox =
+        new NotificationOutbox(repository, notificationService, 1, 3, 1, 4, 60, 10, 0, 1000, 5000);
+    long before = System.currentTimeMillis();
+
+    outbox.enqueue(watcher("A"), MATCHES);
+
+    InOrder inOrder = inOrder(repository);
+    inOrder.verify(repository).postpone(eq(Collections.singleton("USER")), any());
+    ArgumentCaptor<List> entries = ArgumentCaptor.forClass(List.class);
+    inOrder.verify(repository).insert(entries.capture());
+    OutboxEntry entry = (OutboxEntry) entries.getValue().get(0);
+    assertTrue(entry.getDue().getTime() >= before + 1000);
+    assertTrue(entry.getDue().getTime() < entry.getDeadline().getTime());
+    assertTrue(entry.getDeadline().getTime() <= System.currentTimeMillis() + 5000);
+  }
+
+  @Test
+  public void testDrainDeliversAndRemoves() throws Exception {
+    List<OutboxEntry> entries = Arrays.asList(entry("FIRST", 1), entry("SECOND", 1));
+    when(repository.claim(any(), any(), anyInt()))
+        .thenReturn(entries)
+        .thenReturn(Collections.emptyList());
+    when(notificationService.sendUpdates(entries)).thenReturn(Arrays.asList(null, null));
+
+    outbox.drain();
+
+    verify(repository, timeout(1000)).removeAll(Arrays.asList("FIRST", "SECOND"));
+    verify(notificationService).sendUpdates(entries);
+  }
+
+  @Test
+  public void testOnlyFailedEntriesOfABatchAreRetried() throws Exception {
+    OutboxEntry sent = entry("SENT", 1);
+    OutboxEntry failed = entry("FAILED", 1);
+    List<OutboxEntry> entries = Arrays.asList(sent, failed);
+    when(notificationService.sendUpdates(entries))
+        .thenReturn(Arrays.asList(null, new IOException("unregistered")));
+
+    outbox.deliver(entries);
+
+    verify(repository).removeAll(Collections.singletonList("SENT"));
+    verify(repository).save(failed);
+    verify(repository, never()).save(sent);
+    assertEquals("unregistered", failed.getLasterror());
+  }
+
+  @Test
+  public void testFailureIsRetriedWithBackoff() throws Exception {
+    OutboxEntry entry = entry("ENTRY", 2);
+    List<OutboxEntry> entries = Collections.singletonList(entry);
+    when(notificationService.sendUpdates(entries))
+        .thenReturn(Collections.singletonList(new IOException("mailgun is down")));
+    long before = System.currentTimeMillis();
+
+    outbox.deliver(entries);
+
+    verify(repository).save(entry);
+    verify(repository).removeAll(Collections.emptyList());
+    assertEquals(OutboxEntry.Status.PENDING, entry.getStatus());
+    assertEquals("mailgun is down", entry.getLasterror());
+    assertTrue(entry.getDue().getTime() >= before + 2000);
+  }
+
+  @Test
+  public void testFailedDigestIsRetriedAsAGroup() throws Exception {
+    OutboxEntry first = entry("FIRST", 1);
+    OutboxEntry retried = entry("RETRIED", 2);
+    OutboxEntry sent = entry("SENT", 1);
+    List<OutboxEntry> entries = Arrays.asList(first, sent, retried);
+    IOException error = new IOException("firebase is down");
+    when(notificationService.sendUpdates(entries)).thenReturn(Arrays.asList(error, null, error));
+
+    outbox.deliver(entries);
+
+    assertNotNull(first.getGroup());
+    assertEquals(first.getGroup(), retried.getGroup());
+    assertEquals(first.getDue(), retried.getDue());
+    assertNull(sent.getGroup());
+    // the backoff of the digest follows the entry that was attempted most
+    assertTrue(first.getDue().getTime() >= System.currentTimeMillis() + 1000);
+  }
+
+  @Test
+  public void testLastFailureIsDeadLettered() throws Exception {
+    OutboxEntry entry = entry("ENTRY", 3);
+    when(notificationService.sendUpdates(anyListOf(OutboxEntry.class)))
+        .thenThrow(new IllegalStateException("no devices"));
+
+    outbox.deliver(Collections.singletonList(entry));
+
+    verify(repository).save(entry);
+    assertEquals(OutboxEntry.Status.DEAD, entry.getStatus());
+    assertNotNull(entry.getExpires());
+  }
+
+  @Test
+  public void testBackoffDoublesUpToTheMaximum() {
+    assertEquals(1000, outbox.backoff(1));
+    assertEquals(2000, outbox.backoff(2));
+    assertEquals(4000, outbox.backoff(3));
+    assertEquals(4000, outbox.backoff(40));
+  }
+
+  /** @return an entry that was claimed for the given attempt */
+  private static OutboxEntry entry(String id, int attempt) {
+    OutboxEntry entry = new OutboxEntry(new Date(), watcher("A"), MATCHES);
+    ReflectionTestUtils.setField(entry, "id", id);
+    ReflectionTestUtils.setField(entry, "attempts", attempt);
+    return entry;
+  }
+
+  private static Watcher watcher(String id) {
+    return new Watcher(
+        id,
+        "USER",
+        "NAME",
+        1,
+        0,
+        1,
+        new WatcherFilters(
+            12,
+            0,
+            1,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE));
+  }
+}
@@ -0,0 +1,224 @@
+package it.sijmen.movienotifier.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+import com.google.firebase.messaging.Message;
+import it.sijmen.movienotifier.model.OutboxEntry;
+import it.sijmen.movienotifier.model.User;
+import it.sijmen.movienotifier.model.Watcher;
+import it.sijmen.movienotifier.repositories.UserRepository;
+import it.sijmen.movienotifier.service.pathe.api.PatheShowing;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class NotificationServiceTest {
+
+  private static final List<PatheShowing> MATCHES =
+      Collections.singletonList(
+          new PatheShowing(
+              12, 1, 1, 1_000_000, 2_000_000, 0, 0, 0, 1, 0, 1, 0, 0, false, false, false));
+
+  private UserRepository userRepository;
+  private NotificationService service;
+
+  /** The size of every call to Firebase. */
+  private List<Integer> calls;
+
+  @Before
+  public void setUp() throws Exception {
+    userRepository = mock(UserRepository.class);
+    service =
+        spy(new NotificationService(userRepository, "disabled", "domain", "key", "name", "mail"));
+    calls = new ArrayList<>();
+    // every message to a token that starts with "bad" fails, to one that starts with "gone" is
+    // rejected for good
+    doAnswer(
+            invocation -> {
+              List<Message> messages = invocation.getArgumentAt(0, List.class);
+              calls.add(messages.size());
+              List<String> results = new ArrayList<>();
+              for (Message message : messages)
+                results.add(result((String) ReflectionTestUtils.getField(message, "token")));
+              return results;
+            })
+        .when(service)
+        .sendAll(anyListOf(Message.class));
+  }
+
+  @Test
+  public void testMessagesOfAllUsersAreSentInFullBatches() {
+    List<OutboxEntry> entries = new ArrayList<>();
+    for (int i = 0; i < 1200; i++) entries.add(entry(user("U" + i, "token" + i)));
+
+    List<IOException> errors = service.sendUpdates(entries);
+
+    assertEquals(1200, errors.size());
+    assertTrue(errors.stream().allMatch(e -> e == null));
+    assertEquals(3, calls.size());
+    assertEquals(1200, calls.stream().mapToInt(Integer::intValue).sum());
+    assertTrue(calls.stream().allMatch(c -> c <= NotificationService.FCM_BATCH_SIZE));
+  }
+
+  @Test
+  public void testFailuresAreMappedToTheirNotification() {
+    List<OutboxEntry> entries = new ArrayList<>();
+    for (int i = 0; i < 600; i++)
+      entries.add(entry(i == 550 ? user("U" + i, "ok", "bad" + i) : user("U" + i, "t" + i)));
+
+    List<IOException> errors = service.sendUpdates(entries);
+
+    assertEquals(2, calls.size());
+    for (int i = 0; i < 600; i++) if (i != 550) assertNull(errors.get(i));
+    assertTrue(errors.get(550).getMessage().contains("1 of the 2 messages failed"));
+    assertTrue(errors.get(550).getMessage().contains("bad550"));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testNotificationsOfAUserAreSentAsOneDigest() throws Exception {
+    User user = user("U", "phone", "bad-tablet");
+    List<OutboxEntry> entries =
+        Arrays.asList(
+            entry(user, "A"), entry(user("OTHER", "t"), "B"), entry(user, "C"), entry(user, "D"));
+    List<Message> sent = new ArrayList<>();
+    doAnswer(
+            invocation -> {
+              sent.addAll(invocation.getArgumentAt(0, List.class));
+              return Arrays.asList(null, "unavailable", null);
+            })
+        .when(service)
+        .sendAll(anyListOf(Message.class));
+
+    List<IOException> errors = service.sendUpdates(entries);
+
+    assertEquals(3, sent.size());
+    Map<String, String> data =
+        (Map<String, String>) ReflectionTestUtils.getField(sent.get(0), "data");
+    assertEquals("A,C,D", data.get("watcher.id"));
+    assertEquals("3", data.get("matches.count"));
+    assertTrue(data.get("body").contains("NAME A:"));
+    // the failure of one device of the digest is a failure of all its notifications
+    assertNull(errors.get(1));
+    for (int i : new int[] {0, 2, 3}) {
+      assertTrue(errors.get(i).getMessage().contains("bad-tablet"));
+      assertEquals(Collections.singletonList("phone"), entries.get(i).getPushedtokens());
+    }
+  }
+
+  @Test
+  public void testRetryOnlySendsToTheChannelsThatFailed() {
+    User user = user("U", "phone", "bad-tablet");
+    user.setEmail("u@example.com");
+    doReturn(null).when(service).sendEmail(any(User.class), anyString(), anyString());
+    List<OutboxEntry> entries = Arrays.asList(entry(user, "A"), entry(user, "B"));
+
+    assertTrue(service.sendUpdates(entries).stream().allMatch(e -> e != null));
+    assertTrue(entries.stream().allMatch(OutboxEntry::isMailed));
+    assertEquals(Arrays.asList(2), calls);
+
+    calls.clear();
+    List<IOException> errors = service.sendUpdates(entries);
+
+    verify(service, times(1)).sendEmail(any(User.class), anyString(), anyString());
+    assertEquals(Arrays.asList(1), calls);
+    assertTrue(errors.get(0).getMessage().contains("1 of the 1 messages failed"));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testFailedCallOnlyFailsTheMessagesInIt() throws Exception {
+    List<OutboxEntry> entries = new ArrayList<>();
+    for (int i = 0; i < 600; i++) entries.add(entry(user("U" + i, "t" + i)));
+    User mailed = user("U0", "t0");
+    mailed.setEmail("u@example.com");
+    doReturn(null).when(service).sendEmail(any(User.class), anyString(), anyString());
+    doThrow(new IOException("down"))
+        .doAnswer(invocation -> Collections.nCopies(100, null))
+        .when(service)
+        .sendAll(anyListOf(Message.class));
+
+    List<IOException> errors = service.sendUpdates(entries);
+
+    for (int i = 0; i < 600; i++) assertEquals(i < 500, errors.get(i) != null);
+    assertTrue(entries.get(0).isMailed());
+    assertTrue(entries.get(0).getPushedtokens().isEmpty());
+
+    doAnswer(invocation -> Collections.nCopies(1, null))
+        .when(service)
+        .sendAll(anyListOf(Message.class));
+    assertNull(service.sendUpdates(entries.subList(0, 1)).get(0));
+    verify(service, times(1)).sendEmail(eq(mailed), anyString(), anyString());
+    assertEquals(Collections.singletonList("t0"), entries.get(0).getPushedtokens());
+  }
+
+  @Test
+  public void testTokenThatIsGoneForGoodCountsAsDelivered() {
+    OutboxEntry entry = entry(user("U", "phone", "gone-tablet"));
+
+    List<IOException> errors = service.sendUpdates(Collections.singletonList(entry));
+
+    assertNull(errors.get(0));
+    assertEquals(Arrays.asList("phone", "gone-tablet"), entry.getPushedtokens());
+  }
+
+  @Test
+  public void testNotificationOfMissingUserIsDropped() {
+    List<IOException> errors =
+        service.sendUpdates(
+            Collections.singletonList(
+                new OutboxEntry(new Date(), watcher("MISSING", "A"), MATCHES)));
+
+    assertNull(errors.get(0));
+    assertTrue(calls.isEmpty());
+  }
+
+  private static String result(String token) {
+    if (token.startsWith("bad")) return "server-unavailable";
+    if (token.startsWith("gone")) return "registration-token-not-registered";
+    return null;
+  }
+
+  private OutboxEntry entry(User user) {
+    return entry(user, "A");
+  }
+
+  private OutboxEntry entry(User user, String watcher) {
+    return new OutboxEntry(new Date(), watcher(user.getId(), watcher), MATCHES);
+  }
+
+  private User user(String id, String... tokens) {
+    User user = new User(id, id, null, "password", "key" + id, new Date(), listOf(tokens));
+    when(userRepository.getFirstByUuid(id)).thenReturn(user);
+    return user;
+  }
+
+  private static List<String> listOf(String... tokens) {
+    List<String> list = new ArrayList<>();
+    Collections.addAll(list, tokens);
+    return list;
+  }
+
+  private static Watcher watcher(String userid, String id) {
+    Watcher watcher = new Watcher();
+    watcher.setId(id);
+    watcher.setUserid(userid);
+    watcher.setName("NAME " + id);
+    watcher.setMovieid(1);
+    return watcher;
+  }
+}
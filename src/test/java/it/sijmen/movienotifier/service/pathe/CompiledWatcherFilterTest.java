@@ -0,0 +1,225 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import static it.sijmen.movienotifier.model.FilterOption.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import it.sijmen.movienotifier.model.FilterOption;
+import it.sijmen.movienotifier.model.Watcher;
+import it.sijmen.movienotifier.model.WatcherFilters;
+import it.sijmen.movienotifier.service.pathe.api.PatheShowing;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class CompiledWatcherFilterTest {
+
+  private static final int MOVIEID = 1;
+  private static final long START = 1_513_368_000_000L;
+  private static final long HOUR = 3_600_000;
+
+  /** Cinema 9 has a laser imax, cinema 2 does not. */
+  private static final int[] CINEMAS = {9, 2};
+
+  private final LegacyWatcherMatcher legacy = new LegacyWatcherMatcher();
+
+  @Test
+  public void testMatchesLegacyImplementation() {
+    Random random = new Random(37);
+    int compared = 0;
+    for (int i = 0; i < 200_000; i++) {
+      Watcher watcher = randomWatcher(random);
+      PatheShowing showing = randomShowing(random);
+
+      boolean expected;
+      try {
+        expected = legacy.accepts(watcher, showing);
+      } catch (NullPointerException e) {
+        // the legacy implementation unboxed some missing values, see testMissingPremiumData
+        continue;
+      }
+      CompiledWatcherFilter filter = CompiledWatcherFilter.compile(watcher);
+      CompactShowing compact = CompactShowing.of(showing);
+      boolean actual = filter.accepts(compact);
+      assertEquals(watcher.getFilters() + " " + showing, expected, actual);
+      assertEquals(expected, filter.rejections(compact).isEmpty());
+      compared++;
+    }
+    assertTrue(compared > 100_000);
+  }
+
+  @Test
+  public void testColumnsMatchFilters() {
+    Random random = new Random(39);
+    List<CompiledWatcherFilter> filters = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      Watcher watcher = randomWatcher(random);
+      if (random.nextBoolean()) watcher.getFilters().setCinemaids(Arrays.asList(2, 30));
+      filters.add(CompiledWatcherFilter.compile(watcher));
+    }
+    WatcherColumns columns = WatcherColumns.of(filters);
+    int[] accepted = new int[filters.size()];
+
+    for (int s = 0; s < 200; s++) {
+      CompactShowing showing = CompactShowing.of(randomShowing(random));
+      int from = random.nextInt(filters.size());
+
+      int count = columns.scan(showing, from, filters.size(), accepted);
+
+      List<Integer> expected = new ArrayList<>();
+      for (int i = from; i < filters.size(); i++)
+        if (filters.get(i).accepts(showing)) expected.add(i);
+      List<Integer> actual = new ArrayList<>();
+      for (int i = 0; i < count; i++) actual.add(accepted[i]);
+      assertEquals(expected, actual);
+    }
+  }
+
+  @Test
+  public void testMultipleCinemas() {
+    Watcher watcher = watcher(9, NOPREFERENCE, NOPREFERENCE);
+    watcher.getFilters().setCinemaids(Arrays.asList(2, 13));
+    Watcher reordered = watcher(13, NOPREFERENCE, NOPREFERENCE);
+    reordered.getFilters().setCinemaids(Arrays.asList(2, 9, 9));
+    CompiledWatcherFilter filter = CompiledWatcherFilter.compile(watcher);
+
+    for (int cinemaId : new int[] {2, 9, 13})
+      assertTrue(filter.accepts(CompactShowing.of(showing(cinemaId))));
+    assertFalse(filter.accepts(CompactShowing.of(showing(12))));
+    assertEquals(CompiledWatcherFilter.compile(reordered), filter);
+  }
+
+  @Test
+  public void testRejectionsNameTheFields() {
+    PatheShowing imax =
+        new PatheShowing(
+            2, MOVIEID, 1, START, START + HOUR, 0, 0, 1, 1, 0, 1, 0, 0, false, false, false);
+    Watcher watcher = watcher(9, NOPREFERENCE, YES);
+
+    assertEquals(
+        Arrays.asList("cinemaid", "regularshowing"),
+        CompiledWatcherFilter.compile(watcher).rejections(CompactShowing.of(imax)));
+  }
+
+  @Test
+  public void testDerivedAttributes() {
+    // an imax showing in cinema 9, which has a laser imax
+    CompactShowing imax =
+        CompactShowing.of(
+            new PatheShowing(
+                9, MOVIEID, 1, START, START + HOUR, 0, 0, 1, 1, 0, 0, 0, 0, false, false, false));
+
+    assertEquals(CompactShowing.LASER, imax.getSet() & CompactShowing.LASER);
+    assertEquals(CompactShowing.PREMIUM, imax.getSet() & CompactShowing.PREMIUM);
+    assertEquals(0, imax.getSet() & CompactShowing.ATMOS);
+    assertEquals(CompactShowing.ATMOS, imax.getKnown() & CompactShowing.ATMOS);
+  }
+
+  @Test
+  public void testMissingPremiumData() {
+    // missing data is always accepted, where the legacy implementation threw
+    PatheShowing showing =
+        new PatheShowing(
+            2, MOVIEID, 1, START, START + HOUR, 0, 0, null, 1, 0, 1, 0, 0, null, false, false);
+    Watcher watcher = watcher(2, YES, YES);
+
+    assertTrue(CompiledWatcherFilter.compile(watcher).accepts(CompactShowing.of(showing)));
+  }
+
+  private static Watcher randomWatcher(Random random) {
+    FilterOption[] o = new FilterOption[12];
+    for (int i = 0; i < o.length; i++) o[i] = randomOption(random);
+    return new Watcher(
+        "ID",
+        "USER",
+        "NAME",
+        random.nextInt(8) == 0 ? MOVIEID + 1 : MOVIEID,
+        START - HOUR,
+        START + HOUR,
+        new WatcherFilters(
+            CINEMAS[random.nextInt(CINEMAS.length)],
+            START - random.nextInt(2) * HOUR,
+            START + random.nextInt(2) * HOUR - random.nextInt(2),
+            o[0],
+            o[1],
+            o[2],
+            o[3],
+            o[4],
+            o[5],
+            o[6],
+            o[7],
+            o[8],
+            o[9],
+            o[10],
+            o[11]));
+  }
+
+  private static Watcher watcher(int cinemaId, FilterOption laser, FilterOption regularshowing) {
+    return new Watcher(
+        "ID",
+        "USER",
+        "NAME",
+        MOVIEID,
+        START - HOUR,
+        START + HOUR,
+        new WatcherFilters(
+            cinemaId,
+            START,
+            START,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            laser,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            regularshowing));
+  }
+
+  private static PatheShowing showing(int cinemaId) {
+    return new PatheShowing(
+        cinemaId, MOVIEID, 1, START, START + HOUR, 0, 0, 0, 1, 0, 1, 0, 0, false, false, false);
+  }
+
+  private static PatheShowing randomShowing(Random random) {
+    return new PatheShowing(
+        CINEMAS[random.nextInt(CINEMAS.length)],
+        MOVIEID,
+        random.nextInt(1000),
+        START,
+        START + 2 * HOUR,
+        randomInt(random),
+        randomInt(random),
+        randomInt(random),
+        randomInt(random),
+        randomInt(random),
+        randomInt(random),
+        randomInt(random),
+        randomInt(random),
+        randomBool(random),
+        randomBool(random),
+        randomBool(random));
+  }
+
+  private static FilterOption randomOption(Random random) {
+    return FilterOption.values()[random.nextInt(3)];
+  }
+
+  /** Mostly known values, so most pairs are not short-circuited by missing data. */
+  private static Integer randomInt(Random random) {
+    int r = random.nextInt(10);
+    return r == 0 ? null : r < 6 ? 0 : 1;
+  }
+
+  private static Boolean randomBool(Random random) {
+    int r = random.nextInt(10);
+    return r == 0 ? null : r < 6;
+  }
+}
@@ -0,0 +1,127 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import it.sijmen.movienotifier.service.pathe.api.PatheShowing;
+import java.util.Locale;
+import org.junit.Test;
+
+public class FilterExpressionTest {
+
+  /** Friday 15 december 2017, 21:00 in Amsterdam. */
+  private static final long FRIDAY_EVENING = 1_513_368_000_000L;
+
+  private static final long HOUR = 3_600_000;
+
+  @Test
+  public void testAttributesAndTime() {
+    FilterExpression expression =
+        FilterExpression.compile("(imax or dolbycinema) and time >= 18:00");
+
+    assertTrue(expression.test(showing(FRIDAY_EVENING, 1, false)));
+    assertTrue(expression.test(showing(FRIDAY_EVENING, 0, true)));
+    assertFalse(expression.test(showing(FRIDAY_EVENING, 0, false)));
+    assertFalse(expression.test(showing(FRIDAY_EVENING - 6 * HOUR, 1, false)));
+  }
+
+  @Test
+  public void testDays() {
+    assertTrue(FilterExpression.compile("day = fri").test(showing(FRIDAY_EVENING, 0, false)));
+    assertFalse(
+        FilterExpression.compile("day in (sat, sun)").test(showing(FRIDAY_EVENING, 0, false)));
+    assertTrue(
+        FilterExpression.compile("not day in (sat, sun)").test(showing(FRIDAY_EVENING, 0, false)));
+    // 3 hours later it is saturday in Amsterdam
+    assertTrue(
+        FilterExpression.compile("day in (sat, sun)")
+            .test(showing(FRIDAY_EVENING + 3 * HOUR, 0, false)));
+  }
+
+  @Test
+  public void testUnknownAttributesAreAccepted() {
+    CompactShowing unknown = showing(FRIDAY_EVENING, null, null);
+
+    assertTrue(FilterExpression.compile("imax").test(unknown));
+    assertTrue(FilterExpression.compile("not imax").test(unknown));
+    assertTrue(FilterExpression.compile("not (imax or 3d)").test(unknown));
+    assertFalse(
+        FilterExpression.compile("not (imax or 3d)").test(showing(FRIDAY_EVENING, 1, false)));
+    assertTrue(FilterExpression.compile("regularshowing").test(showing(FRIDAY_EVENING, 0, false)));
+    assertFalse(FilterExpression.compile("regularshowing").test(showing(FRIDAY_EVENING, 1, false)));
+  }
+
+  @Test
+  public void testCompiledExpressionsAreShared() {
+    assertSame(FilterExpression.compile("imax and 3d"), FilterExpression.compile("imax and 3d"));
+  }
+
+  @Test
+  public void testInvalidExpressions() {
+    assertInvalid("imax or", "expected a filter at position 8");
+    assertInvalid("imax and (3d", "expected ')' at position 13");
+    assertInvalid("imaxx", "unknown filter 'imaxx' at position 1");
+    assertInvalid("time > 25:00", "'25:00' is not a time like 18:30 at position 8");
+    assertInvalid("day = friday", "unknown day 'friday' at position 7");
+    assertInvalid("imax & 3d", "unexpected '&' at position 6");
+    assertInvalid("imax 3d", "unexpected '3d' at position 6");
+  }
+
+  @Test
+  public void testLongChainsAreTestedWithoutRecursion() {
+    StringBuilder and = new StringBuilder("imax");
+    StringBuilder or = new StringBuilder("3d");
+    while (and.length() < FilterExpression.MAX_LENGTH - 9) {
+      and.append(" and imax");
+      or.append(" or 3d");
+    }
+    or.append(" or imax");
+
+    assertTrue(FilterExpression.compile(and.toString()).test(showing(FRIDAY_EVENING, 1, false)));
+    assertFalse(FilterExpression.compile(and.toString()).test(showing(FRIDAY_EVENING, 0, false)));
+    assertTrue(FilterExpression.compile(or.toString()).test(showing(FRIDAY_EVENING, 1, false)));
+  }
+
+  @Test
+  public void testLimits() {
+    StringBuilder tooLong = new StringBuilder("imax");
+    while (tooLong.length() <= FilterExpression.MAX_LENGTH) tooLong.append(" and imax");
+    assertInvalid(tooLong.toString(), "longer than 1000 characters");
+
+    StringBuilder nested = new StringBuilder();
+    for (int i = 0; i < FilterExpression.MAX_DEPTH; i++) nested.append(i % 2 == 0 ? "not " : "(");
+    nested.append("imax");
+    for (int i = 0; i < FilterExpression.MAX_DEPTH / 2; i++) nested.append(")");
+    assertTrue(FilterExpression.compile(nested.toString()).test(showing(FRIDAY_EVENING, 1, false)));
+    assertInvalid("not " + nested, "nested deeper than 20 levels at position 54");
+  }
+
+  @Test
+  public void testKeywordsIgnoreTheDefaultLocale() {
+    Locale locale = Locale.getDefault();
+    Locale.setDefault(new Locale("tr", "TR"));
+    try {
+      assertTrue(FilterExpression.compile("IMAX").test(showing(FRIDAY_EVENING, 1, false)));
+    } finally {
+      Locale.setDefault(locale);
+    }
+  }
+
+  private static void assertInvalid(String expression, String message) {
+    try {
+      FilterExpression.compile(expression);
+      fail(expression);
+    } catch (IllegalArgumentException e) {
+      assertEquals(message, e.getMessage());
+    }
+  }
+
+  private static CompactShowing showing(long start, Integer imax, Boolean vision) {
+    return CompactShowing.of(
+        new PatheShowing(
+            9, 1, 1, start, start + 2 * HOUR, 0, 0, imax, 1, 0, 0, 0, 0, false, false, vision));
+  }
+}
@@ -0,0 +1,54 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.*;
+
+import it.sijmen.movienotifier.service.WorkerPools;
+import it.sijmen.movienotifier.service.pathe.api.PatheApiClient;
+import it.sijmen.movienotifier.service.pathe.api.PatheShowings;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class LatestSchedulesTest {
+
+  @Test
+  public void testConcurrentRequestsShareOneFetch() throws Exception {
+    PatheApiClient apiClient = mock(PatheApiClient.class);
+    PatheShowings showings = new PatheShowings(1);
+    CountDownLatch release = new CountDownLatch(1);
+    when(apiClient.getShowingsForMovie(1))
+        .then(
+            i -> {
+              release.await(5, TimeUnit.SECONDS);
+              return showings;
+            });
+    LatestSchedules schedules = new LatestSchedules(apiClient, new WorkerPools(1, 2), 15);
+
+    CompletableFuture<PatheShowings> first = schedules.get(1);
+    CompletableFuture<PatheShowings> second = schedules.get(1);
+    release.countDown();
+
+    assertSame(showings, first.get(5, TimeUnit.SECONDS));
+    assertSame(showings, second.get(5, TimeUnit.SECONDS));
+    // once fetched it is served from memory
+    assertSame(showings, schedules.get(1).getNow(null));
+    verify(apiClient, times(1)).getShowingsForMovie(1);
+  }
+
+  @Test
+  public void testFailedFetchIsRetried() throws Exception {
+    PatheApiClient apiClient = mock(PatheApiClient.class);
+    PatheShowings showings = new PatheShowings(1);
+    when(apiClient.getShowingsForMovie(1))
+        .thenThrow(new java.io.IOException("down"))
+        .thenReturn(showings);
+    LatestSchedules schedules = new LatestSchedules(apiClient, new WorkerPools(1, 2), 15);
+
+    CompletableFuture<PatheShowings> failed = schedules.get(1);
+    failed.handle((r, e) -> r).get(5, TimeUnit.SECONDS);
+
+    assertSame(showings, schedules.get(1).get(5, TimeUnit.SECONDS));
+  }
+}
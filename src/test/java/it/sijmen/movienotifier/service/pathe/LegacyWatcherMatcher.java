@@ -0,0 +1,137 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import static it.sijmen.movienotifier.model.FilterOption.NOPREFERENCE;
+import static it.sijmen.movienotifier.model.FilterOption.YES;
+
+import it.sijmen.movienotifier.model.FilterOption;
+import it.sijmen.movienotifier.model.Watcher;
+import it.sijmen.movienotifier.model.WatcherFilters;
+import it.sijmen.movienotifier.service.pathe.api.PatheShowing;
+
+/**
+ * The implementation of {@link PatheNotifier#accepts(Watcher, PatheShowing)} before it was compiled
+ * to bit masks, kept as the reference for {@link CompiledWatcherFilterTest}.
+ */
+class LegacyWatcherMatcher {
+
+  public boolean accepts(Watcher watcher, PatheShowing showing) {
+    WatcherFilters d = watcher.getFilters();
+    if (showing.getCinemaId() != watcher.getFilters().getCinemaid()) {
+      return false;
+    }
+    if (!(showing.getStart() <= d.getStartbefore())) {
+      return false;
+    }
+    if (!(showing.getStart() >= d.getStartafter())) {
+      return false;
+    }
+    if (showing.getMovieId() != watcher.getMovieid()) {
+      return false;
+    }
+
+    return accepts(d.isD3(), toBool(showing.getIs3d()))
+        && accepts(d.isImax(), toBool(showing.getImax()))
+        && accepts(d.isOv(), toBool(showing.getOv()))
+        && accepts(d.isNl(), toBool(showing.getNl()))
+        && accepts(d.isHfr(), toBool(showing.getHfr()))
+        && accepts(d.isK4(), toBool(showing.getIs4k()))
+        && accepts(d.isDx4(), showing.getIs4dx())
+        && accepts(d.isScreenx(), showing.getIsScreenx())
+        && accepts(d.isDolbycinema(), showing.getIsVision())
+        &&
+
+        /*
+         * A movie is shown using the Dolby Atmos sound system when one of the following conditions are true:
+         *  - the `isAtmos` property is set on the PatheShowing
+         *  - the showing takes place in a Dolby Cinema room
+         */
+        accepts(d.isDolbyatmos(), toBool(showing.getIsAtmos()), showing.getIsVision())
+        &&
+
+        /*
+         * A movie is projected using a laser-projector if one of the following conditions are true:
+         *   - the `isLaser` property is set on the PatheShowing
+         *   - the showing takes places in a DolbyCinema cinema room
+         *   - the showing takes place in a IMAX room that has an Laser projector
+         */
+        accepts(
+            d.isLaser(),
+            toBool(showing.getIsLaser()),
+            showing.getIsVision(),
+            (showing.getImax() == 1 && CinemaService.hasLaserImax(showing.getCinemaId())))
+        &&
+
+        /*
+         * A showing is considered 'regular' when it is not any premium experience
+         */
+        acceptsAll(
+            d.isRegularshowing(),
+            !toBool(showing.getImax()),
+            !showing.getIsVision(),
+            !showing.getIs4dx(),
+            !showing.getIsScreenx());
+  }
+
+  private Boolean toBool(Integer i) {
+    if (i == null) {
+      return null;
+    }
+    return i == 1;
+  }
+
+  /**
+   * If option is NOPREFERENCE, always return true If one of the value is null, return true If
+   * option is YES, all value's are or'ed: (A || B || C ...) If option is NO, all values are inverse
+   * or'ed: !(A || B || C ...)
+   */
+  private boolean accepts(FilterOption option, Boolean... value) {
+    if (option == NOPREFERENCE) {
+      return true;
+    }
+    boolean result = false;
+
+    for (Boolean b : value) {
+      // if there is missing data, always return true
+      if (b == null) {
+        return true;
+      }
+      if (b) {
+        result = true;
+      }
+    }
+
+    if (option == YES) {
+      return result;
+    }
+
+    return !result;
+  }
+
+  /**
+   * If option is NOPREFERENCE, always return true If one of the value is null, return true If
+   * option is YES, all value's are and'ed: (A && B && C ...) If option is NO, all values are
+   * inverse and'ed: !(A && B && C ...)
+   */
+  private boolean acceptsAll(FilterOption option, Boolean... value) {
+    if (option == NOPREFERENCE) {
+      return true;
+    }
+    boolean result = true;
+
+    for (Boolean b : value) {
+      // if there is missing data, always return true
+      if (b == null) {
+        return true;
+      }
+      if (!b) {
+        result = false;
+      }
+    }
+
+    if (option == YES) {
+      return result;
+    }
+
+    return !result;
+  }
+}
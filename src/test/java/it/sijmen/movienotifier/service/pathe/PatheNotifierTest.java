@@ -1,27 +1,41 @@
 package it.sijmen.movienotifier.service.pathe;
 
 import static it.sijmen.movienotifier.model.FilterOption.*;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Mockito.*;
 
 import it.sijmen.movienotifier.model.PatheMovieCache;
+import it.sijmen.movienotifier.model.ShowingEvent;
 import it.sijmen.movienotifier.model.Watcher;
 import it.sijmen.movienotifier.model.WatcherFilters;
-import it.sijmen.movienotifier.model.serialization.UnixTimestampDeserializer;
+import it.sijmen.movienotifier.repositories.MatcherDivergenceRepository;
 import it.sijmen.movienotifier.repositories.PatheCacheRepository;
+import it.sijmen.movienotifier.repositories.ShowingEventRepository;
 import it.sijmen.movienotifier.repositories.UserRepository;
 import it.sijmen.movienotifier.repositories.WatcherRepository;
-import it.sijmen.movienotifier.service.NotificationService;
+import it.sijmen.movienotifier.service.NotificationOutbox;
+import it.sijmen.movienotifier.service.WorkerPools;
 import it.sijmen.movienotifier.service.pathe.api.PatheApiClient;
 import it.sijmen.movienotifier.service.pathe.api.PatheShowing;
 import it.sijmen.movienotifier.service.pathe.api.PatheShowings;
-import java.text.ParseException;
+import it.sijmen.movienotifier.service.pathe.api.SchedulePredicate;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.context.junit4.SpringRunner;
 
@@ -41,7 +55,44 @@ public class PatheNotifierTest {
 
   @MockBean PatheCacheRepository patheCacheRepository;
 
-  @MockBean NotificationService notificationService;
+  @MockBean ShowingEventRepository showingEventRepository;
+
+  private final NotificationOutbox outbox = mock(NotificationOutbox.class);
+
+  /** The matches that were put in the outbox, per watcher. */
+  private final Map<Watcher, List<PatheShowing>> notified = new ConcurrentHashMap<>();
+
+  private final WorkerPools pools = new WorkerPools(1, 2);
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void recordNotifications() {
+    doAnswer(
+            i -> {
+              List<Watcher> watchers = i.getArgumentAt(0, List.class);
+              List<List<PatheShowing>> matches = i.getArgumentAt(1, List.class);
+              for (int w = 0; w < watchers.size(); w++)
+                if (!matches.get(w).isEmpty()) notified.put(watchers.get(w), matches.get(w));
+              return null;
+            })
+        .when(outbox)
+        .enqueue(anyListOf(Watcher.class), anyList());
+  }
+
+  private ShadowMatching matching() {
+    return new ShadowMatching(
+        Arrays.asList(new IndexMatcher(), new ScanMatcher()),
+        mock(MatcherDivergenceRepository.class),
+        pools,
+        "index",
+        "scan",
+        100);
+  }
+
+  private ScheduleCache scheduleCache() {
+    // without a flush interval every write goes straight to the repository
+    return new ScheduleCache(patheCacheRepository, 10, 60, 0);
+  }
 
   @Test
   public void testWatcherBASE() throws Exception {
@@ -116,12 +167,22 @@ public class PatheNotifierTest {
                 false,
                 false,
                 false)));
-    when(apiClient.getShowingsForMovie(anyInt())).thenReturn(patheShowings);
+    when(apiClient.getShowingsForMovie(anyInt(), any())).thenReturn(patheShowings);
 
     PatheNotifier api =
-        spy(new PatheNotifier(patheCacheRepository, notificationService, apiClient));
+        spy(
+            new PatheNotifier(
+                scheduleCache(),
+                showingEventRepository,
+                outbox,
+                apiClient,
+                pools,
+                matching(),
+                false,
+                60));
 
-    when(patheCacheRepository.getFirstByMovieid(MOVIEID)).thenReturn(new PatheMovieCache(MOVIEID));
+    when(patheCacheRepository.findAllByMovieidIn(any()))
+        .thenReturn(Collections.singletonList(new PatheMovieCache(MOVIEID)));
 
     api.checkWatcher(
         Collections.singletonList(
@@ -149,12 +210,519 @@ public class PatheNotifierTest {
                     YES,
                     NOPREFERENCE))));
 
-    verify(notificationService, times(fired ? 1 : 0)).sendUpdates(any(), any());
+    assertEquals(fired ? 1 : 0, notified.size());
+  }
+
+  @Test
+  public void testChangedShowingIsReevaluated() throws Exception {
+    PatheShowing showing =
+        new PatheShowing(
+            CINEMAID,
+            MOVIEID,
+            123456,
+            TODAY + DAY,
+            TODAY + DAY + 2 * HOUR,
+            0,
+            0,
+            0,
+            1,
+            0,
+            1,
+            0,
+            0,
+            false,
+            false,
+            false);
+    PatheApiClient apiClient = mock(PatheApiClient.class);
+    when(apiClient.getShowingsForMovie(anyInt(), any()))
+        .thenReturn(new PatheShowings(MOVIEID, Collections.singletonList(showing)));
+
+    // the cached showing had another start time, so the fingerprint differs
+    PatheMovieCache cache = new PatheMovieCache(MOVIEID, Collections.singletonList(123456L));
+    cache.setFingerprints(Collections.singletonList(showing.getFingerprint() + 1));
+    when(patheCacheRepository.findAllByMovieidIn(any()))
+        .thenReturn(Collections.singletonList(cache));
+
+    new PatheNotifier(
+            scheduleCache(),
+            showingEventRepository,
+            outbox,
+            apiClient,
+            pools,
+            matching(),
+            false,
+            60)
+        .checkWatcher(
+            Collections.singletonList(
+                new Watcher(
+                    "SOMEID",
+                    "SOMEUSER",
+                    "SOMENAME",
+                    MOVIEID,
+                    TODAY - DAY,
+                    TODAY + DAY,
+                    new WatcherFilters(
+                        CINEMAID,
+                        TODAY,
+                        TODAY + DAY * 6,
+                        YES,
+                        NO,
+                        NO,
+                        NO,
+                        NO,
+                        NO,
+                        NO,
+                        NOPREFERENCE,
+                        NOPREFERENCE,
+                        NOPREFERENCE,
+                        YES,
+                        NOPREFERENCE))));
+
+    assertEquals(1, notified.size());
+    ArgumentCaptor<List> events = ArgumentCaptor.forClass(List.class);
+    verify(showingEventRepository).insert(events.capture());
+    assertEquals(1, events.getValue().size());
+    assertEquals(ShowingEvent.Type.CHANGED, ((ShowingEvent) events.getValue().get(0)).getType());
+  }
+
+  @Test
+  public void testChangeOfTheEndOnlyNotifiesNobody() throws Exception {
+    checkChange(TODAY + DAY, TODAY + DAY + 2 * HOUR, TODAY + DAY + 3 * HOUR);
+
+    assertTrue(notified.isEmpty());
+    // the change is logged nonetheless
+    ArgumentCaptor<List> events = ArgumentCaptor.forClass(List.class);
+    verify(showingEventRepository).insert(events.capture());
+    assertEquals(ShowingEvent.Type.CHANGED, ((ShowingEvent) events.getValue().get(0)).getType());
+  }
+
+  @Test
+  public void testChangeIntoTheWindowNotifiesTheWatcher() throws Exception {
+    checkChange(TODAY + 7 * DAY, TODAY + DAY, TODAY + DAY + 2 * HOUR);
+
+    assertEquals(1, notified.size());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testShowingIsDetectedAgainWhenItCouldNotBeEnqueued() throws Exception {
+    PatheShowing showing = showing(1, TODAY + DAY, TODAY + DAY + 2 * HOUR);
+    PatheApiClient apiClient = mock(PatheApiClient.class);
+    when(apiClient.getShowingsForMovie(anyInt(), any()))
+        .thenReturn(new PatheShowings(MOVIEID, Collections.singletonList(showing)));
+    when(patheCacheRepository.findAllByMovieidIn(any()))
+        .thenReturn(
+            Collections.singletonList(new PatheMovieCache(MOVIEID, Collections.emptyList())));
+    doThrow(new IllegalStateException("mongo is down"))
+        .doAnswer(
+            i -> {
+              notified.put(
+                  (Watcher) i.getArgumentAt(0, List.class).get(0),
+                  (List<PatheShowing>) i.getArgumentAt(1, List.class).get(0));
+              return null;
+            })
+        .when(outbox)
+        .enqueue(anyListOf(Watcher.class), anyList());
+    Watcher watcher = watcher(CINEMAID);
+    PatheNotifier api =
+        new PatheNotifier(
+            scheduleCache(),
+            showingEventRepository,
+            outbox,
+            apiClient,
+            pools,
+            matching(),
+            false,
+            60);
+
+    api.checkWatcher(Collections.singletonList(watcher));
+    assertTrue(notified.isEmpty());
+    verify(patheCacheRepository, never()).save(any(PatheMovieCache.class));
+
+    api.checkWatcher(Collections.singletonList(watcher));
+    assertEquals(Collections.singletonList(showing), notified.get(watcher));
+    verify(patheCacheRepository).save(any(PatheMovieCache.class));
+
+    // once enqueued it is stored and not detected again
+    notified.clear();
+    api.checkWatcher(Collections.singletonList(watcher));
+    assertTrue(notified.isEmpty());
+    verify(outbox, times(2)).enqueue(anyListOf(Watcher.class), anyList());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testOnlyWatchersForAnyMovieAreRetriedWhenTheirsCouldNotBeEnqueued() throws Exception {
+    PatheShowing showing = showing(1, TODAY + DAY, TODAY + DAY + 2 * HOUR);
+    PatheApiClient apiClient = mock(PatheApiClient.class);
+    when(apiClient.getShowingsForMovie(anyInt(), any()))
+        .thenReturn(new PatheShowings(MOVIEID, Collections.singletonList(showing)));
+    when(patheCacheRepository.findAllByMovieidIn(any()))
+        .thenReturn(
+            Collections.singletonList(new PatheMovieCache(MOVIEID, Collections.emptyList())));
+    Watcher movie = watcher(CINEMAID);
+    Watcher any = watcher(CINEMAID);
+    any.setId("ANY");
+    any.setMovieid(0);
+    any.setAnymovie(true);
+    boolean[] failed = new boolean[1];
+    doAnswer(
+            i -> {
+              List<Watcher> watchers = i.getArgumentAt(0, List.class);
+              if (watchers.contains(any) && !failed[0]) {
+                failed[0] = true;
+                throw new IllegalStateException("mongo is down");
+              }
+              notified.put(
+                  watchers.get(0), (List<PatheShowing>) i.getArgumentAt(1, List.class).get(0));
+              return null;
+            })
+        .when(outbox)
+        .enqueue(anyListOf(Watcher.class), anyList());
+    PatheNotifier api =
+        new PatheNotifier(
+            scheduleCache(),
+            showingEventRepository,
+            outbox,
+            apiClient,
+            pools,
+            matching(),
+            false,
+            60);
+
+    api.checkWatcher(Arrays.asList(movie, any));
+    assertEquals(Collections.singletonList(showing), notified.get(movie));
+    assertFalse(notified.containsKey(any));
+    // the schedule is stored, the watcher of the movie is not notified again
+    ArgumentCaptor<PatheMovieCache> saved = ArgumentCaptor.forClass(PatheMovieCache.class);
+    verify(patheCacheRepository).save(saved.capture());
+    when(patheCacheRepository.findAllByMovieidIn(any()))
+        .thenReturn(Collections.singletonList(saved.getValue()));
+
+    notified.clear();
+    api.checkWatcher(Arrays.asList(movie, any));
+    assertEquals(Collections.singletonList(showing), notified.get(any));
+    assertFalse(notified.containsKey(movie));
+
+    notified.clear();
+    api.checkWatcher(Arrays.asList(movie, any));
+    assertTrue(notified.isEmpty());
+  }
+
+  /** Checks a watcher after the start and end of a cached showing changed. */
+  private void checkChange(long oldStart, long newStart, long newEnd) throws Exception {
+    PatheShowing before = showing(1, oldStart, oldStart + 2 * HOUR);
+    PatheShowing after = showing(1, newStart, newEnd);
+    PatheApiClient apiClient = mock(PatheApiClient.class);
+    when(apiClient.getShowingsForMovie(anyInt(), any()))
+        .thenReturn(new PatheShowings(MOVIEID, Collections.singletonList(after)));
+    when(patheCacheRepository.findAllByMovieidIn(any()))
+        .thenReturn(
+            Collections.singletonList(
+                new PatheMovieCache(
+                    MOVIEID,
+                    SortedShowings.of(Collections.singletonList(before)),
+                    SchedulePredicate.ALL,
+                    false)));
+
+    new PatheNotifier(
+            scheduleCache(),
+            showingEventRepository,
+            outbox,
+            apiClient,
+            pools,
+            matching(),
+            false,
+            60)
+        .checkWatcher(Collections.singletonList(watcher(CINEMAID)));
+  }
+
+  private static PatheShowing showing(long id, long start, long end) {
+    return new PatheShowing(
+        CINEMAID, MOVIEID, id, start, end, 0, 0, 0, 1, 0, 1, 0, 0, false, false, false);
+  }
+
+  @Test
+  public void testWatchersOfUnchangedPartitionsAreSkipped() throws Exception {
+    PatheShowing showing =
+        new PatheShowing(
+            CINEMAID,
+            MOVIEID,
+            1,
+            TODAY + DAY,
+            TODAY + DAY + 2 * HOUR,
+            0,
+            0,
+            0,
+            1,
+            0,
+            1,
+            0,
+            0,
+            false,
+            false,
+            false);
+    PatheApiClient apiClient = mock(PatheApiClient.class);
+    when(apiClient.getShowingsForMovie(anyInt(), any()))
+        .thenReturn(new PatheShowings(MOVIEID, Collections.singletonList(showing)));
+    PatheMovieCache cache = new PatheMovieCache(MOVIEID, Collections.emptyList());
+    cache.setPartitions(SchedulePartitions.of(Collections.emptyList()));
+    when(patheCacheRepository.findAllByMovieidIn(any()))
+        .thenReturn(Collections.singletonList(cache));
+    Watcher here = watcher(CINEMAID);
+    Watcher elsewhere = watcher(CINEMAID + 1);
+
+    PatheNotifier api =
+        spy(
+            new PatheNotifier(
+                scheduleCache(),
+                showingEventRepository,
+                outbox,
+                apiClient,
+                pools,
+                matching(),
+                false,
+                60));
+    api.checkWatcher(Arrays.asList(here, elsewhere));
+
+    verify(api).match(eq(Collections.singletonList(here)), any());
+    assertEquals(0, api.getSkippedPartitions(), 0);
+    assertEquals(1.0, api.getDedupeRatio(), 0);
+  }
+
+  @Test
+  public void testShowingThatStartedBetweenRunsChangesNoPartition() throws Exception {
+    PatheShowing started = showing(1, TODAY - 1000, TODAY + 2 * HOUR);
+    PatheShowing upcoming = showing(2, TODAY + 5 * 60_000, TODAY + 2 * HOUR);
+    PatheShowing added =
+        new PatheShowing(
+            CINEMAID + 1,
+            MOVIEID,
+            3,
+            TODAY + DAY,
+            TODAY + DAY + 2 * HOUR,
+            0,
+            0,
+            0,
+            1,
+            0,
+            1,
+            0,
+            0,
+            false,
+            false,
+            false);
+    PatheApiClient apiClient = mock(PatheApiClient.class);
+    when(apiClient.getShowingsForMovie(anyInt(), any()))
+        .thenReturn(new PatheShowings(MOVIEID, Arrays.asList(upcoming, added)));
+    PatheMovieCache cache =
+        new PatheMovieCache(
+            MOVIEID,
+            SortedShowings.of(Arrays.asList(started, upcoming)),
+            new SchedulePredicate(
+                Arrays.asList(CINEMAID, CINEMAID + 1), TODAY - DAY, TODAY + 7 * DAY),
+            false);
+    cache.setPartitions(SchedulePartitions.of(Arrays.asList(started, upcoming)));
+    when(patheCacheRepository.findAllByMovieidIn(any()))
+        .thenReturn(Collections.singletonList(cache));
+    Watcher here = watcher(CINEMAID);
+    Watcher elsewhere = watcher(CINEMAID + 1);
+
+    PatheNotifier api =
+        spy(
+            new PatheNotifier(
+                scheduleCache(),
+                showingEventRepository,
+                outbox,
+                apiClient,
+                pools,
+                matching(),
+                false,
+                60));
+    api.checkWatcher(Arrays.asList(here, elsewhere));
+
+    // only the partition with the added showing changed
+    verify(api).match(eq(Collections.singletonList(elsewhere)), any());
+    assertEquals(0.5, api.getSkippedPartitions(), 0);
   }
 
   @Test
-  public void testIS4DX() throws ParseException {
-    PatheNotifier api = spy(new PatheNotifier(patheCacheRepository, notificationService, null));
+  public void testWatchersForAnyMovieMatchTheNewShowingsOfAllMovies() throws Exception {
+    PatheShowing showing =
+        new PatheShowing(
+            CINEMAID + 1,
+            MOVIEID,
+            1,
+            TODAY + DAY,
+            TODAY + DAY + 2 * HOUR,
+            0,
+            0,
+            0,
+            1,
+            0,
+            1,
+            0,
+            0,
+            false,
+            false,
+            false);
+    PatheApiClient apiClient = mock(PatheApiClient.class);
+    when(apiClient.getShowingsForMovie(anyInt(), any()))
+        .thenReturn(new PatheShowings(MOVIEID, Collections.singletonList(showing)));
+    PatheMovieCache cache = new PatheMovieCache(MOVIEID, Collections.emptyList());
+    cache.setPartitions(SchedulePartitions.of(Collections.emptyList()));
+    when(patheCacheRepository.findAllByMovieidIn(any()))
+        .thenReturn(Collections.singletonList(cache));
+    Watcher movie = watcher(CINEMAID);
+    Watcher any = watcher(CINEMAID + 1);
+    any.setMovieid(0);
+    any.setAnymovie(true);
+
+    PatheNotifier api =
+        spy(
+            new PatheNotifier(
+                scheduleCache(),
+                showingEventRepository,
+                outbox,
+                apiClient,
+                pools,
+                matching(),
+                false,
+                60));
+    api.checkWatcher(Arrays.asList(movie, any));
+
+    // only the movie of the other watcher is fetched, including the cinema of the wildcard
+    ArgumentCaptor<SchedulePredicate> predicate = ArgumentCaptor.forClass(SchedulePredicate.class);
+    verify(apiClient, times(1)).getShowingsForMovie(eq(MOVIEID), predicate.capture());
+    assertTrue(predicate.getValue().acceptsCinema(CINEMAID + 1));
+    verify(api).match(eq(Collections.singletonList(any)), any());
+    assertEquals(Collections.singletonList(showing), notified.get(any));
+    assertFalse(notified.containsKey(movie));
+  }
+
+  private static Watcher watcher(int cinemaId) {
+    return new Watcher(
+        "SOMEID" + cinemaId,
+        "SOMEUSER",
+        "SOMENAME",
+        MOVIEID,
+        TODAY - DAY,
+        TODAY + DAY,
+        new WatcherFilters(
+            cinemaId,
+            TODAY,
+            TODAY + DAY * 6,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE));
+  }
+
+  @Test
+  public void testReplay() {
+    PatheShowing upcoming =
+        new PatheShowing(
+            CINEMAID,
+            MOVIEID,
+            1,
+            TODAY + DAY,
+            TODAY + DAY + 2 * HOUR,
+            0,
+            0,
+            0,
+            1,
+            0,
+            1,
+            0,
+            0,
+            false,
+            false,
+            false);
+    PatheShowing started =
+        new PatheShowing(
+            CINEMAID,
+            MOVIEID,
+            2,
+            TODAY - HOUR,
+            TODAY + HOUR,
+            0,
+            0,
+            0,
+            1,
+            0,
+            1,
+            0,
+            0,
+            false,
+            false,
+            false);
+    Date detected = new Date(TODAY - DAY);
+    when(showingEventRepository.getAllByDetectedBetweenOrderByDetectedAsc(any(), any()))
+        .thenReturn(
+            Arrays.asList(
+                new ShowingEvent(detected, MOVIEID, ShowingEvent.Type.NEW, upcoming),
+                new ShowingEvent(detected, MOVIEID, ShowingEvent.Type.NEW, started),
+                new ShowingEvent(detected, MOVIEID, ShowingEvent.Type.CHANGED, upcoming)));
+
+    int replayed =
+        new PatheNotifier(
+                scheduleCache(), showingEventRepository, outbox, null, pools, matching(), false, 60)
+            .replay(
+                new Date(TODAY - 2 * DAY),
+                new Date(TODAY),
+                Collections.singletonList(
+                    new Watcher(
+                        "SOMEID",
+                        "SOMEUSER",
+                        "SOMENAME",
+                        MOVIEID,
+                        TODAY - DAY,
+                        TODAY + DAY,
+                        new WatcherFilters(
+                            CINEMAID,
+                            TODAY - DAY,
+                            TODAY + DAY * 6,
+                            NOPREFERENCE,
+                            NOPREFERENCE,
+                            NOPREFERENCE,
+                            NOPREFERENCE,
+                            NOPREFERENCE,
+                            NOPREFERENCE,
+                            NOPREFERENCE,
+                            NOPREFERENCE,
+                            NOPREFERENCE,
+                            NOPREFERENCE,
+                            NOPREFERENCE,
+                            NOPREFERENCE))));
+
+    // the started showing is skipped and the upcoming one is only sent once
+    assertEquals(1, replayed);
+    assertEquals(
+        Collections.singletonList(Collections.singletonList(upcoming)),
+        new ArrayList<>(notified.values()));
+  }
+
+  @Test
+  public void testIS4DX() {
+    PatheNotifier api =
+        spy(
+            new PatheNotifier(
+                scheduleCache(),
+                showingEventRepository,
+                outbox,
+                null,
+                pools,
+                matching(),
+                false,
+                60));
 
     Watcher watcher =
         new Watcher(
@@ -186,8 +754,8 @@ public class PatheNotifierTest {
             12,
             21432,
             2382115,
-            UnixTimestampDeserializer.PATHEFORMAT.parse("2017-12-15T21:00:00+01:00").getTime(),
-            UnixTimestampDeserializer.PATHEFORMAT.parse("2017-12-15T23:50:00+01:00").getTime(),
+            millis("2017-12-15T21:00:00+01:00"),
+            millis("2017-12-15T23:50:00+01:00"),
             1,
             0,
             0,
@@ -204,8 +772,18 @@ public class PatheNotifierTest {
   }
 
   @Test
-  public void testISDolbyCinema() throws ParseException {
-    PatheNotifier api = spy(new PatheNotifier(patheCacheRepository, notificationService, null));
+  public void testISDolbyCinema() {
+    PatheNotifier api =
+        spy(
+            new PatheNotifier(
+                scheduleCache(),
+                showingEventRepository,
+                outbox,
+                null,
+                pools,
+                matching(),
+                false,
+                60));
 
     Watcher watcher =
         new Watcher(
@@ -237,8 +815,8 @@ public class PatheNotifierTest {
             12,
             21432,
             2382115,
-            UnixTimestampDeserializer.PATHEFORMAT.parse("2017-12-15T21:00:00+01:00").getTime(),
-            UnixTimestampDeserializer.PATHEFORMAT.parse("2017-12-15T23:50:00+01:00").getTime(),
+            millis("2017-12-15T21:00:00+01:00"),
+            millis("2017-12-15T23:50:00+01:00"),
             0,
             0,
             0,
@@ -255,8 +833,18 @@ public class PatheNotifierTest {
   }
 
   @Test
-  public void testISAtmosDolbyCinema() throws ParseException {
-    PatheNotifier api = spy(new PatheNotifier(patheCacheRepository, notificationService, null));
+  public void testISAtmosDolbyCinema() {
+    PatheNotifier api =
+        spy(
+            new PatheNotifier(
+                scheduleCache(),
+                showingEventRepository,
+                outbox,
+                null,
+                pools,
+                matching(),
+                false,
+                60));
 
     Watcher watcher =
         new Watcher(
@@ -288,8 +876,8 @@ public class PatheNotifierTest {
             12,
             23469,
             3098804,
-            UnixTimestampDeserializer.PATHEFORMAT.parse("2019-08-03T19:50:00+02:00").getTime(),
-            UnixTimestampDeserializer.PATHEFORMAT.parse("2019-08-03T22:26:00+02:00").getTime(),
+            millis("2019-08-03T19:50:00+02:00"),
+            millis("2019-08-03T22:26:00+02:00"),
             0,
             0,
             0,
@@ -306,8 +894,18 @@ public class PatheNotifierTest {
   }
 
   @Test
-  public void testISLaserIMAX() throws ParseException {
-    PatheNotifier api = spy(new PatheNotifier(patheCacheRepository, notificationService, null));
+  public void testISLaserIMAX() {
+    PatheNotifier api =
+        spy(
+            new PatheNotifier(
+                scheduleCache(),
+                showingEventRepository,
+                outbox,
+                null,
+                pools,
+                matching(),
+                false,
+                60));
 
     Watcher watcher =
         new Watcher(
@@ -339,8 +937,8 @@ public class PatheNotifierTest {
             6,
             23469,
             3098306,
-            UnixTimestampDeserializer.PATHEFORMAT.parse("2019-08-03T18:15:00+02:00").getTime(),
-            UnixTimestampDeserializer.PATHEFORMAT.parse("2019-08-03T20:46:00+02:00").getTime(),
+            millis("2019-08-03T18:15:00+02:00"),
+            millis("2019-08-03T20:46:00+02:00"),
             1,
             0,
             1,
@@ -357,8 +955,18 @@ public class PatheNotifierTest {
   }
 
   @Test
-  public void testISScreenX() throws ParseException {
-    PatheNotifier api = spy(new PatheNotifier(patheCacheRepository, notificationService, null));
+  public void testISScreenX() {
+    PatheNotifier api =
+        spy(
+            new PatheNotifier(
+                scheduleCache(),
+                showingEventRepository,
+                outbox,
+                null,
+                pools,
+                matching(),
+                false,
+                60));
 
     Watcher watcher =
         new Watcher(
@@ -390,8 +998,8 @@ public class PatheNotifierTest {
             12,
             21432,
             2382115,
-            UnixTimestampDeserializer.PATHEFORMAT.parse("2017-12-15T21:00:00+01:00").getTime(),
-            UnixTimestampDeserializer.PATHEFORMAT.parse("2017-12-15T23:50:00+01:00").getTime(),
+            millis("2017-12-15T21:00:00+01:00"),
+            millis("2017-12-15T23:50:00+01:00"),
             0,
             0,
             0,
@@ -408,8 +1016,18 @@ public class PatheNotifierTest {
   }
 
   @Test
-  public void testISRegularShowing() throws ParseException {
-    PatheNotifier api = spy(new PatheNotifier(patheCacheRepository, notificationService, null));
+  public void testISRegularShowing() {
+    PatheNotifier api =
+        spy(
+            new PatheNotifier(
+                scheduleCache(),
+                showingEventRepository,
+                outbox,
+                null,
+                pools,
+                matching(),
+                false,
+                60));
 
     Watcher watcher =
         new Watcher(
@@ -441,8 +1059,8 @@ public class PatheNotifierTest {
             6,
             23469,
             3098306,
-            UnixTimestampDeserializer.PATHEFORMAT.parse("2019-08-03T18:15:00+02:00").getTime(),
-            UnixTimestampDeserializer.PATHEFORMAT.parse("2019-08-03T20:46:00+02:00").getTime(),
+            millis("2019-08-03T18:15:00+02:00"),
+            millis("2019-08-03T20:46:00+02:00"),
             0,
             0,
             1,
@@ -459,8 +1077,18 @@ public class PatheNotifierTest {
   }
 
   @Test
-  public void testISNoRegularShowing() throws ParseException {
-    PatheNotifier api = spy(new PatheNotifier(patheCacheRepository, notificationService, null));
+  public void testISNoRegularShowing() {
+    PatheNotifier api =
+        spy(
+            new PatheNotifier(
+                scheduleCache(),
+                showingEventRepository,
+                outbox,
+                null,
+                pools,
+                matching(),
+                false,
+                60));
 
     Watcher watcher =
         new Watcher(
@@ -492,8 +1120,8 @@ public class PatheNotifierTest {
             6,
             23469,
             3098306,
-            UnixTimestampDeserializer.PATHEFORMAT.parse("2019-08-03T18:15:00+02:00").getTime(),
-            UnixTimestampDeserializer.PATHEFORMAT.parse("2019-08-03T20:46:00+02:00").getTime(),
+            millis("2019-08-03T18:15:00+02:00"),
+            millis("2019-08-03T20:46:00+02:00"),
             1,
             0,
             0,
@@ -508,4 +1136,8 @@ public class PatheNotifierTest {
 
     assertTrue(api.accepts(watcher, patheShowingResponse));
   }
+
+  private static long millis(String timestamp) {
+    return OffsetDateTime.parse(timestamp).toInstant().toEpochMilli();
+  }
 }
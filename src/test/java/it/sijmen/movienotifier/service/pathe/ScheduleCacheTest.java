@@ -0,0 +1,142 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.*;
+
+import it.sijmen.movienotifier.model.PatheMovieCache;
+import it.sijmen.movienotifier.repositories.PatheCacheRepository;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class ScheduleCacheTest {
+
+  private PatheCacheRepository repository;
+
+  @Before
+  public void setUp() {
+    repository = mock(PatheCacheRepository.class);
+    when(repository.getFirstByMovieid(anyInt()))
+        .thenAnswer(i -> new PatheMovieCache(i.getArgumentAt(0, Integer.class)));
+  }
+
+  @Test
+  public void testReadsAreCached() {
+    ScheduleCache cache = new ScheduleCache(repository, 10, 60, 60);
+
+    PatheMovieCache first = cache.get(1);
+    assertSame(first, cache.get(1));
+
+    verify(repository, times(1)).getFirstByMovieid(1);
+    assertEquals(0.5, cache.getHitRate(), 0);
+  }
+
+  @Test
+  public void testLeastRecentlyUsedIsEvicted() {
+    ScheduleCache cache = new ScheduleCache(repository, 2, 60, 60);
+
+    cache.get(1);
+    cache.get(2);
+    cache.get(1);
+    cache.get(3);
+    cache.get(1);
+    cache.get(2);
+
+    verify(repository, times(1)).getFirstByMovieid(1);
+    verify(repository, times(2)).getFirstByMovieid(2);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testWritesAreCoalescedAndFlushedInOneBatch() {
+    ScheduleCache cache = new ScheduleCache(repository, 1, 60, 60);
+    PatheMovieCache latest = new PatheMovieCache(1);
+
+    cache.save(new PatheMovieCache(1));
+    cache.save(latest);
+    cache.save(new PatheMovieCache(2));
+
+    // dirty entries are served from memory even when they exceed the size
+    assertSame(latest, cache.get(1));
+    assertEquals(2, cache.getDirtyCount());
+    cache.flushDue();
+    verifyZeroInteractions(repository);
+
+    cache.flush();
+
+    ArgumentCaptor<List> batch = ArgumentCaptor.forClass(List.class);
+    verify(repository).upsertAll(batch.capture());
+    assertEquals(Arrays.asList(latest, new PatheMovieCache(2)), batch.getValue());
+    assertSame(latest, batch.getValue().get(0));
+    assertEquals(0, cache.getDirtyCount());
+  }
+
+  @Test
+  public void testFailedFlushIsRetried() {
+    ScheduleCache cache = new ScheduleCache(repository, 10, 60, 60);
+    doThrow(new RuntimeException("down"))
+        .doNothing()
+        .when(repository)
+        .upsertAll(anyListOf(PatheMovieCache.class));
+
+    cache.save(new PatheMovieCache(1));
+    cache.flush();
+    assertEquals(1, cache.getDirtyCount());
+
+    cache.flush();
+    assertEquals(0, cache.getDirtyCount());
+    verify(repository, times(2)).upsertAll(anyListOf(PatheMovieCache.class));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testPreloadUsesOneQuery() {
+    ScheduleCache cache = new ScheduleCache(repository, 10, 60, 60);
+    PatheMovieCache stored = new PatheMovieCache(1);
+    when(repository.findAllByMovieidIn(anyCollectionOf(Integer.class)))
+        .thenReturn(Collections.singletonList(stored));
+    cache.get(3);
+
+    cache.preload(Arrays.asList(1, 2, 3));
+
+    ArgumentCaptor<Collection> ids = ArgumentCaptor.forClass(Collection.class);
+    verify(repository).findAllByMovieidIn(ids.capture());
+    assertEquals(new HashSet<>(Arrays.asList(1, 2)), new HashSet<>(ids.getValue()));
+    assertSame(stored, cache.get(1));
+    // movie 2 has no cache, which is remembered as well
+    assertNull(cache.get(2));
+    verify(repository, times(1)).getFirstByMovieid(anyInt());
+  }
+
+  @Test
+  public void testFlushIsChunked() {
+    ScheduleCache cache = new ScheduleCache(repository, 10, 60, 60);
+    for (int i = 0; i < ScheduleCache.BULK_SIZE + 1; i++) cache.save(new PatheMovieCache(i));
+
+    cache.flush();
+
+    verify(repository, times(2)).upsertAll(anyListOf(PatheMovieCache.class));
+  }
+
+  @Test
+  public void testWriteThroughWithoutFlushInterval() {
+    ScheduleCache cache = new ScheduleCache(repository, 10, 60, 0);
+    PatheMovieCache written = new PatheMovieCache(1);
+
+    cache.save(written);
+
+    verify(repository).save(written);
+    assertEquals(0, cache.getDirtyCount());
+    assertSame(written, cache.get(1));
+  }
+}
@@ -0,0 +1,145 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import static it.sijmen.movienotifier.model.FilterOption.NOPREFERENCE;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import it.sijmen.movienotifier.model.WatcherFilters;
+import it.sijmen.movienotifier.service.pathe.api.PatheShowing;
+import it.sijmen.movienotifier.service.pathe.api.SchedulePredicate;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+public class SchedulePartitionsTest {
+
+  private static final long DAY = 86_400_000;
+  private static final long START = 17_500 * DAY;
+
+  @Test
+  public void testPartitionsPerCinemaAndDay() {
+    SchedulePartitions partitions =
+        SchedulePartitions.of(
+            Arrays.asList(
+                showing(1, 12, START + 1000),
+                showing(2, 12, START + 2000),
+                showing(3, 12, START + DAY),
+                showing(4, 13, START)));
+
+    assertEquals(3, partitions.size());
+    assertArrayEquals(
+        new long[] {
+          SchedulePartitions.key(12, START),
+          SchedulePartitions.key(12, START + DAY),
+          SchedulePartitions.key(13, START)
+        },
+        partitions.getKeys());
+  }
+
+  @Test
+  public void testOrderDoesNotMatter() {
+    SchedulePartitions a =
+        SchedulePartitions.of(Arrays.asList(showing(1, 12, START), showing(2, 12, START + 5)));
+    SchedulePartitions b =
+        SchedulePartitions.of(Arrays.asList(showing(2, 12, START + 5), showing(1, 12, START)));
+
+    assertEquals(0, SchedulePartitions.changed(a, b).length);
+  }
+
+  @Test
+  public void testChanged() {
+    SchedulePartitions oldPartitions =
+        SchedulePartitions.of(
+            Arrays.asList(
+                showing(1, 12, START), showing(2, 12, START + DAY), showing(3, 14, START)));
+    SchedulePartitions newPartitions =
+        SchedulePartitions.of(
+            Arrays.asList(
+                showing(1, 12, START),
+                showing(2, 12, START + DAY),
+                showing(5, 12, START + DAY + 10),
+                showing(4, 13, START)));
+
+    long[] changed = SchedulePartitions.changed(oldPartitions, newPartitions);
+
+    // a showing was added to the second day of cinema 12, cinema 13 is new, cinema 14 is gone
+    assertArrayEquals(
+        new long[] {
+          SchedulePartitions.key(12, START + DAY),
+          SchedulePartitions.key(13, START),
+          SchedulePartitions.key(14, START)
+        },
+        changed);
+  }
+
+  @Test
+  public void testStartedShowingsAndOtherCinemasAreOutOfScope() {
+    long now = START + 2 * 3_600_000;
+    SortedShowings oldShowings =
+        SortedShowings.of(
+            Arrays.asList(
+                showing(1, 12, START + 1000), showing(2, 12, START + DAY), showing(3, 14, now)));
+    SortedShowings newShowings =
+        SortedShowings.of(Collections.singletonList(showing(2, 12, START + DAY)));
+    SchedulePredicate scope =
+        new SchedulePredicate(Collections.singletonList(12), now, now + 3 * DAY);
+
+    assertEquals(
+        0,
+        SchedulePartitions.changed(
+                SchedulePartitions.of(oldShowings, scope, SchedulePredicate.ALL),
+                SchedulePartitions.of(newShowings, scope, SchedulePredicate.ALL))
+            .length);
+    // without the cinema, start or fingerprint of every showing they can not be compared
+    assertNull(
+        SchedulePartitions.of(
+            SortedShowings.sort(new long[] {1}, new long[] {1}, null, null),
+            scope,
+            SchedulePredicate.ALL));
+  }
+
+  @Test
+  public void testOverlaps() {
+    long[] changed = {SchedulePartitions.key(12, START + 2 * DAY)};
+
+    assertTrue(SchedulePartitions.overlaps(changed, filters(12, START, START + 3 * DAY)));
+    assertTrue(
+        SchedulePartitions.overlaps(changed, filters(12, START + 2 * DAY + 5, START + 3 * DAY)));
+    assertFalse(SchedulePartitions.overlaps(changed, filters(12, START, START + DAY)));
+    assertFalse(
+        SchedulePartitions.overlaps(changed, filters(12, START + 3 * DAY, START + 4 * DAY)));
+    assertFalse(SchedulePartitions.overlaps(changed, filters(13, START, START + 3 * DAY)));
+    assertFalse(SchedulePartitions.overlaps(new long[0], filters(12, START, START + 3 * DAY)));
+
+    WatcherFilters twoCinemas = filters(13, START, START + 3 * DAY);
+    twoCinemas.setCinemaids(Collections.singletonList(12));
+    assertTrue(SchedulePartitions.overlaps(changed, twoCinemas));
+  }
+
+  private static PatheShowing showing(long id, int cinemaId, long start) {
+    return new PatheShowing(
+        cinemaId, 1, id, start, start + 7_200_000, 0, 0, 0, 1, 0, 1, 0, 0, false, false, false);
+  }
+
+  private static WatcherFilters filters(int cinemaId, long startafter, long startbefore) {
+    return new WatcherFilters(
+        cinemaId,
+        startafter,
+        startbefore,
+        NOPREFERENCE,
+        NOPREFERENCE,
+        NOPREFERENCE,
+        NOPREFERENCE,
+        NOPREFERENCE,
+        NOPREFERENCE,
+        NOPREFERENCE,
+        NOPREFERENCE,
+        NOPREFERENCE,
+        NOPREFERENCE,
+        NOPREFERENCE,
+        NOPREFERENCE);
+  }
+}
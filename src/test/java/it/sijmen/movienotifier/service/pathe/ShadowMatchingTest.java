@@ -0,0 +1,157 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import static it.sijmen.movienotifier.model.FilterOption.NOPREFERENCE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.*;
+
+import it.sijmen.movienotifier.model.MatcherDivergence;
+import it.sijmen.movienotifier.model.Watcher;
+import it.sijmen.movienotifier.model.WatcherFilters;
+import it.sijmen.movienotifier.repositories.MatcherDivergenceRepository;
+import it.sijmen.movienotifier.service.WorkerPools;
+import it.sijmen.movienotifier.service.pathe.api.PatheShowing;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class ShadowMatchingTest {
+
+  private static final int MOVIEID = 1;
+  private static final long HOUR = 3_600_000;
+  private static final long START = 1_513_368_000_000L;
+
+  /** Pretends no watcher accepts anything. */
+  private static final ShowingMatcher NOTHING =
+      new ShowingMatcher() {
+        @Override
+        public String getName() {
+          return "nothing";
+        }
+
+        @Override
+        public WatcherMatches match(List<Watcher> watchers, List<CompactShowing> showings) {
+          return new WatcherMatches(
+              Collections.nCopies(watchers.size(), Collections.emptyList()), watchers.size());
+        }
+      };
+
+  private final List<ShowingMatcher> matchers =
+      Arrays.asList(new IndexMatcher(), new ScanMatcher(), NOTHING);
+
+  private final WorkerPools pools = new WorkerPools(1, 2);
+
+  private MatcherDivergenceRepository repository;
+
+  private List<Watcher> watchers;
+
+  private List<CompactShowing> showings;
+
+  @Before
+  public void setUp() {
+    repository = mock(MatcherDivergenceRepository.class);
+    watchers = Arrays.asList(watcher("A", 12), watcher("B", 13));
+    showings = CompactShowing.of(Arrays.asList(showing(1, 12), showing(2, 12), showing(3, 14)));
+  }
+
+  @Test
+  public void testEqualMatchersDoNotDiverge() {
+    ShadowMatching matching = new ShadowMatching(matchers, repository, pools, "index", "scan", 10);
+    matching.createCollection();
+
+    List<List<PatheShowing>> matches = matching.match(watchers, showings).getAccepted();
+
+    assertEquals(2, matches.get(0).size());
+    assertEquals(0, matches.get(1).size());
+    assertEquals(0, matching.getDivergences());
+    verify(repository).createCapped(10);
+    verify(repository, never()).insert(anyListOf(MatcherDivergence.class));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testDivergencesAreStoredAndOnlyThePrimaryIsUsed() {
+    ShadowMatching matching =
+        new ShadowMatching(matchers, repository, pools, "index", "nothing", 10);
+
+    List<List<PatheShowing>> matches = matching.match(watchers, showings).getAccepted();
+
+    assertEquals(2, matches.get(0).size());
+    assertEquals(2, matching.getDivergences());
+    ArgumentCaptor<List> stored = ArgumentCaptor.forClass(List.class);
+    verify(repository, timeout(1000)).insert(stored.capture());
+    List<MatcherDivergence> divergences = new ArrayList<MatcherDivergence>(stored.getValue());
+    assertEquals(2, divergences.size());
+    for (MatcherDivergence divergence : divergences) {
+      assertEquals("A", divergence.getWatcherid());
+      assertTrue(divergence.isPrimaryaccepts());
+      assertEquals("nothing", divergence.getCandidate());
+    }
+  }
+
+  @Test
+  public void testWithoutShadowOnlyThePrimaryRuns() {
+    ShadowMatching matching = new ShadowMatching(matchers, repository, pools, "nothing", "", 10);
+    matching.createCollection();
+
+    assertEquals(0, matching.match(watchers, showings).getAccepted().get(0).size());
+    assertEquals(0, matching.getRelativeCpuTime(), 0);
+    verifyZeroInteractions(repository);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownMatcher() {
+    new ShadowMatching(matchers, repository, pools, "index", "magic", 10);
+  }
+
+  private static PatheShowing showing(long id, int cinemaId) {
+    return new PatheShowing(
+        cinemaId,
+        MOVIEID,
+        id,
+        START,
+        START + 2 * HOUR,
+        0,
+        0,
+        0,
+        1,
+        0,
+        1,
+        0,
+        0,
+        false,
+        false,
+        false);
+  }
+
+  private static Watcher watcher(String id, int cinemaId) {
+    return new Watcher(
+        id,
+        "USER",
+        "NAME",
+        MOVIEID,
+        START,
+        START + HOUR,
+        new WatcherFilters(
+            cinemaId,
+            0,
+            Long.MAX_VALUE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE));
+  }
+}
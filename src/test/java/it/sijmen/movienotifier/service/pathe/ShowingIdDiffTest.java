@@ -0,0 +1,179 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import it.sijmen.movienotifier.service.pathe.api.PatheShowing;
+import it.sijmen.movienotifier.service.pathe.api.SchedulePredicate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+public class ShowingIdDiffTest {
+
+  @Test
+  public void testAdded() {
+    ShowingIdDiff diff = ShowingIdDiff.between(new long[] {1, 3, 5, 7}, new long[] {2, 3, 7, 9});
+
+    assertArrayEquals(new long[] {2, 9}, diff.getAdded());
+    assertTrue(diff.hasAdditions());
+    assertFalse(diff.hasChanges());
+  }
+
+  @Test
+  public void testEqualSets() {
+    ShowingIdDiff diff = ShowingIdDiff.between(new long[] {1, 2}, new long[] {1, 2});
+
+    assertFalse(diff.hasAdditions());
+    assertArrayEquals(new long[0], diff.getAdded());
+  }
+
+  @Test
+  public void testEmptySets() {
+    assertArrayEquals(
+        new long[] {4}, ShowingIdDiff.between(new long[0], new long[] {4}).getAdded());
+    assertFalse(ShowingIdDiff.between(new long[] {4}, new long[0]).hasAdditions());
+  }
+
+  @Test
+  public void testChanged() {
+    SortedShowings oldShowings =
+        SortedShowings.sort(new long[] {5, 1, 3, 7}, new long[] {50, 10, 30, 0}, null, null);
+    SortedShowings newShowings =
+        SortedShowings.sort(new long[] {3, 1, 7, 9}, new long[] {31, 10, 70, 90}, null, null);
+
+    ShowingIdDiff diff = ShowingIdDiff.between(oldShowings, newShowings);
+
+    assertArrayEquals(new long[] {9}, diff.getAdded());
+    // 7 had no known fingerprint, so it cannot have changed
+    assertArrayEquals(new long[] {3}, diff.getChanged());
+  }
+
+  @Test
+  public void testSelectsAddedAndChangedShowingsInOnePass() {
+    SortedShowings oldShowings =
+        SortedShowings.sort(new long[] {1, 3, 5, 7}, new long[] {10, 30, 50, 70}, null, null);
+    SortedShowings newShowings =
+        SortedShowings.sort(
+            new long[] {1, 2, 3, 7, 9}, new long[] {10, 20, 31, 70, 90}, null, null);
+    ShowingIdDiff diff = ShowingIdDiff.between(oldShowings, newShowings);
+    List<CompactShowing> sortedById = new ArrayList<>();
+    for (long id : new long[] {1, 2, 3, 7, 9}) sortedById.add(showing(id, id == 9 ? 8 : 6));
+
+    BitSet cinemas = new BitSet();
+    cinemas.set(6);
+    ShowingIdDiff.Selection selection =
+        diff.select(sortedById, new SchedulePredicate(cinemas, Long.MIN_VALUE, Long.MAX_VALUE));
+
+    // 9 is in a cinema that was out of scope before, so it is not new
+    assertEquals(Collections.singletonList(2L), ids(selection.getAdded()));
+    assertEquals(Collections.singletonList(3L), ids(selection.getChanged()));
+  }
+
+  @Test
+  public void testIgnoresStartedShowings() {
+    SortedShowings oldShowings =
+        SortedShowings.sort(
+            new long[] {1, 2, 3}, new long[] {10, 20, 30}, new long[] {100, 0, 300}, null);
+    SortedShowings newShowings =
+        SortedShowings.sort(
+            new long[] {1, 2, 4, 5},
+            new long[] {11, 21, 40, 50},
+            new long[] {100, 0, 150, 250},
+            null);
+
+    ShowingIdDiff diff = ShowingIdDiff.between(oldShowings, newShowings, 200);
+
+    // 1 and 4 already started, 2 has an unknown start and is always compared
+    assertArrayEquals(new long[] {5}, diff.getAdded());
+    assertArrayEquals(new long[] {2}, diff.getChanged());
+  }
+
+  @Test
+  public void testStartingFrom() {
+    SortedShowings showings =
+        SortedShowings.sort(
+            new long[] {3, 1, 2}, new long[] {30, 10, 20}, new long[] {0, 100, 50}, null);
+
+    SortedShowings pruned = showings.startingFrom(60);
+
+    assertArrayEquals(new long[] {1, 3}, pruned.getIds());
+    assertArrayEquals(new long[] {10, 30}, pruned.getFingerprints());
+    assertArrayEquals(new long[] {100, 0}, pruned.getStarts());
+    assertTrue(showings.startingFrom(0) == showings);
+  }
+
+  @Test
+  public void testSortedShowings() {
+    long[] ids = new long[100];
+    long[] fingerprints = new long[ids.length];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = (i * 37) % 50;
+      fingerprints[i] = ids[i] * 10;
+    }
+
+    SortedShowings sorted = SortedShowings.sort(ids, fingerprints, null, null);
+
+    assertEquals(50, sorted.size());
+    for (int i = 0; i < sorted.size(); i++) {
+      assertEquals(i, sorted.getIds()[i]);
+      assertEquals(i * 10, sorted.getFingerprints()[i]);
+    }
+    assertTrue(SortedShowings.sort(new long[0], null, null, null).isEmpty());
+  }
+
+  @Test
+  public void testMatchesSetSemantics() {
+    Random random = new Random(7);
+    for (int run = 0; run < 100; run++) {
+      long[] oldIds = randomIds(random);
+      long[] newIds = randomIds(random);
+      Set<Long> oldSet = toSet(oldIds);
+      Set<Long> newSet = toSet(newIds);
+
+      ShowingIdDiff diff =
+          ShowingIdDiff.between(
+              SortedShowings.sort(oldIds.clone(), null, null, null).getIds(),
+              SortedShowings.sort(newIds.clone(), null, null, null).getIds());
+
+      for (long id : newIds) assertTrue(contains(diff.getAdded(), id) != oldSet.contains(id));
+      for (long id : diff.getAdded()) assertTrue(newSet.contains(id));
+    }
+  }
+
+  private static boolean contains(long[] ids, long id) {
+    for (long i : ids) if (i == id) return true;
+    return false;
+  }
+
+  private static long[] randomIds(Random random) {
+    long[] out = new long[random.nextInt(200)];
+    for (int i = 0; i < out.length; i++) out[i] = 3_000_000 + random.nextInt(400);
+    return out;
+  }
+
+  private static Set<Long> toSet(long[] ids) {
+    Set<Long> out = new HashSet<>();
+    for (long id : ids) out.add(id);
+    return out;
+  }
+
+  private static CompactShowing showing(long id, int cinemaId) {
+    return CompactShowing.of(
+        new PatheShowing(
+            cinemaId, 1, id, 1_000_000, 2_000_000, 0, 0, 0, 0, 0, 0, 0, 0, false, false, false));
+  }
+
+  private static List<Long> ids(List<CompactShowing> showings) {
+    List<Long> ids = new ArrayList<>();
+    for (CompactShowing showing : showings) ids.add(showing.getId());
+    return ids;
+  }
+}
@@ -0,0 +1,86 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class SortedShowingsCodecTest {
+
+  @Test
+  public void testRoundTrip() {
+    Random random = new Random(3);
+    long[] ids = new long[2000];
+    long[] fingerprints = new long[ids.length];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = 3_000_000 + random.nextInt(100_000);
+      fingerprints[i] = random.nextLong();
+    }
+    SortedShowings showings = SortedShowings.sort(ids, fingerprints, null, null);
+
+    byte[] packed = SortedShowingsCodec.encode(showings);
+    SortedShowings decoded = SortedShowingsCodec.decode(packed);
+
+    assertArrayEquals(showings.getIds(), decoded.getIds());
+    assertArrayEquals(showings.getFingerprints(), decoded.getFingerprints());
+    // small deltas take two bytes at most, fingerprints always take eight
+    assertTrue(packed.length < showings.size() * 10 + 8);
+  }
+
+  @Test
+  public void testRoundTripWithStarts() {
+    long start = 1_513_368_000_000L;
+    SortedShowings showings =
+        SortedShowings.sort(
+            new long[] {10, 11, 12},
+            null,
+            new long[] {start, start - 3_600_000, start + 900_000},
+            null);
+
+    byte[] packed = SortedShowingsCodec.encode(showings);
+    SortedShowings decoded = SortedShowingsCodec.decode(packed);
+
+    assertArrayEquals(showings.getIds(), decoded.getIds());
+    assertArrayEquals(showings.getStarts(), decoded.getStarts());
+    assertArrayEquals(new long[3], decoded.getFingerprints());
+  }
+
+  @Test
+  public void testRoundTripWithAttributes() {
+    long[] attributes = {(12L << 32) | 0x0FFF_0A05, 0, (3L << 32) | 0x0001_0000};
+    SortedShowings showings =
+        SortedShowings.sort(new long[] {10, 11, 12}, null, null, attributes.clone());
+
+    SortedShowings decoded = SortedShowingsCodec.decode(SortedShowingsCodec.encode(showings));
+
+    assertArrayEquals(attributes, decoded.getAttributes());
+    assertArrayEquals(new long[3], decoded.getStarts());
+  }
+
+  @Test
+  public void testRoundTripWithoutFingerprints() {
+    SortedShowings showings =
+        SortedShowings.sort(new long[] {-5, 0, 7, Long.MAX_VALUE}, null, null, null);
+
+    byte[] packed = SortedShowingsCodec.encode(showings);
+    SortedShowings decoded = SortedShowingsCodec.decode(packed);
+
+    assertArrayEquals(showings.getIds(), decoded.getIds());
+    assertArrayEquals(new long[4], decoded.getFingerprints());
+  }
+
+  @Test
+  public void testRoundTripEmpty() {
+    assertTrue(
+        SortedShowingsCodec.decode(SortedShowingsCodec.encode(SortedShowings.EMPTY)).isEmpty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsTruncatedData() {
+    byte[] packed =
+        SortedShowingsCodec.encode(
+            SortedShowings.sort(new long[] {1, 2}, new long[] {3, 4}, null, null));
+    SortedShowingsCodec.decode(java.util.Arrays.copyOf(packed, packed.length - 1));
+  }
+}
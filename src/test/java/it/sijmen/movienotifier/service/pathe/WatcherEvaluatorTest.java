@@ -0,0 +1,149 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import static it.sijmen.movienotifier.model.FilterOption.NOPREFERENCE;
+import static it.sijmen.movienotifier.model.FilterOption.YES;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.*;
+
+import it.sijmen.movienotifier.model.FilterOption;
+import it.sijmen.movienotifier.model.Watcher;
+import it.sijmen.movienotifier.model.WatcherFilters;
+import it.sijmen.movienotifier.model.exceptions.BadGatewayException;
+import it.sijmen.movienotifier.model.exceptions.ServiceUnavailableException;
+import it.sijmen.movienotifier.service.NotificationOutbox;
+import it.sijmen.movienotifier.service.WorkerPools;
+import it.sijmen.movienotifier.service.pathe.api.PatheShowing;
+import it.sijmen.movienotifier.service.pathe.api.PatheShowings;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class WatcherEvaluatorTest {
+
+  private static final long HOUR = 3_600_000;
+
+  private final long now = System.currentTimeMillis();
+
+  private LatestSchedules schedules;
+  private NotificationOutbox outbox;
+  private WatcherEvaluator evaluator;
+
+  @Before
+  public void setUp() {
+    schedules = mock(LatestSchedules.class);
+    outbox = mock(NotificationOutbox.class);
+    evaluator = new WatcherEvaluator(schedules, outbox, new WorkerPools(1, 2), 1);
+    when(schedules.get(1))
+        .thenReturn(
+            CompletableFuture.completedFuture(
+                new PatheShowings(1, Arrays.asList(showing(10, 1), showing(11, 0)))));
+  }
+
+  @Test
+  public void testUnchangedWatcherIsNotEvaluated() {
+    Watcher watcher = watcher(NOPREFERENCE);
+    Watcher renamed = watcher(NOPREFERENCE);
+    renamed.setName("RENAMED");
+
+    evaluator.evaluateAsync(watcher, renamed);
+
+    verify(schedules, never()).get(anyInt());
+  }
+
+  @Test
+  public void testNarrowedFiltersSendNothing() {
+    evaluator.evaluateAsync(watcher(NOPREFERENCE), watcher(YES));
+
+    verify(schedules, timeout(5000)).get(1);
+    verify(outbox, after(200).never()).enqueue(any(Watcher.class), anyListOf(PatheShowing.class));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testWidenedFiltersSendOnlyTheNewMatches() {
+    evaluator.evaluateAsync(watcher(YES), watcher(NOPREFERENCE));
+
+    ArgumentCaptor<List> matches = ArgumentCaptor.forClass(List.class);
+    verify(outbox, timeout(5000)).enqueue(any(Watcher.class), matches.capture());
+    assertEquals(1, matches.getValue().size());
+    assertEquals(11, ((PatheShowing) matches.getValue().get(0)).getId());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testInactivePreviousVersionSendsAllMatches() {
+    Watcher previous = watcher(NOPREFERENCE);
+    previous.setBegin(now + HOUR);
+    previous.setEnd(now + 2 * HOUR);
+
+    evaluator.evaluateAsync(previous, watcher(NOPREFERENCE));
+
+    ArgumentCaptor<List> matches = ArgumentCaptor.forClass(List.class);
+    verify(outbox, timeout(5000)).enqueue(any(Watcher.class), matches.capture());
+    assertEquals(2, matches.getValue().size());
+  }
+
+  @Test
+  public void testExplainsTheShowingsInTheCinemasOfTheWatcher() {
+    Watcher elsewhere = watcher(NOPREFERENCE);
+    elsewhere.getFilters().setCinemaid(2);
+
+    assertEquals(2, evaluator.explain(watcher(NOPREFERENCE)).size());
+    assertEquals(0, evaluator.explain(elsewhere).size());
+  }
+
+  @Test(expected = ServiceUnavailableException.class)
+  public void testExplainGivesUpWhenTheScheduleTakesTooLong() {
+    when(schedules.get(1)).thenReturn(new CompletableFuture<>());
+
+    evaluator.explain(watcher(NOPREFERENCE));
+  }
+
+  @Test(expected = BadGatewayException.class)
+  public void testExplainFailsWhenTheScheduleCouldNotBeFetched() {
+    CompletableFuture<PatheShowings> failed = new CompletableFuture<>();
+    failed.completeExceptionally(new IOException("down"));
+    when(schedules.get(1)).thenReturn(failed);
+
+    evaluator.explain(watcher(NOPREFERENCE));
+  }
+
+  private Watcher watcher(FilterOption ov) {
+    return new Watcher(
+        "ID",
+        "USER",
+        "NAME",
+        1,
+        now - HOUR,
+        now + HOUR,
+        new WatcherFilters(
+            1,
+            now,
+            now + 48 * HOUR,
+            ov,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE));
+  }
+
+  private PatheShowing showing(long id, int ov) {
+    long start = now + 24 * HOUR;
+    return new PatheShowing(
+        1, 1, id, start, start + 2 * HOUR, 0, 0, 0, ov, 0, 0, 0, 0, false, false, false);
+  }
+}
@@ -0,0 +1,212 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import static it.sijmen.movienotifier.model.FilterOption.NOPREFERENCE;
+import static it.sijmen.movienotifier.model.FilterOption.YES;
+import static org.junit.Assert.assertEquals;
+
+import it.sijmen.movienotifier.model.FilterOption;
+import it.sijmen.movienotifier.model.Watcher;
+import it.sijmen.movienotifier.model.WatcherFilters;
+import it.sijmen.movienotifier.service.pathe.api.PatheShowing;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.Test;
+
+public class WatcherIndexTest {
+
+  private static final int MOVIEID = 1;
+  private static final long HOUR = 3_600_000;
+  private static final long START = 1_513_368_000_000L;
+
+  @Test
+  public void testStabbing() {
+    Watcher early = watcher(12, START, START + 2 * HOUR);
+    Watcher wide = watcher(12, 0, Long.MAX_VALUE);
+    Watcher late = watcher(12, START + 3 * HOUR, START + 4 * HOUR);
+    Watcher elsewhere = watcher(13, START, START + 4 * HOUR);
+    PatheShowing showing = showing(12, START + HOUR);
+
+    List<List<PatheShowing>> matches =
+        WatcherIndex.of(Arrays.asList(early, wide, late, elsewhere))
+            .match(CompactShowing.of(Arrays.asList(showing, showing(14, START))));
+
+    assertEquals(Arrays.asList(showing), matches.get(0));
+    assertEquals(Arrays.asList(showing), matches.get(1));
+    assertEquals(0, matches.get(2).size());
+    assertEquals(0, matches.get(3).size());
+  }
+
+  @Test
+  public void testIdenticalFiltersAreIndexedOnce() {
+    Watcher first = watcher(12, START, START + 2 * HOUR);
+    Watcher copy = watcher(12, START, START + 2 * HOUR);
+    Watcher other = watcher(12, START, START + 3 * HOUR);
+    PatheShowing showing = showing(12, START + HOUR);
+
+    WatcherIndex index = WatcherIndex.of(Arrays.asList(first, copy, other));
+    List<List<PatheShowing>> matches =
+        index.match(CompactShowing.of(Collections.singletonList(showing)));
+
+    assertEquals(3, index.size());
+    assertEquals(2, index.getDistinctFilters());
+    for (List<PatheShowing> match : matches) assertEquals(Arrays.asList(showing), match);
+  }
+
+  @Test
+  public void testMatchesEveryPair() {
+    Random random = new Random(38);
+    List<Watcher> watchers = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      long from = START + random.nextInt(48) * HOUR;
+      watchers.add(watcher(random.nextInt(4), from, from + random.nextInt(24) * HOUR));
+      // premiere weeks: many watchers copy an existing one
+      if (random.nextBoolean()) watchers.add(watchers.get(random.nextInt(watchers.size())));
+    }
+    List<PatheShowing> showings = new ArrayList<>();
+    for (int i = 0; i < 200; i++)
+      showings.add(showing(random.nextInt(5), START + random.nextInt(72) * HOUR));
+
+    List<List<PatheShowing>> matches = WatcherIndex.of(watchers).match(CompactShowing.of(showings));
+
+    for (int i = 0; i < watchers.size(); i++) {
+      CompiledWatcherFilter filter = CompiledWatcherFilter.compile(watchers.get(i));
+      List<PatheShowing> expected =
+          showings.stream()
+              .filter(s -> filter.accepts(CompactShowing.of(s)))
+              .collect(Collectors.toList());
+      assertEquals(expected, matches.get(i));
+    }
+  }
+
+  @Test
+  public void testMultipleCinemas() {
+    Watcher both = watcher(12, 0, Long.MAX_VALUE);
+    both.getFilters().setCinemaids(Collections.singletonList(13));
+    PatheShowing here = showing(12, START);
+    PatheShowing there = showing(13, START + HOUR);
+
+    List<List<PatheShowing>> matches =
+        WatcherIndex.of(Collections.singletonList(both))
+            .match(CompactShowing.of(Arrays.asList(here, there, showing(14, START))));
+
+    assertEquals(Arrays.asList(here, there), matches.get(0));
+  }
+
+  @Test
+  public void testAnyMovieAndRequiredAttributes() {
+    Watcher any = watcher(12, 0, Long.MAX_VALUE);
+    any.setMovieid(0);
+    any.setAnymovie(true);
+    Watcher imax = watcher(12, 0, Long.MAX_VALUE);
+    imax.getFilters().setImax(YES);
+    PatheShowing regular = showing(12, START);
+    PatheShowing otherMovie =
+        new PatheShowing(
+            12, MOVIEID + 1, 2, START, START, 0, 0, 1, 0, 0, 0, 0, 0, false, false, false);
+
+    List<List<PatheShowing>> matches =
+        WatcherIndex.of(Arrays.asList(any, imax))
+            .match(CompactShowing.of(Arrays.asList(regular, otherMovie)));
+
+    assertEquals(Arrays.asList(regular, otherMovie), matches.get(0));
+    assertEquals(0, matches.get(1).size());
+  }
+
+  @Test
+  public void testMatchesEveryPairWithAttributes() {
+    Random random = new Random(46);
+    FilterOption[] options = FilterOption.values();
+    List<Watcher> watchers = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      long from = START + random.nextInt(48) * HOUR;
+      Watcher watcher = watcher(random.nextInt(4), from, from + random.nextInt(24) * HOUR);
+      watcher.setAnymovie(random.nextInt(4) == 0);
+      watcher.getFilters().setImax(options[random.nextInt(options.length)]);
+      watcher.getFilters().setOv(options[random.nextInt(options.length)]);
+      watchers.add(watcher);
+    }
+    List<PatheShowing> showings = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      long start = START + random.nextInt(72) * HOUR;
+      showings.add(
+          new PatheShowing(
+              random.nextInt(5),
+              MOVIEID + random.nextInt(2),
+              i,
+              start,
+              start,
+              0,
+              0,
+              random.nextBoolean() ? null : random.nextInt(2),
+              random.nextInt(2),
+              0,
+              0,
+              0,
+              0,
+              false,
+              false,
+              false));
+    }
+
+    List<List<PatheShowing>> matches = WatcherIndex.of(watchers).match(CompactShowing.of(showings));
+
+    for (int i = 0; i < watchers.size(); i++) {
+      CompiledWatcherFilter filter = CompiledWatcherFilter.compile(watchers.get(i));
+      List<PatheShowing> expected =
+          showings.stream()
+              .filter(s -> filter.accepts(CompactShowing.of(s)))
+              .collect(Collectors.toList());
+      assertEquals(expected, matches.get(i));
+    }
+  }
+
+  private static PatheShowing showing(int cinemaId, long start) {
+    return new PatheShowing(
+        cinemaId,
+        MOVIEID,
+        start,
+        start,
+        start + 2 * HOUR,
+        0,
+        0,
+        0,
+        1,
+        0,
+        1,
+        0,
+        0,
+        false,
+        false,
+        false);
+  }
+
+  private static Watcher watcher(int cinemaId, long startafter, long startbefore) {
+    return new Watcher(
+        "ID",
+        "USER",
+        "NAME",
+        MOVIEID,
+        START,
+        START + HOUR,
+        new WatcherFilters(
+            cinemaId,
+            startafter,
+            startbefore,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE,
+            NOPREFERENCE));
+  }
+}
@@ -0,0 +1,114 @@
+package it.sijmen.movienotifier.service.pathe;
+
+import static it.sijmen.movienotifier.model.FilterOption.*;
+
+import it.sijmen.movienotifier.model.FilterOption;
+import it.sijmen.movienotifier.model.Watcher;
+import it.sijmen.movienotifier.model.WatcherFilters;
+import it.sijmen.movienotifier.service.pathe.api.PatheShowing;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares matching the watchers of a popular movie against one showing with a {@link
+ * CompiledWatcherFilter} per watcher and with {@link WatcherColumns}. The score is in matched
+ * watcher-showing pairs. Run the main method from the test classpath.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WatcherMatchingBenchmark {
+
+  private static final int WATCHERS = 10_000;
+  private static final int MOVIEID = 1;
+  private static final long START = 1_513_368_000_000L;
+  private static final long HOUR = 3_600_000;
+
+  private final List<CompiledWatcherFilter> filters = new ArrayList<>(WATCHERS);
+  private final int[] accepted = new int[WATCHERS];
+  private WatcherColumns columns;
+  private CompactShowing showing;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(39);
+    FilterOption[] options = {NOPREFERENCE, NOPREFERENCE, YES, NO};
+    for (int i = 0; i < WATCHERS; i++) {
+      long from = START + random.nextInt(72) * HOUR;
+      filters.add(
+          CompiledWatcherFilter.compile(
+              new Watcher(
+                  "ID",
+                  "USER",
+                  "NAME",
+                  MOVIEID,
+                  START,
+                  START + HOUR,
+                  new WatcherFilters(
+                      random.nextInt(4),
+                      from,
+                      from + random.nextInt(12) * HOUR,
+                      options[random.nextInt(4)],
+                      options[random.nextInt(4)],
+                      options[random.nextInt(4)],
+                      options[random.nextInt(4)],
+                      NOPREFERENCE,
+                      NOPREFERENCE,
+                      NOPREFERENCE,
+                      NOPREFERENCE,
+                      NOPREFERENCE,
+                      NOPREFERENCE,
+                      NOPREFERENCE,
+                      NOPREFERENCE))));
+    }
+    columns = WatcherColumns.of(filters);
+    long start = START + 36 * HOUR;
+    showing =
+        CompactShowing.of(
+            new PatheShowing(
+                1,
+                MOVIEID,
+                start,
+                start,
+                start + 2 * HOUR,
+                0,
+                0,
+                0,
+                1,
+                0,
+                1,
+                0,
+                0,
+                false,
+                false,
+                false));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(WATCHERS)
+  public int objects() {
+    int count = 0;
+    for (int i = 0; i < WATCHERS; i++) if (filters.get(i).accepts(showing)) accepted[count++] = i;
+    return count;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(WATCHERS)
+  public int columns() {
+    return columns.scan(showing, 0, WATCHERS, accepted);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(WatcherMatchingBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
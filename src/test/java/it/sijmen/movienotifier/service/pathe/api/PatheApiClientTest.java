@@ -1,6 +1,5 @@
 package it.sijmen.movienotifier.service.pathe.api;
 
-import static it.sijmen.movienotifier.model.serialization.UnixTimestampDeserializer.PATHEFORMAT;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
@@ -8,13 +7,17 @@ import static org.mockito.Mockito.*;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mashape.unirest.http.HttpResponse;
 import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
-import java.util.Date;
+import java.util.BitSet;
 import org.junit.Test;
 
 public class PatheApiClientTest {
 
   private static final long HOUR = 3_600_000;
+  private static final long DAY = 86_400_000;
   private static final long TODAY = (System.currentTimeMillis() / 1000) * 1000;
 
   @Test
@@ -43,10 +46,10 @@ public class PatheApiClientTest {
                 + movieid
                 + ","
                 + "            \"start\": \""
-                + PATHEFORMAT.format(new Date(TODAY))
+                + format(TODAY)
                 + "\","
                 + "            \"end\": \""
-                + PATHEFORMAT.format(new Date(TODAY + HOUR))
+                + format(TODAY + HOUR)
                 + "\","
                 + "            \"imax\": 0,"
                 + "            \"3d\": 0,"
@@ -96,4 +99,80 @@ public class PatheApiClientTest {
     assertEquals(expected, result);
     assertTrue(expected.getShowings().get(0).equalsContent(result.getShowings().get(0)));
   }
+
+  @Test
+  public void testGetShowingsForMovieSkipsEntriesOutsidePredicate() throws IOException {
+    final int movieid = 12;
+
+    HttpResponse<String> mockResponse = mock(HttpResponse.class);
+    when(mockResponse.getStatus()).thenReturn(200);
+    when(mockResponse.getBody())
+        .thenReturn(
+            "{\"schedules\": ["
+                + schedule(1, 6, TODAY + HOUR)
+                + ","
+                + schedule(2, 9, TODAY + HOUR)
+                + ","
+                + schedule(3, 6, TODAY - HOUR)
+                + ","
+                + schedule(4, 6, TODAY + 2 * HOUR)
+                + "]}");
+
+    PatheApiClient testSubject =
+        spy(new PatheApiClient(new ObjectMapper(), "some value, not used in this test"));
+
+    doReturn(mockResponse)
+        .when(testSubject)
+        .makeGetRequest("https://connect.pathe.nl/v1/movies/" + movieid + "/schedules");
+
+    BitSet cinemas = new BitSet();
+    cinemas.set(6);
+    PatheShowings result =
+        testSubject.getShowingsForMovie(
+            movieid, new SchedulePredicate(cinemas, TODAY, TODAY + DAY));
+
+    assertEquals(Arrays.asList(1L, 4L), result.getShowingsids());
+    assertEquals(TODAY + 2 * HOUR, result.getShowings().get(1).getStart());
+    assertEquals(Integer.valueOf(1), result.getShowings().get(1).getImax());
+  }
+
+  @Test
+  public void testReadsShowingsLikeTheJacksonMapping() throws IOException {
+    String entry =
+        "{\"times\": {\"a\": [1, {\"b\": 2}]}, \"id\": 7, \"movieId\": 12, \"cinemaId\": 6,"
+            + " \"start\": \"2017-12-15T21:00:00+01:00\", \"end\": \"2017-12-15T23:50:00+01:00\","
+            + " \"3d\": 1, \"nl\": null, \"imax\": 0, \"ov\": 1, \"hfr\": 0, \"isAtmos\": 1,"
+            + " \"is4k\": 0, \"isLaser\": 1, \"is4dx\": true, \"isScreenx\": false,"
+            + " \"isVision\": null, \"vip\": [1]}";
+    HttpResponse<String> mockResponse = mock(HttpResponse.class);
+    when(mockResponse.getStatus()).thenReturn(200);
+    when(mockResponse.getBody()).thenReturn("{\"schedules\": [" + entry + "]}");
+    ObjectMapper mapper = new ObjectMapper();
+    PatheApiClient testSubject = spy(new PatheApiClient(mapper, "not used"));
+    doReturn(mockResponse)
+        .when(testSubject)
+        .makeGetRequest("https://connect.pathe.nl/v1/movies/12/schedules");
+
+    PatheShowing expected = mapper.readValue(entry, PatheShowing.class);
+    PatheShowing result = testSubject.getShowingsForMovie(12).getShowings().get(0);
+
+    assertTrue(expected.equalsContent(result));
+  }
+
+  private String schedule(long id, int cinemaid, long start) {
+    return "{\"id\": "
+        + id
+        + ", \"cinemaId\": "
+        + cinemaid
+        + ", \"start\": \""
+        + format(start)
+        + "\", \"times\": {\"a\": [1, 2]}, \"imax\": 1}";
+  }
+
+  /** @return the timestamp as Pathe writes it */
+  private static String format(long millis) {
+    return Instant.ofEpochMilli(millis)
+        .atOffset(ZoneOffset.ofHours(1))
+        .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+  }
 }